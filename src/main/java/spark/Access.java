@@ -35,4 +35,16 @@ public final class Access {
         request.changeMatch(match);
     }
 
+    public static void bind(Suspended suspended, Suspended.Completion completion) {
+        suspended.bind(completion);
+    }
+
+    public static boolean expire(Suspended suspended) {
+        return suspended.expire();
+    }
+
+    public static void await(Suspended suspended, Suspended.Completion completion) throws InterruptedException {
+        suspended.await(completion);
+    }
+
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spark.cache.ResponseCache;
+import spark.resource.StaticResourceCache;
+
+/**
+ * Derives server and cache sizes from the limits of the container instead of the
+ * host: I/O threads follow the CPU quota, worker threads the CPU quota and the
+ * memory limit, buffers and cache budgets the memory available to the JVM.
+ * <p>
+ * Example:
+ * AutoTuning.detect().log() prints the decisions without applying them.
+ */
+public final class AutoTuning {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AutoTuning.class);
+
+    private static final long MB = 1024 * 1024;
+    private static final int WORKERS_PER_CPU = 8;
+    private static final int MIN_WORKER_THREADS = 8;
+    private static final int MAX_WORKER_THREADS = 256;
+    // a worker thread reserves a stack and usually holds a request and response body
+    private static final long MEMORY_PER_WORKER = 4 * MB;
+
+    private final ContainerLimits limits;
+    private final long maxHeap;
+    private final int ioThreads;
+    private final int workerThreads;
+    private final int bufferSize;
+    private final boolean directBuffers;
+    private final long staticCacheSize;
+    private final long responseCacheSize;
+
+    /**
+     * @param limits  the container limits
+     * @param maxHeap the maximum heap size of the JVM in bytes
+     */
+    AutoTuning(ContainerLimits limits, long maxHeap) {
+        this.limits = limits;
+        this.maxHeap = maxHeap;
+
+        int cpus = Math.max(1, (int) Math.ceil(limits.getCpus()));
+        ioThreads = cpus;
+
+        int workers = clamp(cpus * WORKERS_PER_CPU, MIN_WORKER_THREADS, MAX_WORKER_THREADS);
+        if (limits.getMemoryLimit() > 0) {
+            workers = Math.min(workers, (int) Math.max(MIN_WORKER_THREADS, limits.getMemoryLimit() / MEMORY_PER_WORKER));
+        }
+        workerThreads = workers;
+
+        long memory = limits.getMemoryLimit() > 0 ? limits.getMemoryLimit() : maxHeap;
+        if (memory < 128 * MB) {
+            bufferSize = 1024;
+            directBuffers = false;
+        } else if (memory < 512 * MB) {
+            bufferSize = 4 * 1024;
+            directBuffers = true;
+        } else if (memory < 2048 * MB) {
+            bufferSize = 8 * 1024;
+            directBuffers = true;
+        } else {
+            bufferSize = 16 * 1024 - 20;
+            directBuffers = true;
+        }
+
+        // JVMs not aware of containers may size the heap from the host memory
+        long heap = limits.getMemoryLimit() > 0 ? Math.min(maxHeap, limits.getMemoryLimit()) : maxHeap;
+        staticCacheSize = clamp(heap / 16, 4 * MB, 256 * MB);
+        responseCacheSize = clamp(heap / 8, 8 * MB, 512 * MB);
+    }
+
+    /**
+     * @return the tuning for the limits of the running JVM
+     */
+    public static AutoTuning detect() {
+        return new AutoTuning(ContainerLimits.detect(), Runtime.getRuntime().maxMemory());
+    }
+
+    /**
+     * @return the server settings derived from the limits
+     */
+    public ServerConfig serverConfig() {
+        return new ServerConfig()
+                .ioThreads(ioThreads)
+                .workerThreads(workerThreads)
+                .bufferSize(bufferSize)
+                .directBuffers(directBuffers);
+    }
+
+    /**
+     * Sets the budgets of the static resource cache and the response cache
+     */
+    public void applyCacheBudgets() {
+        StaticResourceCache.getInstance().maxSize(staticCacheSize);
+        ResponseCache.getInstance().maxSize(responseCacheSize);
+    }
+
+    /**
+     * Logs the detected limits and the derived settings
+     *
+     * @return this tuning
+     */
+    public AutoTuning log() {
+        LOG.info(">> Auto-tuning from {}, max heap {} MB", limits, maxHeap / MB);
+        LOG.info(">> Auto-tuning: I/O threads: {}, worker threads: {}, buffers: {} bytes {}",
+                 ioThreads, workerThreads, bufferSize, directBuffers ? "direct" : "heap");
+        LOG.info(">> Auto-tuning: static resource cache: {} MB, response cache: {} MB",
+                 staticCacheSize / MB, responseCacheSize / MB);
+        return this;
+    }
+
+    public ContainerLimits getLimits() {
+        return limits;
+    }
+
+    public long getStaticCacheSize() {
+        return staticCacheSize;
+    }
+
+    public long getResponseCacheSize() {
+        return responseCacheSize;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+}
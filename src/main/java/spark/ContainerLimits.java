@@ -0,0 +1,174 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * CPU and memory limits of the container the JVM runs in, read from the cgroup
+ * filesystem (v2 unified hierarchy or v1 cpu and memory controllers). Limits that
+ * are not set or cannot be read fall back to the host values.
+ */
+public final class ContainerLimits {
+
+    static final Path CGROUP_ROOT = Paths.get("/sys/fs/cgroup");
+
+    // cgroup v1 reports "no limit" as a huge page-aligned value close to Long.MAX_VALUE
+    private static final long UNLIMITED_THRESHOLD = Long.MAX_VALUE / 2;
+
+    private final String source;
+    private final double cpus;
+    private final long memoryLimit;
+
+    private ContainerLimits(String source, double cpus, long memoryLimit) {
+        this.source = source;
+        this.cpus = cpus;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * @return the limits of the running JVM
+     */
+    public static ContainerLimits detect() {
+        return read(CGROUP_ROOT, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Reads the limits below a cgroup mount
+     *
+     * @param root     the cgroup mount, usually /sys/fs/cgroup
+     * @param hostCpus the number of processors available to the JVM
+     * @return the limits
+     */
+    static ContainerLimits read(Path root, int hostCpus) {
+        if (Files.exists(root.resolve("cgroup.controllers"))) {
+            double quota = cpuQuotaV2(readFirstLine(root.resolve("cpu.max")));
+            long memory = parseLimit(readFirstLine(root.resolve("memory.max")));
+            return new ContainerLimits("cgroup v2", effectiveCpus(quota, hostCpus), memory);
+        }
+        Path cpuDir = Files.isDirectory(root.resolve("cpu")) ? root.resolve("cpu") : root.resolve("cpu,cpuacct");
+        Path memoryDir = root.resolve("memory");
+        if (Files.isDirectory(cpuDir) || Files.isDirectory(memoryDir)) {
+            double quota = cpuQuotaV1(readFirstLine(cpuDir.resolve("cpu.cfs_quota_us")),
+                                      readFirstLine(cpuDir.resolve("cpu.cfs_period_us")));
+            long memory = parseLimit(readFirstLine(memoryDir.resolve("memory.limit_in_bytes")));
+            return new ContainerLimits("cgroup v1", effectiveCpus(quota, hostCpus), memory);
+        }
+        return new ContainerLimits("host", hostCpus, -1);
+    }
+
+    /**
+     * @return where the limits were read from: "cgroup v2", "cgroup v1" or "host"
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the number of CPUs the container may use, possibly fractional (e.g. 0.5)
+     */
+    public double getCpus() {
+        return cpus;
+    }
+
+    /**
+     * @return the memory limit of the container in bytes or -1 if there is none
+     */
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    @Override
+    public String toString() {
+        return source + ": " + cpus + " CPUs, memory limit "
+                + (memoryLimit < 0 ? "none" : (memoryLimit / (1024 * 1024)) + " MB");
+    }
+
+    private static double effectiveCpus(double quota, int hostCpus) {
+        return quota > 0 ? Math.min(quota, hostCpus) : hostCpus;
+    }
+
+    /**
+     * @param line the content of cpu.max, "$MAX $PERIOD" with "max" for no limit
+     * @return the quota in CPUs or -1
+     */
+    static double cpuQuotaV2(String line) {
+        if (line == null) {
+            return -1;
+        }
+        String[] fields = line.trim().split("\\s+");
+        if (fields.length < 1 || "max".equals(fields[0])) {
+            return -1;
+        }
+        long period = fields.length > 1 ? parseLong(fields[1]) : 100000;
+        return quota(parseLong(fields[0]), period);
+    }
+
+    /**
+     * @param quotaLine  the content of cpu.cfs_quota_us, -1 for no limit
+     * @param periodLine the content of cpu.cfs_period_us
+     * @return the quota in CPUs or -1
+     */
+    static double cpuQuotaV1(String quotaLine, String periodLine) {
+        if (quotaLine == null || periodLine == null) {
+            return -1;
+        }
+        return quota(parseLong(quotaLine.trim()), parseLong(periodLine.trim()));
+    }
+
+    private static double quota(long quota, long period) {
+        return quota > 0 && period > 0 ? (double) quota / period : -1;
+    }
+
+    /**
+     * @param line the content of memory.max or memory.limit_in_bytes
+     * @return the limit in bytes or -1 for no limit
+     */
+    static long parseLimit(String line) {
+        if (line == null || "max".equals(line.trim())) {
+            return -1;
+        }
+        long limit = parseLong(line.trim());
+        return limit > 0 && limit < UNLIMITED_THRESHOLD ? limit : -1;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String readFirstLine(Path file) {
+        if (!Files.isReadable(file)) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.US_ASCII);
+            return lines.isEmpty() ? null : lines.get(0);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+}
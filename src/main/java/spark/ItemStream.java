@@ -0,0 +1,291 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A route result made of items that are serialized one by one and written in
+ * chunks, e.g. the rows of an export as NDJSON or CSV. Items are pulled from the
+ * iterator while the response is written and the serialized text is sent every
+ * time it reaches the flush threshold, so memory stays proportional to one batch.
+ * Writes block while the client does not keep up. Plain routes returning a
+ * {@link Stream} or an {@link Iterator} are written as {@link #lines() lines} of text.
+ * <pre>
+ * get("/export", (request, response) -&gt;
+ *         ItemStream.of(repository.streamAll(), ItemStream.ndjson(Json::write)));
+ * </pre>
+ *
+ * @param <T> the item type
+ */
+public final class ItemStream<T> implements AutoCloseable {
+
+    public static final int DEFAULT_FLUSH_THRESHOLD = 16 * 1024;
+
+    private final Iterator<? extends T> items;
+    private final Serializer<? super T> serializer;
+    private final AutoCloseable resource;
+    private String contentType;
+    private String prefix;
+    private int flushThreshold = DEFAULT_FLUSH_THRESHOLD;
+    private boolean closed;
+
+    private ItemStream(Iterator<? extends T> items, Serializer<? super T> serializer, AutoCloseable resource) {
+        this.items = items;
+        this.serializer = serializer;
+        this.resource = resource;
+        this.contentType = serializer instanceof TypedSerializer ? ((TypedSerializer<?>) serializer).contentType : null;
+    }
+
+    /**
+     * @param items      the items, closed when the response has been written if they
+     *                   are {@link AutoCloseable}
+     * @param serializer the item serializer
+     * @param <T>        the item type
+     * @return the item stream
+     */
+    public static <T> ItemStream<T> of(Iterator<? extends T> items, Serializer<? super T> serializer) {
+        return new ItemStream<>(items, serializer, items instanceof AutoCloseable ? (AutoCloseable) items : null);
+    }
+
+    /**
+     * @param items      the items, closed when the response has been written
+     * @param serializer the item serializer
+     * @param <T>        the item type
+     * @return the item stream
+     */
+    public static <T> ItemStream<T> of(Stream<? extends T> items, Serializer<? super T> serializer) {
+        return new ItemStream<>(items.iterator(), serializer, items);
+    }
+
+    /**
+     * @param items      the items
+     * @param serializer the item serializer
+     * @param <T>        the item type
+     * @return the item stream
+     */
+    public static <T> ItemStream<T> of(Iterable<? extends T> items, Serializer<? super T> serializer) {
+        return new ItemStream<>(items.iterator(), serializer, null);
+    }
+
+    /**
+     * Sets the number of characters collected before they are written and flushed
+     *
+     * @param flushThreshold the threshold
+     * @return this item stream
+     */
+    public ItemStream<T> flushEvery(int flushThreshold) {
+        if (flushThreshold <= 0) {
+            throw new IllegalArgumentException("flushThreshold must be positive");
+        }
+        this.flushThreshold = flushThreshold;
+        return this;
+    }
+
+    /**
+     * Sets the content type, used unless the route sets one
+     *
+     * @param contentType the content type
+     * @return this item stream
+     */
+    public ItemStream<T> contentType(String contentType) {
+        this.contentType = contentType;
+        return this;
+    }
+
+    /**
+     * Sets text written before the first item, e.g. a CSV header line
+     *
+     * @param prefix the text
+     * @return this item stream
+     */
+    public ItemStream<T> prefix(String prefix) {
+        this.prefix = prefix;
+        return this;
+    }
+
+    /**
+     * @return the content type or null
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Serializes all items into the output stream as UTF-8 and closes the source of
+     * the items
+     *
+     * @param out the output stream, flushed after every batch
+     * @throws Exception when an item cannot be read or serialized
+     */
+    public void writeTo(OutputStream out) throws Exception {
+        StringBuilder batch = new StringBuilder(flushThreshold + 256);
+        try {
+            if (prefix != null) {
+                batch.append(prefix);
+            }
+            while (items.hasNext()) {
+                serializer.write(items.next(), batch);
+                if (batch.length() >= flushThreshold) {
+                    out.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    batch.setLength(0);
+                }
+            }
+            if (batch.length() > 0) {
+                out.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Closes the source of the items. Done by {@link #writeTo(OutputStream)}, and by
+     * Spark when the item stream is not written because a filter or a halt replaced it.
+     *
+     * @throws Exception when the source cannot be closed
+     */
+    @Override
+    public void close() throws Exception {
+        if (!closed) {
+            closed = true;
+            if (resource != null) {
+                resource.close();
+            }
+        }
+    }
+
+    /**
+     * Wraps a Stream or Iterator result of a plain route into an item stream of lines
+     *
+     * @param result the route result
+     * @return the item stream, or the result itself if it is neither
+     */
+    static Object itemsOf(Object result) {
+        if (result instanceof Stream) {
+            return of((Stream<?>) result, lines());
+        }
+        if (result instanceof Iterator) {
+            return of((Iterator<?>) result, lines());
+        }
+        return result;
+    }
+
+    /**
+     * Serializes an item as a line of text, the result of its toString()
+     *
+     * @param <T> the item type
+     * @return the serializer
+     */
+    public static <T> Serializer<T> lines() {
+        return new TypedSerializer<>("text/plain; charset=utf-8", (item, out) -> out.append(String.valueOf(item)).append('\n'));
+    }
+
+    /**
+     * Serializes an item as a line of newline delimited JSON
+     *
+     * @param toJson converts an item to JSON, which must not contain line breaks
+     * @param <T>    the item type
+     * @return the serializer
+     */
+    public static <T> Serializer<T> ndjson(Function<? super T, String> toJson) {
+        return new TypedSerializer<>("application/x-ndjson", (item, out) -> out.append(toJson.apply(item)).append('\n'));
+    }
+
+    /**
+     * Serializes an item as a CSV record (RFC 4180). Fields containing commas, quotes
+     * or line breaks are quoted, null fields are empty.
+     *
+     * @param toFields converts an item to its fields
+     * @param <T>      the item type
+     * @return the serializer
+     */
+    public static <T> Serializer<T> csv(Function<? super T, Object[]> toFields) {
+        return new TypedSerializer<>("text/csv; charset=utf-8", (item, out) -> {
+            Object[] fields = toFields.apply(item);
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendCsvField(out, fields[i]);
+            }
+            out.append("\r\n");
+        });
+    }
+
+    static void appendCsvField(Appendable out, Object field) throws IOException {
+        if (field == null) {
+            return;
+        }
+        String value = field.toString();
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    /**
+     * Serializes a single item
+     *
+     * @param <T> the item type
+     */
+    @FunctionalInterface
+    public interface Serializer<T> {
+        /**
+         * @param item the item
+         * @param out  the text of the current batch
+         * @throws IOException when the item cannot be serialized
+         */
+        void write(T item, Appendable out) throws IOException;
+    }
+
+    private static final class TypedSerializer<T> implements Serializer<T> {
+        private final String contentType;
+        private final Serializer<T> delegate;
+
+        private TypedSerializer(String contentType, Serializer<T> delegate) {
+            this.contentType = contentType;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(T item, Appendable out) throws IOException {
+            delegate.write(item, out);
+        }
+    }
+
+}
@@ -32,6 +32,10 @@ public class ModelAndView {
      * View name used to render output.
      */
     private String viewName;
+    /**
+     * Fingerprint of the model, used to cache the rendered output.
+     */
+    private String fingerprint;
 
     /**
      * Constructs an instance with the provided model and view name
@@ -45,6 +49,20 @@ public class ModelAndView {
         this.viewName = viewName;
     }
 
+    /**
+     * Constructs an instance with the provided model, view name and model fingerprint.
+     * Models with the same fingerprint must render to the same output, e.g. an entity
+     * id and version.
+     *
+     * @param model       the model
+     * @param viewName    the view name
+     * @param fingerprint the fingerprint of the model
+     */
+    public ModelAndView(Object model, String viewName, String fingerprint) {
+        this(model, viewName);
+        this.fingerprint = fingerprint;
+    }
+
     /**
      * @return the model object
      */
@@ -59,4 +77,11 @@ public class ModelAndView {
         return viewName;
     }
 
+    /**
+     * @return the fingerprint of the model or null if none was supplied
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
 }
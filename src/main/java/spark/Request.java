@@ -1,8 +1,14 @@
 package spark;
 
 import spark.route.RouteMatch;
+import spark.utils.RecordReader;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Map;
 import java.util.Set;
 
@@ -42,6 +48,23 @@ public interface Request {
 
 	byte[] bodyAsBytes();
 
+	/**
+	 * Reads the body as UTF-8 lines while it is received, by default from the input
+	 * stream of {@link #raw()}. Memory stays bounded by maxLineLength unless the server
+	 * buffers the body itself.
+	 *
+	 * @param maxLineLength the maximum length of a line in bytes
+	 * @return a reader of the body lines
+	 */
+	default RecordReader lines(int maxLineLength) {
+		try {
+			ReadableByteChannel channel = Channels.newChannel(raw().getInputStream());
+			return new RecordReader(channel::read, ByteBuffer.allocate(8192), maxLineLength, null);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	int contentLength();
 
 	String queryParams(String queryParam);
@@ -16,6 +16,8 @@
 */
 package spark;
 
+import java.io.OutputStream;
+
 /**
  * A ResponseTransformerRouteImpl is built up by a path (for url-matching) and the
  * implementation of the 'render' method. ResponseTransformerRoute instead of
@@ -42,6 +44,20 @@ public abstract class ResponseTransformerRouteImpl extends RouteImpl {
                 return transformer.render(model);
             }
 
+            @Override
+            public void render(Object model, OutputStream out) throws Exception {
+                if (transformer instanceof StreamingResponseTransformer) {
+                    ((StreamingResponseTransformer) transformer).render(model, out);
+                } else {
+                    super.render(model, out);
+                }
+            }
+
+            @Override
+            public boolean isStreaming() {
+                return transformer instanceof StreamingResponseTransformer;
+            }
+
             @Override
             public Object handle(Request request, Response response) throws Exception {
                 return route.handle(request, response);
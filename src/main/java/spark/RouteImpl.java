@@ -16,6 +16,9 @@
  */
 package spark;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
 /**
  * A Route is built up by a path (for url-matching) and the implementation of the 'handle' method.
@@ -78,6 +81,55 @@ public abstract class RouteImpl implements Route {
         }
     }
 
+    /**
+     * Renders the given element into the UTF-8 encoded response body. By default this
+     * method encodes the result of {@link #render(Object)}, routes that keep their
+     * output pre-encoded can override it to skip the encoding.
+     *
+     * @param element to be rendered.
+     * @return body content or null.
+     * @throws java.lang.Exception when render fails
+     */
+    public byte[] renderBytes(Object element) throws Exception {
+        if (isStreaming() || element instanceof ItemStream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            render(element, out);
+            return out.toByteArray();
+        }
+        String rendered = render(element);
+        return rendered != null ? rendered.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Renders the given element directly into the response output stream. It is used
+     * instead of {@link #render(Object)} when {@link #isStreaming()} returns true, so
+     * that large bodies are written while they are rendered. It is also used for
+     * {@link ItemStream} results. By default this method writes item streams in
+     * batches and other elements as the result of {@link #renderBytes(Object)},
+     * streaming routes must override it.
+     *
+     * @param element to be rendered.
+     * @param out     the output stream, must not be closed.
+     * @throws java.lang.Exception when render fails
+     */
+    public void render(Object element, OutputStream out) throws Exception {
+        if (element instanceof ItemStream) {
+            ((ItemStream<?>) element).writeTo(out);
+            return;
+        }
+        byte[] rendered = renderBytes(element);
+        if (rendered != null) {
+            out.write(rendered);
+        }
+    }
+
+    /**
+     * @return true if the route renders its elements with {@link #render(Object, OutputStream)}
+     */
+    public boolean isStreaming() {
+        return false;
+    }
+
     /**
      * @return the accept type
      */
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tuning of the embedded server: thread pools, buffers and socket options. Settings
+ * left unset keep the defaults of the server, the effective values are logged when
+ * the server is ignited. Values are validated when they are set.
+ * <p>
+ * Example:
+ * serverConfig(new ServerConfig().ioThreads(4).workerThreads(64).tcpNoDelay(true));
+ */
+public final class ServerConfig {
+
+    private static final int MIN_BUFFER_SIZE = 512;
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
+    private Integer ioThreads;
+    private Integer workerThreads;
+    private Integer bufferSize;
+    private Boolean directBuffers;
+    private Integer backlog;
+    private Boolean tcpNoDelay;
+    private Long keepAliveTimeoutMillis;
+    private Long idleTimeoutMillis;
+
+    /**
+     * @param ioThreads the number of threads accepting connections and doing non-blocking I/O
+     *                  (Undertow I/O threads, Jetty selectors)
+     * @return this config
+     */
+    public ServerConfig ioThreads(int ioThreads) {
+        this.ioThreads = positive("ioThreads", ioThreads);
+        return this;
+    }
+
+    /**
+     * @param workerThreads the maximum number of threads running filters and routes
+     * @return this config
+     */
+    public ServerConfig workerThreads(int workerThreads) {
+        this.workerThreads = positive("workerThreads", workerThreads);
+        return this;
+    }
+
+    /**
+     * @param bufferSize the size of the I/O buffers in bytes (Undertow pooled buffers, Jetty output buffer)
+     * @return this config
+     */
+    public ServerConfig bufferSize(int bufferSize) {
+        if (bufferSize < MIN_BUFFER_SIZE || bufferSize > MAX_BUFFER_SIZE) {
+            throw new IllegalArgumentException("bufferSize must be between " + MIN_BUFFER_SIZE + " and "
+                                                       + MAX_BUFFER_SIZE + " bytes, got " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * @param directBuffers whether the I/O buffers are allocated outside of the heap
+     * @return this config
+     */
+    public ServerConfig directBuffers(boolean directBuffers) {
+        this.directBuffers = directBuffers;
+        return this;
+    }
+
+    /**
+     * @param backlog the length of the queue of connections not yet accepted
+     * @return this config
+     */
+    public ServerConfig backlog(int backlog) {
+        this.backlog = positive("backlog", backlog);
+        return this;
+    }
+
+    /**
+     * @param tcpNoDelay whether Nagle's algorithm is disabled on accepted connections
+     * @return this config
+     */
+    public ServerConfig tcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    /**
+     * @param timeout how long a persistent connection waits for the next request
+     * @param unit    the unit of the timeout
+     * @return this config
+     */
+    public ServerConfig keepAliveTimeout(long timeout, TimeUnit unit) {
+        this.keepAliveTimeoutMillis = unit.toMillis(notNegative("keepAliveTimeout", timeout));
+        return this;
+    }
+
+    /**
+     * @param timeout how long a connection may be idle while a request is read or written
+     * @param unit    the unit of the timeout
+     * @return this config
+     */
+    public ServerConfig idleTimeout(long timeout, TimeUnit unit) {
+        this.idleTimeoutMillis = unit.toMillis(notNegative("idleTimeout", timeout));
+        return this;
+    }
+
+    /**
+     * @return the number of I/O threads or null for the server default
+     */
+    public Integer getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * @return the maximum number of worker threads or null for the server default
+     */
+    public Integer getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * @return the buffer size in bytes or null for the server default
+     */
+    public Integer getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return whether buffers are direct or null for the server default
+     */
+    public Boolean getDirectBuffers() {
+        return directBuffers;
+    }
+
+    /**
+     * @return the accept backlog or null for the server default
+     */
+    public Integer getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * @return whether TCP_NODELAY is set or null for the server default
+     */
+    public Boolean getTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * @return the keep-alive timeout in milliseconds or null for the server default
+     */
+    public Long getKeepAliveTimeoutMillis() {
+        return keepAliveTimeoutMillis;
+    }
+
+    /**
+     * @return the idle timeout in milliseconds or null for the server default
+     */
+    public Long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Creates a config with the values of this config, falling back to the given defaults
+     * for the values left unset
+     *
+     * @param defaults the defaults, e.g. derived by {@link AutoTuning}
+     * @return a new config
+     */
+    ServerConfig withDefaults(ServerConfig defaults) {
+        ServerConfig merged = new ServerConfig();
+        merged.ioThreads = ioThreads != null ? ioThreads : defaults.ioThreads;
+        merged.workerThreads = workerThreads != null ? workerThreads : defaults.workerThreads;
+        merged.bufferSize = bufferSize != null ? bufferSize : defaults.bufferSize;
+        merged.directBuffers = directBuffers != null ? directBuffers : defaults.directBuffers;
+        merged.backlog = backlog != null ? backlog : defaults.backlog;
+        merged.tcpNoDelay = tcpNoDelay != null ? tcpNoDelay : defaults.tcpNoDelay;
+        merged.keepAliveTimeoutMillis = keepAliveTimeoutMillis != null ? keepAliveTimeoutMillis : defaults.keepAliveTimeoutMillis;
+        merged.idleTimeoutMillis = idleTimeoutMillis != null ? idleTimeoutMillis : defaults.idleTimeoutMillis;
+        return merged;
+    }
+
+    private static int positive(String name, int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive, got " + value);
+        }
+        return value;
+    }
+
+    private static long notNegative(String name, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " must not be negative, got " + value);
+        }
+        return value;
+    }
+
+}
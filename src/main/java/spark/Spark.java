@@ -19,7 +19,11 @@ package spark;
 import spark.exception.ExceptionHandlerImpl;
 import spark.exception.ExceptionMapper;
 import spark.route.HttpMethod;
+import spark.sse.EventStreamHandler;
+import spark.sse.EventStreamRoute;
 import spark.utils.SparkUtils;
+import spark.websocket.WebSocketHandler;
+import spark.websocket.WebSocketRoute;
 
 /**
  * The main building block of a Spark application is a set of routes. A route is
@@ -772,6 +776,74 @@ public final class Spark extends SparkBase {
     // END Response Transforming Routes
     //////////////////////////////////////////////////
 
+    //////////////////////////////////////////////////
+    // BEGIN Event Streams
+    //////////////////////////////////////////////////
+
+    /**
+     * Maps a server-sent event stream for HTTP GET requests, supported by the Undertow
+     * server. The handler is invoked after the before filters, the stream stays open
+     * without holding a worker thread until either side closes it. Idle streams get a
+     * heartbeat every 15 seconds and streams with 1024 unwritten events are closed.
+     *
+     * @param path    the path
+     * @param handler the handler of opened streams
+     */
+    public static synchronized void eventStream(String path, EventStreamHandler handler) {
+        eventStream(path, EventStreamRoute.DEFAULT_HEARTBEAT_MILLIS, EventStreamRoute.DEFAULT_MAX_QUEUED_EVENTS, handler);
+    }
+
+    /**
+     * Maps a server-sent event stream for HTTP GET requests, supported by the Undertow server
+     *
+     * @param path            the path
+     * @param heartbeatMillis the interval of comment lines sent to idle streams, 0 disables them
+     * @param maxQueuedEvents the number of unwritten events after which a slow client is disconnected
+     * @param handler         the handler of opened streams
+     */
+    public static synchronized void eventStream(String path, long heartbeatMillis, int maxQueuedEvents,
+                                                EventStreamHandler handler) {
+        addEventStream(new EventStreamRoute(path, handler, heartbeatMillis, maxQueuedEvents));
+    }
+
+    //////////////////////////////////////////////////
+    // END Event Streams
+    //////////////////////////////////////////////////
+
+    //////////////////////////////////////////////////
+    // BEGIN WebSockets
+    //////////////////////////////////////////////////
+
+    /**
+     * Maps a WebSocket route, supported by the Undertow server. The handshake is made
+     * after the before filters, requests that are no WebSocket upgrade get 400.
+     * Sessions with 1024 unwritten messages are closed and received messages are
+     * limited to 1 MB.
+     *
+     * @param path    the path
+     * @param handler the handler of the sessions
+     */
+    public static synchronized void webSocket(String path, WebSocketHandler handler) {
+        webSocket(path, WebSocketRoute.DEFAULT_MAX_QUEUED_MESSAGES, WebSocketRoute.DEFAULT_MAX_MESSAGE_SIZE, handler);
+    }
+
+    /**
+     * Maps a WebSocket route, supported by the Undertow server
+     *
+     * @param path              the path
+     * @param maxQueuedMessages the number of unwritten messages after which a slow client is disconnected
+     * @param maxMessageSize    the maximum size of a received message in bytes
+     * @param handler           the handler of the sessions
+     */
+    public static synchronized void webSocket(String path, int maxQueuedMessages, int maxMessageSize,
+                                              WebSocketHandler handler) {
+        addWebSocket(new WebSocketRoute(path, handler, maxQueuedMessages, maxMessageSize));
+    }
+
+    //////////////////////////////////////////////////
+    // END WebSockets
+    //////////////////////////////////////////////////
+
     //////////////////////////////////////////////////
     // EXCEPTION mapper
     //////////////////////////////////////////////////
@@ -1,12 +1,29 @@
 package spark;
 
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import spark.batch.BatchRoute;
+import spark.cache.CachePolicy;
+import spark.cache.IdempotencyStore;
+import spark.cache.RequestCoalescer;
+import spark.cache.ResponseCache;
+import spark.cache.Validators;
+import spark.local.LocalClient;
+import spark.prerender.Prerenderer;
+import spark.resource.AssetFingerprints;
+import spark.resource.StaticFileWatcher;
+import spark.route.HttpMethod;
 import spark.route.RouteMatcherFactory;
 import spark.route.SimpleRouteMatcher;
 import spark.servlet.SparkFilter;
+import spark.sse.EventStreamRoute;
 import spark.undertow.NewSparkServerFactory;
+import spark.websocket.WebSocketRoute;
 
 /**
  * Spark base class
@@ -28,8 +45,11 @@ public abstract class SparkBase {
 
     protected static String staticFileFolder = null;
     protected static String externalStaticFileFolder = null;
+    protected static boolean staticFileFingerprints = false;
 
     protected static SparkServer server;
+    protected static ServerConfig serverConfig;
+    protected static AutoTuning autoTuning;
     protected static SimpleRouteMatcher routeMatcher;
     private static boolean runFromServlet;
 
@@ -178,6 +198,9 @@ public abstract class SparkBase {
             if (runFromServlet) {
                 SparkFilter.configureStaticResources(staticFileFolder);
                 servletStaticLocationSet = true;
+                if (staticFileFingerprints) {
+                    AssetFingerprints.getInstance().addClassPathFolder(staticFileFolder);
+                }
             }
         } else {
             LOG.warn("Static file location has already been set");
@@ -199,12 +222,229 @@ public abstract class SparkBase {
             if (runFromServlet) {
                 SparkFilter.configureExternalStaticResources(externalStaticFileFolder);
                 servletExternalStaticLocationSet = true;
+                if (staticFileFingerprints) {
+                    AssetFingerprints.getInstance().addExternalFolder(new File(externalStaticFileFolder));
+                }
             }
         } else {
             LOG.warn("External static file location has already been set");
         }
     }
 
+    /**
+     * Enables content-hash fingerprints for the static file folders. Each static file
+     * can then also be requested under a URL containing a hash of its content, which
+     * is served with a far future immutable Cache-Control header. Use
+     * {@link #asset(String)} to get the fingerprinted URL of a file. Observe: this
+     * method must be called before all other methods.
+     */
+    public static synchronized void fingerprintStaticFiles() {
+        if (initialized && !runFromServlet) {
+            throwBeforeRouteMappingException();
+        }
+        if (staticFileFingerprints) {
+            return;
+        }
+        staticFileFingerprints = true;
+        if (servletStaticLocationSet && staticFileFolder != null) {
+            AssetFingerprints.getInstance().addClassPathFolder(staticFileFolder);
+        }
+        if (servletExternalStaticLocationSet && externalStaticFileFolder != null) {
+            AssetFingerprints.getInstance().addExternalFolder(new File(externalStaticFileFolder));
+        }
+    }
+
+    /**
+     * Sets the thread, buffer, socket and timeout settings of the embedded server.
+     * Settings left unset keep the defaults of the server. Observe: this method must
+     * be called before all other methods.
+     *
+     * @param config the server configuration
+     */
+    public static synchronized void serverConfig(ServerConfig config) {
+        if (initialized) {
+            throwBeforeRouteMappingException();
+        }
+        serverConfig = config;
+    }
+
+    /**
+     * Sizes the server and the caches from the CPU quota and memory limit of the
+     * container (cgroup v1 or v2) rather than from the host, and logs the decisions.
+     * Values set with {@link #serverConfig(ServerConfig)} take precedence, cache sizes
+     * set after this call replace the derived budgets. Observe: this method must be
+     * called before all other methods.
+     */
+    public static synchronized void autoTune() {
+        if (initialized) {
+            throwBeforeRouteMappingException();
+        }
+        autoTuning = AutoTuning.detect().log();
+        autoTuning.applyCacheBudgets();
+    }
+
+    /**
+     * Gets the fingerprinted URL of a static file, see {@link #fingerprintStaticFiles()}
+     *
+     * @param path the path of the file relative to its static file folder, e.g. "/js/app.js"
+     * @return the fingerprinted path or the path itself if the file has no fingerprint
+     */
+    public static String asset(String path) {
+        return AssetFingerprints.getInstance().url(path);
+    }
+
+    /**
+     * Declares a GET route for prerendering, see {@link #prerender(String, Prerenderer.Expansion)}
+     *
+     * @param path the route path
+     */
+    public static synchronized void prerender(String path) {
+        prerender(path, null);
+    }
+
+    /**
+     * Declares a GET route for prerendering. The route is rendered in the background
+     * once for every parameter set supplied by the expansion and the responses are
+     * then served from files once the before filters let the request through,
+     * without invoking the route or the after filters. Use
+     * {@link Prerenderer#getInstance()} to re-render on a schedule or on demand.
+     * The route must be mapped before it is declared.
+     *
+     * @param path      the route path, e.g. "/docs/:page"
+     * @param expansion the parameter values to render the path with
+     */
+    public static synchronized void prerender(String path, Prerenderer.Expansion expansion) {
+        init();
+        Prerenderer.getInstance().add(routeMatcher, path, expansion);
+    }
+
+    /**
+     * Caches the complete responses of a GET route according to the policy. Cached
+     * responses are served after the before filters, without invoking the route or
+     * the after filters. Use {@link ResponseCache#getInstance()} to purge responses
+     * by tag or route and to read the hit and miss counters.
+     *
+     * @param path   the route path, e.g. "/products/:id"
+     * @param policy the cache policy
+     */
+    public static synchronized void cache(String path, CachePolicy policy) {
+        init();
+        ResponseCache.getInstance().cache(routeMatcher, path, policy);
+    }
+
+    /**
+     * Enables automatic ETags. Successful GET responses that do not set an ETag get a
+     * strong one computed from a fast hash of the rendered body, and requests with a
+     * matching If-None-Match header are answered with 304 Not Modified. Bodies of
+     * streaming routes and {@link ItemStream} results are streamed without an ETag.
+     */
+    public static synchronized void autoETags() {
+        Validators.getInstance().autoETags(true);
+    }
+
+    /**
+     * Coalesces identical concurrent requests of a GET route. While one request
+     * executes the route, requests with the same path, query string and values of the
+     * given headers wait for it and get its response. Waiters that time out execute
+     * the route themselves. Use {@link RequestCoalescer#getInstance()} to read the
+     * number of saved executions.
+     *
+     * @param path    the route path, e.g. "/products/:id"
+     * @param timeout how long identical requests wait for the running one
+     * @param unit    the unit of the timeout
+     * @param vary    the request headers the response depends on
+     */
+    public static synchronized void coalesce(String path, long timeout, TimeUnit unit, String... vary) {
+        RequestCoalescer.getInstance().coalesce(path, timeout, unit, vary);
+    }
+
+    /**
+     * Enables Idempotency-Key support for POST and PUT routes. The response to the
+     * first request carrying a key is stored for the given time and replayed to
+     * retries with the same key, method, path and Authorization header without
+     * invoking the route. Retries arriving while the first request executes wait
+     * for its response. Use {@link IdempotencyStore#getInstance()} to bound the
+     * store and the wait.
+     *
+     * @param ttl  how long responses are kept
+     * @param unit the unit of the ttl
+     */
+    public static synchronized void idempotencyKeys(long ttl, TimeUnit unit) {
+        IdempotencyStore.getInstance().enable(ttl, unit);
+    }
+
+    /**
+     * Registers a cheap supplier of the current entity tag of a GET route, e.g. a row
+     * version. It is evaluated before the route and conditional requests whose
+     * If-None-Match header matches are answered with 304 Not Modified without
+     * invoking the route. The route must be mapped with the same path.
+     *
+     * @param path     the route path, e.g. "/products/:id"
+     * @param supplier the entity tag supplier
+     */
+    public static synchronized void etag(String path, Validators.ETagSupplier supplier) {
+        Validators.getInstance().etag(path, supplier);
+    }
+
+    /**
+     * Registers a cheap supplier of the last modification time of a GET route, see
+     * {@link #etag(String, Validators.ETagSupplier)}. Requests whose If-Modified-Since
+     * header is not older are answered with 304 Not Modified.
+     *
+     * @param path     the route path, e.g. "/products/:id"
+     * @param supplier the last modification time supplier
+     */
+    public static synchronized void lastModified(String path, Validators.LastModifiedSupplier supplier) {
+        Validators.getInstance().lastModified(path, supplier);
+    }
+
+    /**
+     * Declares a group of routes as sessionless. Requests matching the path skip the
+     * session machinery entirely and calling {@link Request#session()} for them fails.
+     * The path is matched like a filter path, e.g. "/api/*".
+     *
+     * @param path the path of the route group
+     */
+    public static synchronized void sessionless(String path) {
+        init();
+        routeMatcher.addSessionlessPath(path);
+    }
+
+    /**
+     * Maps a batch endpoint for HTTP POST requests. It accepts a multipart/mixed body
+     * whose application/http parts are requests, runs them in parallel through the
+     * filters and routes in-process and answers with a multipart/mixed body holding
+     * their responses in the same order. Sub-requests inherit the headers of the batch
+     * request. Batches are limited to 50 sub-requests.
+     *
+     * @param path the path, e.g. "/batch"
+     */
+    public static synchronized void batch(String path) {
+        batch(path, null, BatchRoute.DEFAULT_MAX_PARTS);
+    }
+
+    /**
+     * Maps a batch endpoint for HTTP POST requests, see {@link #batch(String)}
+     *
+     * @param path     the path, e.g. "/batch"
+     * @param executor the executor running the sub-requests, null for a shared pool
+     * @param maxParts the maximum number of sub-requests of a batch
+     */
+    public static synchronized void batch(String path, Executor executor, int maxParts) {
+        init();
+        addRoute(HttpMethod.post.name(), new BatchRoute(path, routeMatcher, executor, maxParts));
+    }
+
+    /**
+     * Creates a client that invokes the mapped filters and routes in-process, without
+     * going through the server, e.g. to compose the responses of other routes
+     *
+     * @return the client
+     */
+    public static LocalClient localClient() {
+        return new LocalClient(RouteMatcherFactory.get());
+    }
+
     private static void throwBeforeRouteMappingException() {
         throw new IllegalStateException(
                 "This must be done before route mapping has begun");
@@ -220,8 +460,14 @@ public abstract class SparkBase {
      */
     public static synchronized void stop() {
         if (server != null) {
+            Prerenderer.getInstance().clear();
+            ResponseCache.getInstance().clear();
+            Validators.getInstance().clear();
+            RequestCoalescer.getInstance().clear();
+            IdempotencyStore.getInstance().clear();
             routeMatcher.clearRoutes();
             server.stop();
+            StaticFileWatcher.stopAll();
         }
         initialized = false;
     }
@@ -260,7 +506,8 @@ public abstract class SparkBase {
         RouteImpl impl = new RouteImpl(path, acceptType) {
             @Override
             public Object handle(Request request, Response response) throws Exception {
-                return route.handle(request, response);
+                // Stream and Iterator results are written item by item instead of by toString()
+                return ItemStream.itemsOf(route.handle(request, response));
             }
         };
         return impl;
@@ -310,13 +557,38 @@ public abstract class SparkBase {
                                                    + "'", filter.getAcceptType(), filter);
     }
 
+    protected static void addEventStream(EventStreamRoute route) {
+        init();
+        routeMatcher.parseValidateAddRoute(HttpMethod.get.name() + " '" + route.getPath()
+                                                   + "'", DEFAULT_ACCEPT_TYPE, route);
+    }
+
+    protected static void addWebSocket(WebSocketRoute route) {
+        init();
+        routeMatcher.parseValidateAddRoute(HttpMethod.get.name() + " '" + route.getPath()
+                                                   + "'", DEFAULT_ACCEPT_TYPE, route);
+    }
+
     private static synchronized void init() {
         if (!initialized) {
             routeMatcher = RouteMatcherFactory.get();
             new Thread(new Runnable() {
                 @Override
                 public void run() {
+                    if (staticFileFingerprints) {
+                        if (externalStaticFileFolder != null) {
+                            AssetFingerprints.getInstance().addExternalFolder(new File(externalStaticFileFolder));
+                        }
+                        if (staticFileFolder != null) {
+                            AssetFingerprints.getInstance().addClassPathFolder(staticFileFolder);
+                        }
+                    }
                     server = NewSparkServerFactory.create();
+                    ServerConfig config = serverConfig != null ? serverConfig : new ServerConfig();
+                    if (autoTuning != null) {
+                        config = config.withDefaults(autoTuning.serverConfig());
+                    }
+                    server.configure(config);
                     server.ignite(
                             ipAddress,
                             port,
@@ -6,5 +6,14 @@ public interface SparkServer {
 				String truststorePassword, String staticFilesFolder,
 				String externalFilesFolder);
 
+	/**
+	 * Sets the tuning of the server, called before {@link #ignite}. Servers that
+	 * cannot apply a setting log that it is ignored.
+	 *
+	 * @param config the configuration
+	 */
+	default void configure(ServerConfig config) {
+	}
+
 	void stop();
 }
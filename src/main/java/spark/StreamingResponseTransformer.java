@@ -0,0 +1,50 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A ResponseTransformer that writes its output into the response output stream
+ * instead of returning it as a String, e.g. a JSON serializer writing to a stream.
+ * Large bodies are written while they are rendered with bounded memory.
+ */
+@FunctionalInterface
+public interface StreamingResponseTransformer extends ResponseTransformer {
+
+    /**
+     * Method called for rendering the output into the stream.
+     *
+     * @param model object used to render output.
+     * @param out   the UTF-8 encoded output, must not be closed.
+     * @throws java.lang.Exception when render fails
+     */
+    void render(Object model, OutputStream out) throws Exception;
+
+    /**
+     * Renders the output into a String, for callers that need the whole output
+     */
+    @Override
+    default String render(Object model) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        render(model, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}
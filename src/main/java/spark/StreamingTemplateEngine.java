@@ -0,0 +1,54 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * A TemplateEngine that writes its output into a Writer instead of returning it as
+ * a String. Routes using it write the output into the response while it is
+ * rendered, so large pages start flushing immediately with bounded memory.
+ */
+public abstract class StreamingTemplateEngine extends TemplateEngine {
+
+    /**
+     * Renders the model and view into the writer
+     *
+     * @param modelAndView object where object (mostly a POJO) and the name of the view to render are set.
+     * @param writer       the writer, must not be closed.
+     * @throws IOException when writing fails
+     */
+    public abstract void render(ModelAndView modelAndView, Writer writer) throws IOException;
+
+    /**
+     * Renders the model and view into a String, for callers that need the whole output
+     */
+    @Override
+    public String render(ModelAndView modelAndView) {
+        StringWriter writer = new StringWriter();
+        try {
+            render(modelAndView, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+}
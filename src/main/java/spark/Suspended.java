@@ -0,0 +1,177 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A response that is completed later, returned by long-poll routes. The route keeps
+ * the handle, e.g. in a list of waiting clients, and any thread resumes it with the
+ * response once there is something to send. If that does not happen in time, the
+ * fallback response is sent.
+ * <p>
+ * With the Undertow server the exchange is released from the worker pool while it
+ * is suspended, so waiting clients hold no threads. The servlet filter waits for the
+ * response on the request thread. With either the after filters are applied to the
+ * response once it is resumed or times out.
+ * <p>
+ * Example:
+ * get("/updates", (request, response) -&#62; {
+ * Suspended update = Suspended.of(30, TimeUnit.SECONDS);
+ * waiting.add(update);
+ * return update;
+ * });
+ */
+public final class Suspended {
+
+    private final long timeoutMillis;
+    private int fallbackStatus = 204;
+    private String fallbackBody = "";
+
+    // guarded by this
+    private Completion completion;
+    private boolean done;
+    private int status;
+    private String body;
+
+    private Suspended(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Creates a suspended response that falls back to 204 No Content
+     *
+     * @param timeout how long the response waits to be resumed
+     * @param unit    the unit of the timeout
+     * @return the suspended response
+     */
+    public static Suspended of(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        return new Suspended(unit.toMillis(timeout));
+    }
+
+    /**
+     * Sets the response sent when the timeout elapses
+     *
+     * @param status the status code
+     * @param body   the body
+     * @return this suspended response
+     */
+    public Suspended fallback(int status, String body) {
+        this.fallbackStatus = status;
+        this.fallbackBody = body != null ? body : "";
+        return this;
+    }
+
+    /**
+     * Completes the response with status 200
+     *
+     * @param body the body
+     * @return false if the response was already completed or timed out
+     */
+    public boolean resume(String body) {
+        return resume(200, body);
+    }
+
+    /**
+     * Completes the response
+     *
+     * @param status the status code
+     * @param body   the body
+     * @return false if the response was already completed or timed out
+     */
+    public boolean resume(int status, String body) {
+        return complete(status, body != null ? body : "");
+    }
+
+    /**
+     * @return true if the response was resumed or timed out
+     */
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Completes the response with the fallback
+     *
+     * @return false if the response was already completed
+     */
+    boolean expire() {
+        return complete(fallbackStatus, fallbackBody);
+    }
+
+    /**
+     * Sets the completion invoked with the response, immediately if it is already complete
+     */
+    void bind(Completion completion) {
+        synchronized (this) {
+            this.completion = completion;
+            if (!done) {
+                return;
+            }
+        }
+        completion.complete(status, body);
+    }
+
+    /**
+     * Waits on the current thread until the response is resumed or times out
+     */
+    void await(final Completion completion) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        bind((status, body) -> {
+            completion.complete(status, body);
+            latch.countDown();
+        });
+        if (!latch.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            expire();
+            latch.await();
+        }
+    }
+
+    private boolean complete(int status, String body) {
+        Completion target;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            done = true;
+            this.status = status;
+            this.body = body;
+            target = completion;
+        }
+        if (target != null) {
+            target.complete(status, body);
+        }
+        return true;
+    }
+
+    /**
+     * Receives the response of a suspended request, implemented by the servers
+     */
+    @FunctionalInterface
+    public interface Completion {
+        void complete(int status, String body);
+    }
+
+}
@@ -1,5 +1,6 @@
 package spark;
 
+import java.nio.charset.StandardCharsets;
 
 /**
  * A Template holds the implementation of the 'render' method.
@@ -32,6 +33,18 @@ public abstract class TemplateEngine {
         return new ModelAndView(model, viewName);
     }
 
+    /**
+     * Renders the model and view into the UTF-8 encoded output that is sent to the
+     * client. By default the result of {@link #render(ModelAndView)} is encoded.
+     *
+     * @param modelAndView object where object (mostly a POJO) and the name of the view to render are set.
+     * @return the encoded message that is sent to client.
+     */
+    public byte[] renderBytes(ModelAndView modelAndView) {
+        String rendered = render(modelAndView);
+        return rendered != null ? rendered.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
     /**
      * Method called to render the output that is sent to client.
      *
@@ -16,6 +16,10 @@
  */
 package spark;
 
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * A TemplateViewRoute is built up by a path (for url-matching) and the implementation of the 'render' method.
@@ -61,6 +65,27 @@ public abstract class TemplateViewRouteImpl extends RouteImpl {
                 return engine.render(modelAndView);
             }
 
+            @Override
+            public byte[] renderBytes(ModelAndView modelAndView) {
+                return engine.renderBytes(modelAndView);
+            }
+
+            @Override
+            public void render(Object object, OutputStream out) throws Exception {
+                if (engine instanceof StreamingTemplateEngine) {
+                    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                    ((StreamingTemplateEngine) engine).render((ModelAndView) object, writer);
+                    writer.flush();
+                } else {
+                    super.render(object, out);
+                }
+            }
+
+            @Override
+            public boolean isStreaming() {
+                return engine instanceof StreamingTemplateEngine;
+            }
+
             @Override
             public Object handle(Request request, Response response) throws Exception {
                 return route.handle(request, response);
@@ -85,6 +110,27 @@ public abstract class TemplateViewRouteImpl extends RouteImpl {
         return render(modelAndView);
     }
 
+    @Override
+    public byte[] renderBytes(Object object) throws Exception {
+        if (isStreaming()) {
+            return super.renderBytes(object);
+        }
+        ModelAndView modelAndView = (ModelAndView) object;
+        return renderBytes(modelAndView);
+    }
+
+    /**
+     * Renders the model and view into the UTF-8 encoded output that is sent to the
+     * client. By default the result of {@link #render(ModelAndView)} is encoded.
+     *
+     * @param modelAndView object where object (mostly a POJO) and the name of the view to render are set.
+     * @return the encoded message that is sent to client.
+     */
+    public byte[] renderBytes(ModelAndView modelAndView) {
+        String rendered = render(modelAndView);
+        return rendered != null ? rendered.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
     /**
      * Creates a new ModelAndView object with given arguments.
      *
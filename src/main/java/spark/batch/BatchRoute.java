@@ -0,0 +1,153 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import spark.Request;
+import spark.Response;
+import spark.RouteImpl;
+import spark.local.LocalDispatcher;
+import spark.local.LocalResult;
+import spark.route.SimpleRouteMatcher;
+
+/**
+ * A POST route that runs a batch of sub-requests through the filters and routes of
+ * the route matcher in-process and answers with all their responses at once, see
+ * {@link MultipartBatch} for the format. The sub-requests are independent and run
+ * in parallel on the executor; they inherit the headers of the batch request, e.g.
+ * Authorization, unless they set them themselves. The body, idempotency and
+ * conditional headers of the batch request describe the batch and are not inherited.
+ */
+public class BatchRoute extends RouteImpl {
+
+    public static final int DEFAULT_MAX_PARTS = 50;
+
+    private static final Set<String> NOT_INHERITED = new HashSet<>(Arrays.asList(
+            "content-type", "content-length", "idempotency-key", "if-none-match", "if-modified-since",
+            "if-match", "if-unmodified-since", "if-range", "range"));
+
+    private static ExecutorService defaultExecutor;
+
+    private final LocalDispatcher dispatcher;
+    private final Executor executor;
+    private final int maxParts;
+
+    /**
+     * @param path         the route path
+     * @param routeMatcher the route matcher the sub-requests are dispatched with
+     * @param executor     the executor running the sub-requests, null for a shared pool
+     * @param maxParts     the maximum number of sub-requests
+     */
+    public BatchRoute(String path, SimpleRouteMatcher routeMatcher, Executor executor, int maxParts) {
+        super(path);
+        if (maxParts <= 0) {
+            throw new IllegalArgumentException("maxParts must be positive");
+        }
+        this.dispatcher = new LocalDispatcher(routeMatcher);
+        this.executor = executor != null ? executor : defaultExecutor();
+        this.maxParts = maxParts;
+    }
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        String boundary = MultipartBatch.boundaryOf(request.contentType());
+        if (boundary == null) {
+            response.status(HttpServletResponse.SC_BAD_REQUEST);
+            return "A batch must be sent as multipart/mixed";
+        }
+        List<MultipartBatch.Part> parts;
+        try {
+            parts = MultipartBatch.parse(request.bodyAsBytes(), boundary, maxParts);
+        } catch (IllegalArgumentException e) {
+            response.status(HttpServletResponse.SC_BAD_REQUEST);
+            return e.getMessage();
+        }
+        if (parts.isEmpty()) {
+            response.status(HttpServletResponse.SC_BAD_REQUEST);
+            return "The batch has no parts";
+        }
+
+        Map<String, String> inherited = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (String name : request.headers()) {
+            if (!NOT_INHERITED.contains(name.toLowerCase())) {
+                inherited.put(name, request.headers(name));
+            }
+        }
+
+        List<CompletableFuture<LocalResult>> pending = new ArrayList<>(parts.size());
+        for (int i = 1; i < parts.size(); i++) {
+            MultipartBatch.Part part = parts.get(i);
+            pending.add(CompletableFuture.supplyAsync(() -> dispatch(part, inherited), executor));
+        }
+        List<LocalResult> results = new ArrayList<>(parts.size());
+        // the first sub-request runs on the request thread
+        results.add(dispatch(parts.get(0), inherited));
+        for (CompletableFuture<LocalResult> result : pending) {
+            results.add(result.join());
+        }
+
+        String responseBoundary = "batch_" + UUID.randomUUID();
+        response.type("multipart/mixed; boundary=" + responseBoundary);
+        return MultipartBatch.write(parts, results, responseBoundary);
+    }
+
+    private LocalResult dispatch(MultipartBatch.Part part, Map<String, String> inherited) {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(inherited);
+        headers.putAll(part.getHeaders());
+        return dispatcher.dispatch(part.getMethod(), part.getUri(), headers, part.getBody());
+    }
+
+    @Override
+    public byte[] renderBytes(Object element) throws Exception {
+        if (element instanceof byte[]) {
+            return (byte[]) element;
+        }
+        return super.renderBytes(element);
+    }
+
+    private static synchronized ExecutorService defaultExecutor() {
+        if (defaultExecutor == null) {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            defaultExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                                     new LinkedBlockingQueue<Runnable>(), runnable -> {
+                Thread thread = new Thread(runnable, "spark-batch");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ((ThreadPoolExecutor) defaultExecutor).allowCoreThreadTimeOut(true);
+        }
+        return defaultExecutor;
+    }
+
+}
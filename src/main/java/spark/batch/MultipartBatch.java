@@ -0,0 +1,267 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.batch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import spark.local.LocalResult;
+
+/**
+ * Reads and writes batches in the multipart/mixed format used by common batch
+ * APIs: every part has the content type application/http and holds a complete
+ * HTTP/1.1 request or response. Parts may carry a Content-ID header, the part of
+ * the response gets the id prefixed with "response-".
+ */
+public final class MultipartBatch {
+
+    private static final String PART_CONTENT_TYPE = "application/http";
+
+    private MultipartBatch() {
+    }
+
+    /**
+     * @param contentType the content type of a request
+     * @return the boundary of a multipart/mixed content type or null
+     */
+    public static String boundaryOf(String contentType) {
+        if (contentType == null || !contentType.toLowerCase().startsWith("multipart/mixed")) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            String[] pair = parameter.trim().split("=", 2);
+            if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("boundary")) {
+                String boundary = pair[1].trim();
+                if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                return boundary.isEmpty() ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses the sub-requests of a batch
+     *
+     * @param body     the multipart body
+     * @param boundary the boundary
+     * @param maxParts the maximum number of parts
+     * @return the sub-requests in their order
+     * @throws IllegalArgumentException if the body is malformed or has too many parts
+     */
+    public static List<Part> parse(byte[] body, String boundary, int maxParts) {
+        // ISO-8859-1 maps bytes to chars one to one, so binary part bodies survive
+        String content = new String(body, StandardCharsets.ISO_8859_1);
+        String delimiter = "--" + boundary;
+        List<Part> parts = new ArrayList<>();
+
+        int position = content.startsWith(delimiter) ? 0 : content.indexOf("\n" + delimiter);
+        if (position < 0) {
+            throw new IllegalArgumentException("The batch has no parts");
+        }
+        position = content.indexOf(delimiter, position) + delimiter.length();
+        while (!content.startsWith("--", position)) {
+            int start = content.indexOf('\n', position);
+            if (start < 0) {
+                throw new IllegalArgumentException("The batch is not terminated");
+            }
+            start++;
+            int next = content.indexOf("\n" + delimiter, start - 1);
+            if (next < 0) {
+                throw new IllegalArgumentException("The batch is not terminated");
+            }
+            int end = next > start && content.charAt(next - 1) == '\r' ? next - 1 : Math.max(start, next);
+            if (parts.size() == maxParts) {
+                throw new IllegalArgumentException("The batch has more than " + maxParts + " parts");
+            }
+            parts.add(parsePart(content.substring(start, end)));
+            position = next + 1 + delimiter.length();
+        }
+        return parts;
+    }
+
+    private static Part parsePart(String part) {
+        int[] cursor = {0};
+        Map<String, String> mimeHeaders = readHeaders(part, cursor);
+        String requestLine = readLine(part, cursor);
+        String[] tokens = requestLine != null ? requestLine.trim().split(" +") : new String[0];
+        if (tokens.length < 2) {
+            throw new IllegalArgumentException("A part has no request line");
+        }
+        Map<String, String> headers = readHeaders(part, cursor);
+        byte[] body = part.substring(cursor[0]).getBytes(StandardCharsets.ISO_8859_1);
+        return new Part(mimeHeaders.get("Content-ID"), tokens[0].toUpperCase(), relativeUri(tokens[1]), headers, body);
+    }
+
+    private static String relativeUri(String uri) {
+        int scheme = uri.indexOf("://");
+        if (scheme < 0) {
+            return uri;
+        }
+        int path = uri.indexOf('/', scheme + 3);
+        return path < 0 ? "/" : uri.substring(path);
+    }
+
+    private static Map<String, String> readHeaders(String part, int[] cursor) {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+        while ((line = readLine(part, cursor)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    private static String readLine(String part, int[] cursor) {
+        if (cursor[0] >= part.length()) {
+            return null;
+        }
+        int end = part.indexOf('\n', cursor[0]);
+        String line;
+        if (end < 0) {
+            line = part.substring(cursor[0]);
+            cursor[0] = part.length();
+        } else {
+            line = part.substring(cursor[0], end);
+            cursor[0] = end + 1;
+        }
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    /**
+     * Writes the responses of a batch
+     *
+     * @param parts    the sub-requests
+     * @param results  the results of the sub-requests in the same order
+     * @param boundary the boundary
+     * @return the multipart body
+     */
+    public static byte[] write(List<Part> parts, List<LocalResult> results, String boundary) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < parts.size(); i++) {
+            LocalResult result = results.get(i);
+            byte[] body = bodyOf(result);
+            StringBuilder head = new StringBuilder(256);
+            head.append("--").append(boundary).append("\r\n");
+            head.append("Content-Type: ").append(PART_CONTENT_TYPE).append("\r\n");
+            String contentId = parts.get(i).getContentId();
+            if (contentId != null) {
+                head.append("Content-ID: ").append(responseId(contentId)).append("\r\n");
+            }
+            head.append("\r\n");
+            head.append("HTTP/1.1 ").append(result.getStatus()).append(" \r\n");
+            for (Map.Entry<String, List<String>> header : result.getHeaders().entrySet()) {
+                if (header.getKey().equalsIgnoreCase("Content-Length")) {
+                    continue;
+                }
+                for (String value : header.getValue()) {
+                    head.append(header.getKey()).append(": ").append(value).append("\r\n");
+                }
+            }
+            head.append("Content-Length: ").append(body.length).append("\r\n\r\n");
+            write(out, head.toString());
+            out.write(body, 0, body.length);
+            write(out, "\r\n");
+        }
+        write(out, "--" + boundary + "--\r\n");
+        return out.toByteArray();
+    }
+
+    private static String responseId(String contentId) {
+        boolean angled = contentId.startsWith("<") && contentId.endsWith(">") && contentId.length() > 1;
+        String id = angled ? contentId.substring(1, contentId.length() - 1) : contentId;
+        return "<response-" + id + ">";
+    }
+
+    private static byte[] bodyOf(LocalResult result) {
+        File file = result.getFile();
+        if (file == null) {
+            return result.getBody();
+        }
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void write(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * A sub-request of a batch
+     */
+    public static final class Part {
+        private final String contentId;
+        private final String method;
+        private final String uri;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        Part(String contentId, String method, String uri, Map<String, String> headers, byte[] body) {
+            this.contentId = contentId;
+            this.method = method;
+            this.uri = uri;
+            this.headers = Collections.unmodifiableMap(headers);
+            this.body = body;
+        }
+
+        /**
+         * @return the Content-ID of the part or null
+         */
+        public String getContentId() {
+            return contentId;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * @return the request URI including the query string
+         */
+        public String getUri() {
+            return uri;
+        }
+
+        /**
+         * @return the request headers, names are case insensitive
+         */
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+}
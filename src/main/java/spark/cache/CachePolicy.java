@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caching rules of a GET route: how long responses are fresh, how long a stale
+ * response may still be served while it is refreshed in the background, the request
+ * headers responses vary by and the tags used to purge them.
+ */
+public final class CachePolicy {
+
+    private final long ttlMillis;
+    private long staleWhileRevalidateMillis;
+    private List<String> vary = Collections.emptyList();
+    private Set<String> tags = Collections.emptySet();
+
+    private CachePolicy(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Creates a policy
+     *
+     * @param duration how long a response is fresh
+     * @param unit     the unit of the duration
+     * @return the policy
+     */
+    public static CachePolicy ttl(long duration, TimeUnit unit) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("TTL must be positive");
+        }
+        return new CachePolicy(unit.toMillis(duration));
+    }
+
+    /**
+     * Allows serving a response for the given time after it became stale while it is
+     * refreshed in the background
+     *
+     * @param duration how long a stale response may be served
+     * @param unit     the unit of the duration
+     * @return this policy
+     */
+    public CachePolicy staleWhileRevalidate(long duration, TimeUnit unit) {
+        this.staleWhileRevalidateMillis = unit.toMillis(duration);
+        return this;
+    }
+
+    /**
+     * Declares the request headers responses vary by, e.g. "Accept-Language"
+     *
+     * @param headers the header names
+     * @return this policy
+     */
+    public CachePolicy vary(String... headers) {
+        this.vary = Collections.unmodifiableList(Arrays.asList(headers));
+        return this;
+    }
+
+    /**
+     * Tags all responses of the route, see {@link ResponseCache#purgeTag(String)}
+     *
+     * @param tags the tags
+     * @return this policy
+     */
+    public CachePolicy tags(String... tags) {
+        this.tags = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(tags)));
+        return this;
+    }
+
+    /**
+     * @return the time in millis a response is fresh
+     */
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * @return the time in millis a stale response may be served while being refreshed
+     */
+    public long getStaleWhileRevalidateMillis() {
+        return staleWhileRevalidateMillis;
+    }
+
+    /**
+     * @return the request headers responses vary by
+     */
+    public List<String> getVary() {
+        return vary;
+    }
+
+    /**
+     * @return the tags of all responses of the route
+     */
+    public Set<String> getTags() {
+        return tags;
+    }
+
+}
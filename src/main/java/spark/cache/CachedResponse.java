@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.cache;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A cached response: status, headers and body. The body is kept either on the heap
+ * or in a direct buffer, see {@link ResponseCache#offHeap(boolean)}.
+ */
+public final class CachedResponse {
+
+    private final ResponseCache.Key key;
+    private final int status;
+    private final Map<String, List<String>> headers;
+    private final ByteBuffer body;
+    private final Set<String> tags;
+    private final long created;
+    private final long freshUntil;
+    private final long staleUntil;
+    private final AtomicBoolean revalidating = new AtomicBoolean();
+
+    CachedResponse(ResponseCache.Key key,
+                   int status,
+                   Map<String, List<String>> headers,
+                   ByteBuffer body,
+                   Set<String> tags,
+                   long created,
+                   CachePolicy policy) {
+        this(key, status, headers, body, tags, created, created + policy.getTtlMillis(),
+             created + policy.getTtlMillis() + policy.getStaleWhileRevalidateMillis());
+    }
+
+    CachedResponse(ResponseCache.Key key,
+                   int status,
+                   Map<String, List<String>> headers,
+                   ByteBuffer body,
+                   Set<String> tags,
+                   long created,
+                   long freshUntil,
+                   long staleUntil) {
+        this.key = key;
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+        this.tags = tags;
+        this.created = created;
+        this.freshUntil = freshUntil;
+        this.staleUntil = staleUntil;
+    }
+
+    /**
+     * @return the status code
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the response headers
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return a read-only view of the body, positioned at its start
+     */
+    public ByteBuffer getBody() {
+        return body.duplicate();
+    }
+
+    /**
+     * @return the body length
+     */
+    public int getLength() {
+        return body.remaining();
+    }
+
+    /**
+     * @param now the current time in millis
+     * @return the age in seconds, for the Age header
+     */
+    public long getAgeSeconds(long now) {
+        return Math.max(0, (now - created) / 1000);
+    }
+
+    ResponseCache.Key getKey() {
+        return key;
+    }
+
+    Set<String> getTags() {
+        return tags;
+    }
+
+    boolean isFresh(long now) {
+        return now < freshUntil;
+    }
+
+    boolean isUsable(long now) {
+        return now < staleUntil;
+    }
+
+    boolean startRevalidation() {
+        return revalidating.compareAndSet(false, true);
+    }
+
+    long size() {
+        return body.capacity() + 256;
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import spark.ModelAndView;
+import spark.TemplateEngine;
+
+/**
+ * Template engine decorator caching the UTF-8 encoded output of another engine, so
+ * that hits skip both rendering and encoding. Entries are keyed by the view name and
+ * the fingerprint supplied with {@link ModelAndView#ModelAndView(Object, String, String)}
+ * or, when none is supplied, by the model itself if it has value-based equality:
+ * strings, boxed primitives, enums, classes overriding equals and hashCode, and maps
+ * and collections of those. Such models must not change once rendered. Other models
+ * are always rendered by the delegate.
+ * <p>
+ * The cache is bounded by the number of entries, least recently used entries are
+ * evicted first, and entries expire after the configured time.
+ */
+public class CachingTemplateEngine extends TemplateEngine {
+
+    private final TemplateEngine delegate;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param delegate   the engine rendering the views
+     * @param maxEntries the maximum number of cached outputs
+     * @param ttl        how long outputs are cached
+     * @param unit       the unit of the ttl
+     */
+    public CachingTemplateEngine(TemplateEngine delegate, int maxEntries, long ttl, TimeUnit unit) {
+        if (maxEntries <= 0 || ttl <= 0) {
+            throw new IllegalArgumentException("maxEntries and ttl must be positive");
+        }
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = unit.toMillis(ttl);
+    }
+
+    @Override
+    public String render(ModelAndView modelAndView) {
+        return new String(renderBytes(modelAndView), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] renderBytes(ModelAndView modelAndView) {
+        Key key = keyOf(modelAndView);
+        if (key == null) {
+            misses.increment();
+            return delegate.renderBytes(modelAndView);
+        }
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expires > now) {
+                hits.increment();
+                return entry.content;
+            }
+        }
+        misses.increment();
+        byte[] content = delegate.renderBytes(modelAndView);
+        if (content == null) {
+            content = new byte[0];
+        }
+        synchronized (entries) {
+            entries.put(key, new Entry(content, now + ttlMillis));
+            if (entries.size() > maxEntries) {
+                entries.remove(entries.keySet().iterator().next());
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Removes all cached outputs of a view
+     *
+     * @param viewName the view name
+     */
+    public void invalidate(String viewName) {
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> Objects.equals(key.viewName, viewName));
+        }
+    }
+
+    /**
+     * Removes all cached outputs
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return the number of renders answered from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of renders delegated to the engine
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the cache key or null if the output must not be cached
+     */
+    static Key keyOf(ModelAndView modelAndView) {
+        String fingerprint = modelAndView.getFingerprint();
+        if (fingerprint != null) {
+            return new Key(modelAndView.getViewName(), fingerprint, null);
+        }
+        Object model = modelAndView.getModel();
+        return isValueBased(model) ? new Key(modelAndView.getViewName(), null, model) : null;
+    }
+
+    static boolean isValueBased(Object model) {
+        if (model == null || model instanceof Enum) {
+            return true;
+        }
+        if (model instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) model).entrySet()) {
+                if (!isValueBased(entry.getKey()) || !isValueBased(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (model instanceof Collection) {
+            for (Object element : (Collection<?>) model) {
+                if (!isValueBased(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        try {
+            Class<?> type = model.getClass();
+            return type.getMethod("equals", Object.class).getDeclaringClass() != Object.class
+                    && type.getMethod("hashCode").getDeclaringClass() != Object.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    static final class Key {
+        private final String viewName;
+        private final String fingerprint;
+        private final Object model;
+        private final int hash;
+
+        private Key(String viewName, String fingerprint, Object model) {
+            this.viewName = viewName;
+            this.fingerprint = fingerprint;
+            this.model = model;
+            this.hash = Objects.hash(viewName, fingerprint, model);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && Objects.equals(viewName, other.viewName)
+                    && Objects.equals(fingerprint, other.fingerprint) && Objects.equals(model, other.model);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] content;
+        private final long expires;
+
+        private Entry(byte[] content, long expires) {
+            this.content = content;
+            this.expires = expires;
+        }
+    }
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import spark.utils.CacheUtils;
+
+/**
+ * Stores the responses of POST and PUT requests carrying an Idempotency-Key header,
+ * so that retried requests are answered with the stored response instead of
+ * executing the route again. Requests arriving while the first one with the same
+ * key is still executing wait for its response and get 409 Conflict if it takes
+ * longer than the wait timeout.
+ * <p>
+ * Keys are scoped by method, path and the Authorization header. Responses are kept
+ * for the configured time in a store bounded by the number of entries. Requests
+ * whose route fails with an exception, sends a file or ends the exchange itself
+ * are not stored, so that they can be retried. Responses of
+ * {@link spark.Spark#halt(int, String) halt} are stored and replayed like any other
+ * response: a halt is a deliberate answer of a filter or route, e.g. a 401 or a
+ * validation error, which a retry with the same key would get again.
+ */
+public class IdempotencyStore {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    public static final long DEFAULT_WAIT_MILLIS = 10000;
+
+    private static final IdempotencyStore INSTANCE = new IdempotencyStore();
+
+    private final LinkedHashMap<String, CachedResponse> responses = new LinkedHashMap<>();
+    private final ConcurrentHashMap<String, CountDownLatch> executing = new ConcurrentHashMap<>();
+    private volatile long ttlMillis;
+    private volatile long waitMillis = DEFAULT_WAIT_MILLIS;
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    IdempotencyStore() {
+    }
+
+    /**
+     * @return the idempotency store used by the Spark backends
+     */
+    public static IdempotencyStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Enables Idempotency-Key support
+     *
+     * @param ttl  how long responses are kept
+     * @param unit the unit of the ttl
+     */
+    public void enable(long ttl, TimeUnit unit) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        this.ttlMillis = unit.toMillis(ttl);
+    }
+
+    /**
+     * Sets how long a duplicate waits for the first request with the same key
+     *
+     * @param timeout the timeout
+     * @param unit    the unit of the timeout
+     */
+    public void waitTimeout(long timeout, TimeUnit unit) {
+        this.waitMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * Sets the maximum number of stored responses
+     *
+     * @param maxEntries the maximum number of responses
+     */
+    public synchronized void maxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        evict(System.currentTimeMillis());
+    }
+
+    /**
+     * @return true if Idempotency-Key support is enabled
+     */
+    public boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * Starts the execution of a request carrying an Idempotency-Key header. Blocks
+     * while another request with the same key is executing.
+     *
+     * @param method         the request method
+     * @param path           the request path
+     * @param idempotencyKey the value of the Idempotency-Key header
+     * @param authorization  the value of the Authorization header, may be null
+     * @return the execution
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public Execution begin(String method, String path, String idempotencyKey, String authorization)
+            throws InterruptedException {
+        String key = method.toUpperCase() + ' ' + path + '\n' + idempotencyKey
+                + (authorization != null
+                   ? '\n' + Long.toHexString(CacheUtils.hash64(authorization.getBytes(StandardCharsets.UTF_8)))
+                   : "");
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (true) {
+            CachedResponse stored = lookup(key);
+            if (stored != null) {
+                replays.increment();
+                return new Execution(key, null, stored);
+            }
+            CountDownLatch latch = new CountDownLatch(1);
+            CountDownLatch running = executing.putIfAbsent(key, latch);
+            if (running == null) {
+                stored = lookup(key);
+                if (stored != null) {
+                    executing.remove(key, latch);
+                    latch.countDown();
+                    replays.increment();
+                    return new Execution(key, null, stored);
+                }
+                executions.increment();
+                return new Execution(key, latch, null);
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0 || !running.await(remaining, TimeUnit.MILLISECONDS)) {
+                conflicts.increment();
+                return new Execution(key, null, null);
+            }
+        }
+    }
+
+    /**
+     * Removes all stored responses and disables Idempotency-Key support
+     */
+    public synchronized void clear() {
+        responses.clear();
+        ttlMillis = 0;
+    }
+
+    /**
+     * @return the counters of the store
+     */
+    public synchronized Stats getStats() {
+        return new Stats(executions.sum(), replays.sum(), conflicts.sum(), responses.size());
+    }
+
+    private synchronized CachedResponse lookup(String key) {
+        CachedResponse response = responses.get(key);
+        if (response != null && !response.isUsable(System.currentTimeMillis())) {
+            responses.remove(key);
+            return null;
+        }
+        return response;
+    }
+
+    private synchronized void store(String key, CachedResponse response) {
+        responses.remove(key);
+        responses.put(key, response);
+        evict(System.currentTimeMillis());
+    }
+
+    private void evict(long now) {
+        Iterator<CachedResponse> iterator = responses.values().iterator();
+        while (iterator.hasNext()) {
+            CachedResponse eldest = iterator.next();
+            if (responses.size() <= maxEntries && eldest.isUsable(now)) {
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    /**
+     * The execution of a request carrying an Idempotency-Key header. It either
+     * replays a stored response, reports a conflict with a request still executing or
+     * leads: executes the route and then {@link #complete completes} or
+     * {@link #abandon() abandons} the execution.
+     */
+    public final class Execution {
+        private final String key;
+        private final CountDownLatch latch;
+        private final CachedResponse replay;
+        private boolean done;
+
+        Execution(String key, CountDownLatch latch, CachedResponse replay) {
+            this.key = key;
+            this.latch = latch;
+            this.replay = replay;
+        }
+
+        /**
+         * @return the stored response to replay or null
+         */
+        public CachedResponse getReplay() {
+            return replay;
+        }
+
+        /**
+         * @return true if a request with the same key is still executing
+         */
+        public boolean isConflict() {
+            return latch == null && replay == null;
+        }
+
+        /**
+         * Stores the response of the route
+         *
+         * @param status  the status code
+         * @param headers the response headers
+         * @param body    the body
+         */
+        public void complete(int status, Map<String, ? extends Collection<String>> headers, byte[] body) {
+            if (latch == null || done) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            store(key, new CachedResponse(null, status, ResponseCache.copyHeaders(headers),
+                                          ByteBuffer.wrap(body).asReadOnlyBuffer(),
+                                          Collections.<String>emptySet(), now, now + ttlMillis, now + ttlMillis));
+            finish();
+        }
+
+        /**
+         * Ends the execution without storing a response, waiting duplicates execute
+         * the route themselves
+         */
+        public void abandon() {
+            if (latch == null || done) {
+                return;
+            }
+            finish();
+        }
+
+        private void finish() {
+            done = true;
+            executing.remove(key, latch);
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Counters of the idempotency store
+     */
+    public static final class Stats {
+        private final long executions;
+        private final long replays;
+        private final long conflicts;
+        private final int entries;
+
+        Stats(long executions, long replays, long conflicts, int entries) {
+            this.executions = executions;
+            this.replays = replays;
+            this.conflicts = conflicts;
+            this.entries = entries;
+        }
+
+        public long getExecutions() {
+            return executions;
+        }
+
+        public long getReplays() {
+            return replays;
+        }
+
+        public long getConflicts() {
+            return conflicts;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        @Override
+        public String toString() {
+            return "executions=" + executions + ", replays=" + replays + ", conflicts=" + conflicts
+                    + ", entries=" + entries;
+        }
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import spark.RouteImpl;
+import spark.route.RouteMatch;
+
+/**
+ * Opt-in coalescing of identical concurrent GET requests. The first request for a
+ * key executes the route (the leader), identical requests arriving while it runs
+ * wait for it and are answered with its status, headers and rendered body.
+ * <p>
+ * Requests are keyed like the {@link ResponseCache}: by route, path, normalized
+ * query string and the declared Vary headers. Waiters that time out, or whose
+ * leader fails, sets cookies or does not render a body, execute the route themselves.
+ */
+public class RequestCoalescer {
+
+    private static final RequestCoalescer INSTANCE = new RequestCoalescer();
+
+    private final Map<String, Settings> routes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+
+    RequestCoalescer() {
+    }
+
+    /**
+     * @return the request coalescer used by the Spark backends
+     */
+    public static RequestCoalescer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Enables coalescing for a GET route
+     *
+     * @param path    the route path as mapped, e.g. "/products/:id"
+     * @param timeout how long waiters wait for the leader
+     * @param unit    the unit of the timeout
+     * @param vary    the request headers the response depends on
+     */
+    public void coalesce(String path, long timeout, TimeUnit unit, String... vary) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        routes.put(path, new Settings(unit.toMillis(timeout), Collections.unmodifiableList(Arrays.asList(vary))));
+    }
+
+    /**
+     * Joins the flight of a request. The caller is the leader if the returned flight
+     * {@link Flight#isLeader() is led} by it and must then {@link Flight#complete complete}
+     * or {@link Flight#abandon() abandon} it, otherwise it should {@link Flight#await() await}
+     * the response of the leader.
+     *
+     * @param match       the route match of a GET request
+     * @param path        the request path
+     * @param queryString the query string, may be null
+     * @param headers     looks up request headers
+     * @return the flight or null if the route is not coalesced
+     */
+    public Flight join(RouteMatch match, String path, String queryString, Function<String, String> headers) {
+        if (routes.isEmpty() || !(match.getTarget() instanceof RouteImpl)) {
+            return null;
+        }
+        Settings settings = routes.get(match.getMatchUri());
+        if (settings == null) {
+            return null;
+        }
+        String key = ResponseCache.key(match, settings.vary, path, queryString, headers).toString();
+        Flight leader = new Flight(key, settings.timeoutMillis, null);
+        Flight existing = flights.putIfAbsent(key, leader);
+        if (existing == null) {
+            executions.increment();
+            return leader;
+        }
+        return new Flight(key, settings.timeoutMillis, existing);
+    }
+
+    /**
+     * Removes all coalesced routes, flights in progress are not affected
+     */
+    public void clear() {
+        routes.clear();
+    }
+
+    /**
+     * @return the counters of the coalescer
+     */
+    public Stats getStats() {
+        return new Stats(executions.sum(), coalesced.sum(), timeouts.sum(), abandoned.sum(), flights.size());
+    }
+
+    /**
+     * A request taking part in a flight, either as its leader or as a waiter
+     */
+    public final class Flight {
+        private final String key;
+        private final long timeoutMillis;
+        private final Flight leader;
+        private final CountDownLatch done;
+        private volatile CachedResponse response;
+
+        Flight(String key, long timeoutMillis, Flight leader) {
+            this.key = key;
+            this.timeoutMillis = timeoutMillis;
+            this.leader = leader;
+            this.done = leader == null ? new CountDownLatch(1) : null;
+        }
+
+        /**
+         * @return true if this request executes the route for all waiters
+         */
+        public boolean isLeader() {
+            return leader == null;
+        }
+
+        /**
+         * Waits for the response of the leader
+         *
+         * @return the response or null if the wait timed out or the leader could not
+         * share its response, the caller should then execute the route itself
+         * @throws InterruptedException if the thread is interrupted
+         */
+        public CachedResponse await() throws InterruptedException {
+            if (!leader.done.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                return null;
+            }
+            CachedResponse shared = leader.response;
+            if (shared != null) {
+                coalesced.increment();
+            }
+            return shared;
+        }
+
+        /**
+         * Publishes the response of the leader to the waiters. Responses setting
+         * cookies are not shared.
+         *
+         * @param status  the status code
+         * @param headers the response headers
+         * @param body    the rendered body
+         */
+        public void complete(int status, Map<String, ? extends Collection<String>> headers, byte[] body) {
+            if (!isLeader() || done.getCount() == 0) {
+                return;
+            }
+            if (!ResponseCache.isShareable(headers)) {
+                abandon();
+                return;
+            }
+            long now = System.currentTimeMillis();
+            response = new CachedResponse(null, status, ResponseCache.copyHeaders(headers),
+                                          ByteBuffer.wrap(body).asReadOnlyBuffer(),
+                                          Collections.<String>emptySet(), now, now, now);
+            land();
+        }
+
+        /**
+         * Ends the flight without a response, waiters execute the route themselves
+         */
+        public void abandon() {
+            if (!isLeader() || done.getCount() == 0) {
+                return;
+            }
+            abandoned.increment();
+            land();
+        }
+
+        private void land() {
+            flights.remove(key, this);
+            done.countDown();
+        }
+    }
+
+    /**
+     * Counters of the request coalescer
+     */
+    public static final class Stats {
+        private final long executions;
+        private final long coalesced;
+        private final long timeouts;
+        private final long abandoned;
+        private final int inFlight;
+
+        Stats(long executions, long coalesced, long timeouts, long abandoned, int inFlight) {
+            this.executions = executions;
+            this.coalesced = coalesced;
+            this.timeouts = timeouts;
+            this.abandoned = abandoned;
+            this.inFlight = inFlight;
+        }
+
+        /**
+         * @return the number of route executions by leaders
+         */
+        public long getExecutions() {
+            return executions;
+        }
+
+        /**
+         * @return the number of requests answered with the response of a leader, i.e.
+         * the number of route executions saved
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getAbandoned() {
+            return abandoned;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        @Override
+        public String toString() {
+            return "executions=" + executions + ", coalesced=" + coalesced + ", timeouts=" + timeouts
+                    + ", abandoned=" + abandoned + ", inFlight=" + inFlight;
+        }
+    }
+
+    private static final class Settings {
+        private final long timeoutMillis;
+        private final List<String> vary;
+
+        private Settings(long timeoutMillis, List<String> vary) {
+            this.timeoutMillis = timeoutMillis;
+            this.vary = vary;
+        }
+    }
+
+}
@@ -0,0 +1,541 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spark.RouteImpl;
+import spark.local.LocalDispatcher;
+import spark.local.LocalResult;
+import spark.route.RouteMatch;
+import spark.route.SimpleRouteMatcher;
+
+/**
+ * Opt-in cache of complete responses of GET routes, consulted by the
+ * {@link spark.dispatch.Dispatcher} of every backend after the before filters and
+ * before the route is invoked. Hits skip the route and the after filters.
+ * <p>
+ * Responses are keyed by the route, the path, the normalized query string and the
+ * values of the request headers declared with {@link CachePolicy#vary(String...)}.
+ * Only 200 responses without cookies, "Cache-Control: private" or "no-store" are
+ * cached. Stale responses within the stale-while-revalidate window are served while
+ * they are refreshed in the background through a {@link LocalDispatcher}.
+ * <p>
+ * Routes can tag their responses by setting the {@link #TAGS_ATTRIBUTE} request
+ * attribute to a String (space separated) or a Collection of tags.
+ */
+public class ResponseCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseCache.class);
+
+    public static final String TAGS_ATTRIBUTE = "spark.cache.tags";
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    private static final Set<String> SKIPPED_HEADERS = new HashSet<>(Arrays.asList(
+            "content-length", "transfer-encoding", "connection", "date", "age", "keep-alive"));
+
+    private static final ResponseCache INSTANCE = new ResponseCache();
+
+    private final Map<String, CachePolicy> policies = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long size;
+    private volatile long maxSize = DEFAULT_MAX_SIZE;
+    private volatile boolean offHeap;
+    private volatile LocalDispatcher dispatcher;
+    private ExecutorService revalidator;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ResponseCache() {
+    }
+
+    /**
+     * @return the response cache used by the Spark backends
+     */
+    public static ResponseCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Enables caching for a GET route
+     *
+     * @param routeMatcher the route matcher, used to refresh stale responses
+     * @param path         the route path as mapped, e.g. "/products/:id"
+     * @param policy       the policy
+     */
+    public void cache(SimpleRouteMatcher routeMatcher, String path, CachePolicy policy) {
+        if (dispatcher == null) {
+            dispatcher = LocalDispatcher.uncached(routeMatcher);
+        }
+        policies.put(path, policy);
+    }
+
+    /**
+     * Sets the maximum number of bytes held by the cache
+     *
+     * @param maxSize the maximum size
+     */
+    public synchronized void maxSize(long maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    /**
+     * Stores response bodies in direct buffers outside of the heap. Affects responses
+     * cached from now on.
+     *
+     * @param offHeap true to store bodies off-heap
+     */
+    public void offHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * @param match the route match of a GET request
+     * @return the policy of the matched route or null if it is not cached
+     */
+    public CachePolicy policyFor(RouteMatch match) {
+        if (policies.isEmpty() || !(match.getTarget() instanceof RouteImpl)) {
+            return null;
+        }
+        return policies.get(match.getMatchUri());
+    }
+
+    /**
+     * Builds the cache key of a request
+     *
+     * @param match       the route match
+     * @param policy      the policy of the route
+     * @param path        the request path
+     * @param queryString the query string, may be null
+     * @param headers     looks up request headers
+     * @return the key
+     */
+    public Key keyFor(RouteMatch match,
+                      CachePolicy policy,
+                      String path,
+                      String queryString,
+                      Function<String, String> headers) {
+        return key(match, policy.getVary(), path, queryString, headers);
+    }
+
+    static Key key(RouteMatch match,
+                   List<String> vary,
+                   String path,
+                   String queryString,
+                   Function<String, String> headers) {
+        String uri = queryString == null || queryString.isEmpty() ? path : path + "?" + normalizeQuery(queryString);
+        Map<String, String> varyValues = Collections.emptyMap();
+        StringBuilder key = new StringBuilder(match.getMatchUri())
+                .append(' ').append(((RouteImpl) match.getTarget()).getAcceptType())
+                .append('\n').append(uri);
+        if (!vary.isEmpty()) {
+            varyValues = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (String header : vary) {
+                String value = headers.apply(header);
+                key.append('\n').append(header.toLowerCase()).append('=').append(value != null ? value : "");
+                if (value != null) {
+                    varyValues.put(header, value);
+                }
+            }
+        }
+        return new Key(key.toString(), match.getMatchUri(), uri, varyValues);
+    }
+
+    /**
+     * Looks up a response. Stale responses within their stale-while-revalidate window
+     * are returned and refreshed in the background.
+     *
+     * @param key the key
+     * @return the response or null
+     */
+    public CachedResponse lookup(Key key) {
+        long now = System.currentTimeMillis();
+        CachedResponse response;
+        synchronized (this) {
+            response = entries.get(key.value);
+            if (response != null && !response.isUsable(now)) {
+                remove(key.value);
+                response = null;
+            }
+        }
+        if (response == null) {
+            misses.increment();
+            return null;
+        }
+        if (response.isFresh(now)) {
+            hits.increment();
+        } else {
+            staleHits.increment();
+            revalidate(response);
+        }
+        return response;
+    }
+
+    /**
+     * Stores a response if it may be cached
+     *
+     * @param key     the key
+     * @param policy  the policy of the route
+     * @param status  the status code
+     * @param headers the response headers
+     * @param body    the body
+     * @param tags    the value of the {@link #TAGS_ATTRIBUTE} attribute, may be null
+     * @return true if the response was cached
+     */
+    public boolean store(Key key,
+                         CachePolicy policy,
+                         int status,
+                         Map<String, ? extends Collection<String>> headers,
+                         byte[] body,
+                         Object tags) {
+        if (status != HttpServletResponse.SC_OK || !isCacheable(headers)) {
+            return false;
+        }
+        ByteBuffer buffer;
+        if (offHeap) {
+            buffer = ByteBuffer.allocateDirect(body.length);
+            buffer.put(body);
+            buffer.flip();
+        } else {
+            buffer = ByteBuffer.wrap(body);
+        }
+        Set<String> allTags = new LinkedHashSet<>(policy.getTags());
+        addTags(allTags, tags);
+        CachedResponse response = new CachedResponse(key, status, copyHeaders(headers),
+                                                     buffer.asReadOnlyBuffer(), allTags,
+                                                     System.currentTimeMillis(), policy);
+        if (response.size() > maxSize) {
+            return false;
+        }
+        synchronized (this) {
+            remove(key.value);
+            entries.put(key.value, response);
+            size += response.size();
+            evict();
+        }
+        stores.increment();
+        return true;
+    }
+
+    /**
+     * Removes all responses carrying a tag
+     *
+     * @param tag the tag
+     * @return the number of removed responses
+     */
+    public synchronized int purgeTag(String tag) {
+        int purged = 0;
+        Iterator<CachedResponse> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            CachedResponse response = iterator.next();
+            if (response.getTags().contains(tag)) {
+                size -= response.size();
+                iterator.remove();
+                purged++;
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * Removes all responses of a route
+     *
+     * @param path the route path as mapped
+     * @return the number of removed responses
+     */
+    public synchronized int purgeRoute(String path) {
+        int purged = 0;
+        Iterator<CachedResponse> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            CachedResponse response = iterator.next();
+            if (response.getKey().routePath.equals(path)) {
+                size -= response.size();
+                iterator.remove();
+                purged++;
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * Removes all responses
+     */
+    public synchronized void purgeAll() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Removes all responses and policies
+     */
+    public synchronized void clear() {
+        purgeAll();
+        policies.clear();
+        dispatcher = null;
+    }
+
+    /**
+     * @return the current hit and miss counters
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hits.sum(), staleHits.sum(), misses.sum(), stores.sum(),
+                         revalidations.sum(), evictions.sum(), entries.size(), size);
+    }
+
+    private void revalidate(final CachedResponse stale) {
+        final LocalDispatcher dispatcher = this.dispatcher;
+        final CachePolicy policy = policies.get(stale.getKey().routePath);
+        if (dispatcher == null || policy == null || !stale.startRevalidation()) {
+            return;
+        }
+        revalidations.increment();
+        revalidator().execute(() -> {
+            try {
+                Key key = stale.getKey();
+                LocalResult result = dispatcher.dispatch("GET", key.uri, key.varyValues, null);
+                if (result.getFile() != null
+                        || !store(key, policy, result.getStatus(), result.getHeaders(), result.getBody(), stale.getTags())) {
+                    synchronized (this) {
+                        if (entries.get(key.value) == stale) {
+                            remove(key.value);
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Could not refresh cached response of " + stale.getKey().uri, e);
+            }
+        });
+    }
+
+    private synchronized ExecutorService revalidator() {
+        if (revalidator == null) {
+            int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+            revalidator = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                                 new LinkedBlockingQueue<Runnable>(), runnable -> {
+                Thread thread = new Thread(runnable, "spark-cache-revalidator");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ((ThreadPoolExecutor) revalidator).allowCoreThreadTimeOut(true);
+        }
+        return revalidator;
+    }
+
+    private static boolean isCacheable(Map<String, ? extends Collection<String>> headers) {
+        return isShareable(headers) && !hasCacheControl(headers, "no-store");
+    }
+
+    /**
+     * @return true if the response may be sent to other clients, i.e. it sets no
+     * cookies and is not marked private
+     */
+    static boolean isShareable(Map<String, ? extends Collection<String>> headers) {
+        for (String name : headers.keySet()) {
+            if (name.equalsIgnoreCase("Set-Cookie")) {
+                return false;
+            }
+        }
+        return !hasCacheControl(headers, "private");
+    }
+
+    private static boolean hasCacheControl(Map<String, ? extends Collection<String>> headers, String directive) {
+        for (Map.Entry<String, ? extends Collection<String>> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase("Cache-Control")) {
+                for (String value : header.getValue()) {
+                    if (value.toLowerCase().contains(directive)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addTags(Set<String> target, Object tags) {
+        if (tags instanceof String) {
+            for (String tag : ((String) tags).split("\\s+")) {
+                if (!tag.isEmpty()) {
+                    target.add(tag);
+                }
+            }
+        } else if (tags instanceof Collection) {
+            for (Object tag : (Collection<Object>) tags) {
+                target.add(String.valueOf(tag));
+            }
+        }
+    }
+
+    static Map<String, List<String>> copyHeaders(Map<String, ? extends Collection<String>> headers) {
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, ? extends Collection<String>> header : headers.entrySet()) {
+            if (!SKIPPED_HEADERS.contains(header.getKey().toLowerCase())) {
+                copy.put(header.getKey(), Collections.unmodifiableList(new ArrayList<>(header.getValue())));
+            }
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    static String normalizeQuery(String queryString) {
+        String[] parameters = queryString.split("&");
+        Arrays.sort(parameters);
+        StringBuilder normalized = new StringBuilder(queryString.length());
+        for (String parameter : parameters) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            if (normalized.length() > 0) {
+                normalized.append('&');
+            }
+            normalized.append(parameter);
+        }
+        return normalized.toString();
+    }
+
+    private void remove(String key) {
+        CachedResponse old = entries.remove(key);
+        if (old != null) {
+            size -= old.size();
+        }
+    }
+
+    private void evict() {
+        Iterator<CachedResponse> iterator = entries.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().size();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * The cache key of a request
+     */
+    public static final class Key {
+        private final String value;
+        private final String routePath;
+        private final String uri;
+        private final Map<String, String> varyValues;
+
+        Key(String value, String routePath, String uri, Map<String, String> varyValues) {
+            this.value = value;
+            this.routePath = routePath;
+            this.uri = uri;
+            this.varyValues = varyValues;
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    /**
+     * Counters of the response cache
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long staleHits;
+        private final long misses;
+        private final long stores;
+        private final long revalidations;
+        private final long evictions;
+        private final int entries;
+        private final long size;
+
+        Stats(long hits, long staleHits, long misses, long stores,
+              long revalidations, long evictions, int entries, long size) {
+            this.hits = hits;
+            this.staleHits = staleHits;
+            this.misses = misses;
+            this.stores = stores;
+            this.revalidations = revalidations;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.size = size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getStaleHits() {
+            return staleHits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getStores() {
+            return stores;
+        }
+
+        public long getRevalidations() {
+            return revalidations;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", staleHits=" + staleHits + ", misses=" + misses + ", stores=" + stores
+                    + ", revalidations=" + revalidations + ", evictions=" + evictions
+                    + ", entries=" + entries + ", size=" + size;
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import spark.Request;
+import spark.RouteImpl;
+import spark.route.RouteMatch;
+
+/**
+ * Validators of dynamic responses. When automatic ETags are enabled all backends
+ * hash the rendered body of successful GET responses that do
+ * not carry an ETag yet and answer a matching If-None-Match with 304 Not Modified.
+ * <p>
+ * Routes can also register cheap suppliers of their current version, e.g. a row
+ * version or a last modification time kept in memory. They are evaluated before the
+ * route is invoked and conditional GET and HEAD requests matching them are answered
+ * with 304 without invoking the route or rendering its result.
+ */
+public class Validators {
+
+    private static final Validators INSTANCE = new Validators();
+
+    private final Map<String, RouteValidator> routes = new ConcurrentHashMap<>();
+    private volatile boolean autoETags;
+
+    Validators() {
+    }
+
+    /**
+     * @return the validators used by the Spark backends
+     */
+    public static Validators getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Enables or disables automatic ETags for rendered GET responses
+     *
+     * @param enabled true to enable
+     */
+    public void autoETags(boolean enabled) {
+        this.autoETags = enabled;
+    }
+
+    /**
+     * @return true if automatic ETags are enabled
+     */
+    public boolean isAutoETags() {
+        return autoETags;
+    }
+
+    /**
+     * Registers the ETag supplier of a route
+     *
+     * @param path     the route path as mapped, e.g. "/products/:id"
+     * @param supplier supplies the current entity tag of the requested resource
+     */
+    public void etag(String path, ETagSupplier supplier) {
+        routes.compute(path, (key, validator) ->
+                new RouteValidator(supplier, validator != null ? validator.lastModifiedSupplier : null));
+    }
+
+    /**
+     * Registers the last modification time supplier of a route
+     *
+     * @param path     the route path as mapped, e.g. "/products/:id"
+     * @param supplier supplies the last modification time of the requested resource
+     */
+    public void lastModified(String path, LastModifiedSupplier supplier) {
+        routes.compute(path, (key, validator) ->
+                new RouteValidator(validator != null ? validator.etagSupplier : null, supplier));
+    }
+
+    /**
+     * @param match the route match
+     * @return the validator of the matched route or null if it has none
+     */
+    public RouteValidator validatorFor(RouteMatch match) {
+        if (routes.isEmpty() || !(match.getTarget() instanceof RouteImpl)) {
+            return null;
+        }
+        return routes.get(match.getMatchUri());
+    }
+
+    /**
+     * Resets all settings
+     */
+    public void clear() {
+        autoETags = false;
+        routes.clear();
+    }
+
+    /**
+     * Supplies the entity tag of the requested resource. The value is quoted unless
+     * it already is a quoted (strong or weak) entity tag.
+     */
+    @FunctionalInterface
+    public interface ETagSupplier {
+        /**
+         * @param request the request, with the route parameters of the matched route
+         * @return the entity tag or null if unknown
+         * @throws Exception when the version cannot be determined
+         */
+        String etag(Request request) throws Exception;
+    }
+
+    /**
+     * Supplies the last modification time of the requested resource
+     */
+    @FunctionalInterface
+    public interface LastModifiedSupplier {
+        /**
+         * @param request the request, with the route parameters of the matched route
+         * @return the last modification time in millis or 0 if unknown
+         * @throws Exception when the time cannot be determined
+         */
+        long lastModified(Request request) throws Exception;
+    }
+
+    /**
+     * The version suppliers of a route
+     */
+    public static final class RouteValidator {
+        private final ETagSupplier etagSupplier;
+        private final LastModifiedSupplier lastModifiedSupplier;
+
+        RouteValidator(ETagSupplier etagSupplier, LastModifiedSupplier lastModifiedSupplier) {
+            this.etagSupplier = etagSupplier;
+            this.lastModifiedSupplier = lastModifiedSupplier;
+        }
+
+        /**
+         * @param request the request
+         * @return the quoted entity tag or null
+         * @throws Exception when the supplier fails
+         */
+        public String etag(Request request) throws Exception {
+            String etag = etagSupplier != null ? etagSupplier.etag(request) : null;
+            if (etag == null || etag.startsWith("\"") || etag.startsWith("W/\"")) {
+                return etag;
+            }
+            return '"' + etag + '"';
+        }
+
+        /**
+         * @param request the request
+         * @return the last modification time in millis or 0
+         * @throws Exception when the supplier fails
+         */
+        public long lastModified(Request request) throws Exception {
+            return lastModifiedSupplier != null ? lastModifiedSupplier.lastModified(request) : 0;
+        }
+    }
+
+}
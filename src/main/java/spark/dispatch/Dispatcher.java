@@ -0,0 +1,596 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.dispatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spark.Access;
+import spark.FilterImpl;
+import spark.HaltException;
+import spark.ItemStream;
+import spark.Request;
+import spark.Response;
+import spark.RouteImpl;
+import spark.Suspended;
+import spark.cache.CachePolicy;
+import spark.cache.CachedResponse;
+import spark.cache.IdempotencyStore;
+import spark.cache.RequestCoalescer;
+import spark.cache.ResponseCache;
+import spark.cache.Validators;
+import spark.exception.ExceptionHandlerImpl;
+import spark.exception.ExceptionMapper;
+import spark.prerender.Prerenderer;
+import spark.route.HttpMethod;
+import spark.route.RouteMatch;
+import spark.route.SimpleRouteMatcher;
+import spark.utils.CacheUtils;
+
+/**
+ * Runs requests through the filters and routes of a route matcher: prerendered
+ * snapshots, before filters, the response cache, request coalescing, idempotency
+ * keys, conditional requests, the route, after filters, halts and exception mappers.
+ * The Undertow handler, the servlet filter and the in-process dispatcher all dispatch
+ * through it, each with its own {@link Exchange}.
+ */
+public class Dispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(Dispatcher.class);
+
+    private static final String ACCEPT_TYPE_REQUEST_MIME_HEADER = "Accept";
+    private static final String HTTP_METHOD_OVERRIDE_HEADER = "X-HTTP-Method-Override";
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+    private static final String ETAG_HEADER = "ETag";
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+    private static final String LAST_MODIFIED_HEADER = "Last-Modified";
+    private static final String AGE_HEADER = "Age";
+    private static final String DEFAULT_CONTENT_TYPE = "text/html; charset=utf-8";
+
+    private final SimpleRouteMatcher routeMatcher;
+    private final boolean cached;
+
+    private final Prerenderer prerenderer = Prerenderer.getInstance();
+    private final ResponseCache responseCache = ResponseCache.getInstance();
+    private final RequestCoalescer coalescer = RequestCoalescer.getInstance();
+    private final IdempotencyStore idempotencyStore = IdempotencyStore.getInstance();
+    private final Validators validators = Validators.getInstance();
+    private final ExceptionMapper exceptionMapper = ExceptionMapper.getInstance();
+
+    /**
+     * Constructor
+     *
+     * @param routeMatcher the route matcher
+     */
+    public Dispatcher(SimpleRouteMatcher routeMatcher) {
+        this(routeMatcher, true);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param routeMatcher the route matcher
+     * @param cached       false to bypass prerendered snapshots, the response cache and
+     *                     request coalescing, used to refresh them
+     */
+    public Dispatcher(SimpleRouteMatcher routeMatcher, boolean cached) {
+        this.routeMatcher = routeMatcher;
+        this.cached = cached;
+    }
+
+    /**
+     * Dispatches a request
+     *
+     * @param exchange the backend side of the request
+     * @throws IOException when writing the response fails
+     */
+    public void dispatch(Exchange exchange) throws IOException {
+        String method = exchange.requestHeader(HTTP_METHOD_OVERRIDE_HEADER);
+        if (method == null) {
+            method = exchange.requestMethod();
+        }
+        String httpMethodStr = method.toLowerCase();
+        String uri = exchange.requestPath();
+        String acceptType = exchange.requestHeader(ACCEPT_TYPE_REQUEST_MIME_HEADER);
+
+        LOG.debug("httpMethod: {}, uri: {}", httpMethodStr, uri);
+
+        if (routeMatcher.isSessionless(uri)) {
+            exchange.disableSession();
+        }
+
+        String bodyContent = null;
+        byte[] bodyBytes = null;
+        RouteImpl streamingRoute = null;
+        Object streamingElement = null;
+        File fileContent = null;
+        CachePolicy cachePolicy = null;
+        ResponseCache.Key cacheKey = null;
+        boolean notModified = false;
+        RequestCoalescer.Flight flight = null;
+        IdempotencyStore.Execution execution = null;
+
+        Request request = null;
+        Response response = null;
+
+        try {
+            try {
+                // BEFORE filters
+                List<RouteMatch> matchSet =
+                        routeMatcher.findTargetsForRequestedRoute(HttpMethod.before, uri, acceptType);
+
+                for (RouteMatch filterMatch : matchSet) {
+                    Object filterTarget = filterMatch.getTarget();
+                    if (filterTarget instanceof FilterImpl) {
+                        request = exchange.request(filterMatch);
+                        response = exchange.response();
+
+                        ((FilterImpl) filterTarget).handle(request, response);
+
+                        String bodyAfterFilter = Access.getBody(response);
+                        if (bodyAfterFilter != null) {
+                            bodyContent = bodyAfterFilter;
+                        }
+                    }
+                }
+                // BEFORE filters, END
+
+                // prerendered snapshots are served once the filters let the request through
+                if (cached && bodyContent == null && ("get".equals(httpMethodStr) || "head".equals(httpMethodStr))) {
+                    Prerenderer.Snapshot snapshot = prerenderer.lookup(uri);
+                    if (snapshot != null) {
+                        if (snapshot.getContentType() != null) {
+                            exchange.contentType(snapshot.getContentType());
+                        }
+                        exchange.sendFile(snapshot.getFile());
+                        return;
+                    }
+                }
+
+                HttpMethod httpMethod = HttpMethod.valueOf(httpMethodStr);
+
+                RouteMatch match = routeMatcher.findTargetForRequestedRoute(httpMethod, uri, acceptType);
+
+                Object target = null;
+                if (match != null) {
+                    target = match.getTarget();
+                } else if (httpMethod == HttpMethod.head && bodyContent == null) {
+                    // See if get is mapped to provide default head mapping
+                    RouteMatch getMatch = routeMatcher.findTargetForRequestedRoute(HttpMethod.get, uri, acceptType);
+                    bodyContent = getMatch != null ? "" : null;
+                }
+
+                if (target != null && !(target instanceof RouteImpl) && exchange.takeOver(target, match)) {
+                    return;
+                }
+
+                if (cached && match != null && httpMethod == HttpMethod.get) {
+                    cachePolicy = responseCache.policyFor(match);
+                    if (cachePolicy != null) {
+                        cacheKey = responseCache.keyFor(match, cachePolicy, uri, exchange.queryString(),
+                                                        exchange::requestHeader);
+                        CachedResponse cachedResponse = responseCache.lookup(cacheKey);
+                        if (cachedResponse != null) {
+                            sendCached(exchange, cachedResponse, true);
+                            return;
+                        }
+                    }
+                    flight = coalescer.join(match, uri, exchange.queryString(), exchange::requestHeader);
+                    if (flight != null && !flight.isLeader()) {
+                        CachedResponse shared = flight.await();
+                        flight = null;
+                        if (shared != null) {
+                            sendCached(exchange, shared, true);
+                            return;
+                        }
+                    }
+                }
+
+                if (match != null && (httpMethod == HttpMethod.post || httpMethod == HttpMethod.put)
+                        && idempotencyStore.isEnabled()) {
+                    String idempotencyKey = exchange.requestHeader(IdempotencyStore.IDEMPOTENCY_KEY_HEADER);
+                    if (idempotencyKey != null) {
+                        execution = idempotencyStore.begin(httpMethodStr, uri, idempotencyKey,
+                                                           exchange.requestHeader(AUTHORIZATION_HEADER));
+                        if (execution.getReplay() != null) {
+                            exchange.setResponseHeader(IdempotencyStore.REPLAYED_HEADER, "true");
+                            sendCached(exchange, execution.getReplay(), false);
+                            return;
+                        }
+                        if (execution.isConflict()) {
+                            exchange.status(HttpServletResponse.SC_CONFLICT);
+                            exchange.contentType(DEFAULT_CONTENT_TYPE);
+                            exchange.send(ByteBuffer.wrap(CONFLICT.getBytes(StandardCharsets.UTF_8)));
+                            return;
+                        }
+                    }
+                }
+
+                if (target instanceof RouteImpl) {
+                    RouteImpl route = (RouteImpl) target;
+                    request = exchange.request(match);
+                    response = exchange.response();
+
+                    if (isNotModified(exchange, httpMethod, match, request)) {
+                        notModified = true;
+                    } else {
+                        Object element = route.handle(request, response);
+                        if (element instanceof Suspended) {
+                            if (exchange.suspend((Suspended) element,
+                                                 (status, body) -> resume(exchange, uri, acceptType, status, body))) {
+                                return;
+                            }
+                            element = await(exchange, (Suspended) element);
+                        }
+
+                        if (element instanceof ItemStream) {
+                            String contentType = ((ItemStream<?>) element).getContentType();
+                            if (contentType != null && exchange.contentType() == null) {
+                                exchange.contentType(contentType);
+                            }
+                        }
+                        File file = asFile(element);
+                        if (file != null) {
+                            if (file.isFile()) {
+                                fileContent = file;
+                            }
+                        } else if ((route.isStreaming() || element instanceof ItemStream)
+                                && !needsBodyBytes(cacheKey, flight, execution)) {
+                            // rendered into the response while it is written
+                            streamingRoute = route;
+                            streamingElement = element;
+                            bodyContent = "";
+                        } else {
+                            byte[] result = route.renderBytes(element);
+                            if (result != null) {
+                                // the encoded body is kept in bodyBytes, bodyContent only marks it as consumed
+                                bodyBytes = result;
+                                bodyContent = "";
+                            }
+                        }
+                    }
+                }
+
+                // AFTER filters
+                matchSet = routeMatcher.findTargetsForRequestedRoute(HttpMethod.after, uri, acceptType);
+
+                for (RouteMatch filterMatch : matchSet) {
+                    Object filterTarget = filterMatch.getTarget();
+                    if (filterTarget instanceof FilterImpl) {
+                        request = exchange.request(filterMatch);
+                        response = exchange.response();
+
+                        ((FilterImpl) filterTarget).handle(request, response);
+
+                        String bodyAfterFilter = Access.getBody(response);
+                        if (bodyAfterFilter != null) {
+                            bodyContent = bodyAfterFilter;
+                            bodyBytes = null;
+                            streamingRoute = null;
+                        }
+                    }
+                }
+                // AFTER filters, END
+
+            } catch (HaltException hEx) {
+                LOG.debug("halt performed");
+                fileContent = null;
+                cacheKey = null;
+                notModified = false;
+                if (flight != null) {
+                    flight.abandon();
+                }
+                exchange.status(hEx.getStatusCode());
+                bodyBytes = null;
+                streamingRoute = null;
+                bodyContent = hEx.getBody() != null ? hEx.getBody() : "";
+            } catch (Exception e) {
+                fileContent = null;
+                cacheKey = null;
+                notModified = false;
+                if (flight != null) {
+                    flight.abandon();
+                }
+                if (execution != null) {
+                    execution.abandon();
+                }
+                ExceptionHandlerImpl handler = exceptionMapper.getHandler(e);
+                if (handler != null) {
+                    if (response == null) {
+                        response = exchange.response();
+                    }
+                    handler.handle(e, request, response);
+                    String bodyAfterFilter = Access.getBody(response);
+                    if (bodyAfterFilter != null) {
+                        bodyContent = bodyAfterFilter;
+                        bodyBytes = null;
+                        streamingRoute = null;
+                    }
+                } else {
+                    LOG.error("", e);
+                    exchange.status(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    bodyContent = INTERNAL_ERROR;
+                    bodyBytes = null;
+                    streamingRoute = null;
+                }
+            }
+
+            if (flight != null && (notModified || bodyContent == null)) {
+                flight.abandon();
+            }
+            if (execution != null && bodyContent == null) {
+                execution.abandon();
+            }
+
+            if (notModified && bodyContent == null) {
+                if (!exchange.isCommitted()) {
+                    exchange.status(HttpServletResponse.SC_NOT_MODIFIED);
+                    exchange.end();
+                }
+                return;
+            }
+
+            if (bodyContent == null && fileContent != null) {
+                if (!exchange.isCommitted()) {
+                    exchange.sendFile(fileContent);
+                }
+                return;
+            }
+
+            // If redirected and content is null set to empty string to not answer with 404
+            if (bodyContent == null && response != null && response.isRedirected()) {
+                bodyContent = "";
+            }
+
+            if (bodyContent == null) {
+                if (exchange.passOn()) {
+                    return;
+                }
+                LOG.info("The requested route [{}] has not been mapped in Spark", uri);
+                exchange.status(HttpServletResponse.SC_NOT_FOUND);
+                bodyContent = NOT_FOUND;
+            }
+
+            // Write body content
+            if (exchange.isCommitted()) {
+                return;
+            }
+            if (exchange.contentType() == null) {
+                exchange.contentType(DEFAULT_CONTENT_TYPE);
+            }
+            if (streamingRoute != null) {
+                exchange.stream(streamingRoute, streamingElement);
+                return;
+            }
+            byte[] bytes = bodyBytes != null ? bodyBytes : bodyContent.getBytes(StandardCharsets.UTF_8);
+            String etag = null;
+            if ("get".equals(httpMethodStr) && exchange.status() == HttpServletResponse.SC_OK
+                    && validators.isAutoETags() && exchange.responseHeader(ETAG_HEADER) == null) {
+                etag = CacheUtils.fastETag(bytes);
+                exchange.setResponseHeader(ETAG_HEADER, etag);
+            }
+            if (cacheKey != null || flight != null) {
+                if (!exchange.hasCookies()) {
+                    Map<String, List<String>> headers = exchange.responseHeaders();
+                    if (cacheKey != null) {
+                        responseCache.store(cacheKey, cachePolicy, exchange.status(), headers, bytes,
+                                            request != null ? request.attribute(ResponseCache.TAGS_ATTRIBUTE) : null);
+                    }
+                    if (flight != null) {
+                        flight.complete(exchange.status(), headers, bytes);
+                    }
+                } else if (flight != null) {
+                    flight.abandon();
+                }
+            }
+            if (execution != null) {
+                execution.complete(exchange.status(), exchange.responseHeaders(), bytes);
+            }
+            if (etag != null && CacheUtils.etagMatches(exchange.requestHeader(IF_NONE_MATCH_HEADER), etag)) {
+                exchange.status(HttpServletResponse.SC_NOT_MODIFIED);
+                exchange.end();
+            } else {
+                exchange.send(ByteBuffer.wrap(bytes));
+            }
+        } finally {
+            // no-ops once completed, release waiting duplicates when the route ended the
+            // exchange itself, the response was committed or an Error escaped
+            if (flight != null) {
+                flight.abandon();
+            }
+            if (execution != null) {
+                execution.abandon();
+            }
+            if (streamingElement instanceof ItemStream) {
+                // closed when written, otherwise a filter, a halt or an exception dropped it
+                close((ItemStream<?>) streamingElement);
+            }
+        }
+    }
+
+    private static void close(ItemStream<?> items) {
+        try {
+            items.close();
+        } catch (Exception e) {
+            LOG.warn("Could not close item stream", e);
+        }
+    }
+
+    /**
+     * @return true if the rendered body is needed as a whole, to cache, share or store
+     * it. Automatic ETags do not count, streamed bodies are sent without one so that
+     * they keep their bounded memory.
+     */
+    private static boolean needsBodyBytes(ResponseCache.Key cacheKey,
+                                          RequestCoalescer.Flight flight,
+                                          IdempotencyStore.Execution execution) {
+        return cacheKey != null || flight != null || execution != null;
+    }
+
+    /**
+     * Evaluates the version suppliers of the matched route, sets the ETag and
+     * Last-Modified headers and checks the conditional headers of the request
+     */
+    private boolean isNotModified(Exchange exchange,
+                                  HttpMethod httpMethod,
+                                  RouteMatch match,
+                                  Request request) throws Exception {
+        if (httpMethod != HttpMethod.get && httpMethod != HttpMethod.head) {
+            return false;
+        }
+        Validators.RouteValidator validator = validators.validatorFor(match);
+        if (validator == null) {
+            return false;
+        }
+        String etag = validator.etag(request);
+        long lastModified = validator.lastModified(request);
+        if (etag != null) {
+            exchange.setResponseHeader(ETAG_HEADER, etag);
+        }
+        if (lastModified > 0) {
+            exchange.setResponseHeader(LAST_MODIFIED_HEADER, CacheUtils.formatDate(lastModified));
+        }
+        return CacheUtils.isNotModified(exchange.requestHeader(IF_NONE_MATCH_HEADER),
+                                        exchange.requestHeader(IF_MODIFIED_SINCE_HEADER), etag, lastModified);
+    }
+
+    /**
+     * Sends a cached, shared or replayed response, answering conditional GET requests
+     * with 304 when they match its ETag or Last-Modified header
+     */
+    private static void sendCached(Exchange exchange, CachedResponse cached, boolean conditional) throws IOException {
+        exchange.status(cached.getStatus());
+        for (Map.Entry<String, List<String>> header : cached.getHeaders().entrySet()) {
+            List<String> values = header.getValue();
+            for (int i = 0; i < values.size(); i++) {
+                if (i == 0) {
+                    exchange.setResponseHeader(header.getKey(), values.get(i));
+                } else {
+                    exchange.addResponseHeader(header.getKey(), values.get(i));
+                }
+            }
+        }
+        exchange.setResponseHeader(AGE_HEADER, String.valueOf(cached.getAgeSeconds(System.currentTimeMillis())));
+        if (conditional && cached.getStatus() == HttpServletResponse.SC_OK
+                && CacheUtils.isNotModified(exchange.requestHeader(IF_NONE_MATCH_HEADER),
+                                            exchange.requestHeader(IF_MODIFIED_SINCE_HEADER),
+                                            exchange.responseHeader(ETAG_HEADER),
+                                            CacheUtils.parseDate(exchange.responseHeader(LAST_MODIFIED_HEADER)))) {
+            exchange.status(HttpServletResponse.SC_NOT_MODIFIED);
+            exchange.end();
+            return;
+        }
+        exchange.send(cached.getBody());
+    }
+
+    /**
+     * Sends the response of a suspended request the backend resumed without the
+     * dispatching thread, after applying the after filters like to any other response
+     */
+    private void resume(Exchange exchange, String uri, String acceptType, int status, String body) {
+        Request request = null;
+        Response response = null;
+        String bodyContent = body;
+        try {
+            exchange.status(status);
+            try {
+                List<RouteMatch> matchSet = routeMatcher.findTargetsForRequestedRoute(HttpMethod.after, uri, acceptType);
+                for (RouteMatch filterMatch : matchSet) {
+                    Object filterTarget = filterMatch.getTarget();
+                    if (filterTarget instanceof FilterImpl) {
+                        request = exchange.request(filterMatch);
+                        response = exchange.response();
+
+                        ((FilterImpl) filterTarget).handle(request, response);
+
+                        String bodyAfterFilter = Access.getBody(response);
+                        if (bodyAfterFilter != null) {
+                            bodyContent = bodyAfterFilter;
+                        }
+                    }
+                }
+            } catch (HaltException hEx) {
+                LOG.debug("halt performed");
+                exchange.status(hEx.getStatusCode());
+                bodyContent = hEx.getBody() != null ? hEx.getBody() : "";
+            } catch (Exception e) {
+                ExceptionHandlerImpl handler = exceptionMapper.getHandler(e);
+                String bodyAfterFilter = null;
+                if (handler != null) {
+                    if (response == null) {
+                        response = exchange.response();
+                    }
+                    handler.handle(e, request, response);
+                    bodyAfterFilter = Access.getBody(response);
+                } else {
+                    LOG.error("", e);
+                    exchange.status(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    bodyAfterFilter = INTERNAL_ERROR;
+                }
+                if (bodyAfterFilter != null) {
+                    bodyContent = bodyAfterFilter;
+                }
+            }
+            if (exchange.isCommitted()) {
+                return;
+            }
+            if (exchange.contentType() == null) {
+                exchange.contentType(DEFAULT_CONTENT_TYPE);
+            }
+            exchange.send(ByteBuffer.wrap(bodyContent.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            LOG.error("Could not send the resumed response", e);
+            exchange.end();
+        }
+    }
+
+    /**
+     * Waits on the dispatching thread for the response of a suspended request
+     */
+    private static String await(final Exchange exchange, Suspended suspended) throws InterruptedException {
+        final String[] body = new String[1];
+        Access.await(suspended, (status, content) -> {
+            exchange.status(status);
+            body[0] = content;
+        });
+        return body[0];
+    }
+
+    private static File asFile(Object element) {
+        if (element instanceof File) {
+            return (File) element;
+        }
+        if (element instanceof Path) {
+            return ((Path) element).toFile();
+        }
+        return null;
+    }
+
+    private static final String NOT_FOUND = "<html><body><h2>404 Not found</h2></body></html>";
+    private static final String CONFLICT = "<html><body><h2>409 Conflict</h2></body></html>";
+    private static final String INTERNAL_ERROR = "<html><body><h2>500 Internal Error</h2></body></html>";
+}
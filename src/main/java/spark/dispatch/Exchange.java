@@ -0,0 +1,190 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.dispatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import spark.Request;
+import spark.Response;
+import spark.RouteImpl;
+import spark.Suspended;
+import spark.route.RouteMatch;
+
+/**
+ * The side of a request that depends on the backend, used by the {@link Dispatcher}.
+ * There is one implementation each for Undertow exchanges, servlet requests and
+ * in-process requests.
+ */
+public interface Exchange {
+
+    /**
+     * @return the request method, e.g. "GET"
+     */
+    String requestMethod();
+
+    /**
+     * @return the request path without the query string
+     */
+    String requestPath();
+
+    /**
+     * @return the query string or null
+     */
+    String queryString();
+
+    /**
+     * @param name the header name
+     * @return the first value of the request header or null
+     */
+    String requestHeader(String name);
+
+    /**
+     * @param match the matched filter or route
+     * @return the request handed to the filter or route
+     */
+    Request request(RouteMatch match);
+
+    /**
+     * @return the response handed to filters and routes
+     */
+    Response response();
+
+    /**
+     * Keeps the request from resolving or creating a session, called for sessionless paths
+     */
+    void disableSession();
+
+    /**
+     * Lets the backend handle route targets other than {@link RouteImpl}, e.g. WebSocket upgrades
+     *
+     * @param target the route target
+     * @param match  the route match
+     * @return true if the backend took over the request
+     * @throws Exception when the target fails
+     */
+    boolean takeOver(Object target, RouteMatch match) throws Exception;
+
+    /**
+     * Hands a suspended response to the backend
+     *
+     * @param suspended  the suspended response
+     * @param completion sends the response once it is resumed or timed out, invoked
+     *                   by the backend on a thread that may block
+     * @return true if the backend invokes the completion when the response is
+     * resumed, false if the dispatching thread has to wait for it
+     */
+    boolean suspend(Suspended suspended, Suspended.Completion completion);
+
+    /**
+     * Lets the request continue to the next handler of the backend when no route consumed it
+     *
+     * @return true if the request was passed on, false to answer it with 404
+     */
+    boolean passOn();
+
+    /**
+     * @return the response status
+     */
+    int status();
+
+    /**
+     * @param status the response status
+     */
+    void status(int status);
+
+    /**
+     * @return the content type of the response or null
+     */
+    String contentType();
+
+    /**
+     * @param contentType the content type of the response
+     */
+    void contentType(String contentType);
+
+    /**
+     * @param name the header name
+     * @return the first value of the response header or null
+     */
+    String responseHeader(String name);
+
+    /**
+     * Replaces a response header
+     *
+     * @param name  the header name
+     * @param value the header value
+     */
+    void setResponseHeader(String name, String value);
+
+    /**
+     * Adds a response header value
+     *
+     * @param name  the header name
+     * @param value the header value
+     */
+    void addResponseHeader(String name, String value);
+
+    /**
+     * @return a copy of the response headers, including the content type
+     */
+    Map<String, List<String>> responseHeaders();
+
+    /**
+     * @return true if the response sets cookies
+     */
+    boolean hasCookies();
+
+    /**
+     * @return true if the response was sent or the backend completed it otherwise
+     */
+    boolean isCommitted();
+
+    /**
+     * Sends the body with a Content-Length and completes the response
+     *
+     * @param body the body
+     * @throws IOException when writing fails
+     */
+    void send(ByteBuffer body) throws IOException;
+
+    /**
+     * Sends a file, answering conditional and Range requests
+     *
+     * @param file the file
+     * @throws IOException when writing fails
+     */
+    void sendFile(File file) throws IOException;
+
+    /**
+     * Renders the body of a streaming route into the response while it is written
+     *
+     * @param route   the route
+     * @param element the element returned by the route
+     * @throws IOException when writing fails
+     */
+    void stream(RouteImpl route, Object element) throws IOException;
+
+    /**
+     * Completes the response without a body
+     */
+    void end();
+
+}
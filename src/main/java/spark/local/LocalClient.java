@@ -0,0 +1,126 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.local;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import spark.route.SimpleRouteMatcher;
+
+/**
+ * Client that invokes the filters and routes of a route matcher in-process through
+ * a {@link LocalDispatcher}, without a server, a socket or an HTTP client. It is
+ * meant for fast tests, for routes that compose the responses of other routes and
+ * for measuring the overhead of the framework without network jitter.
+ * <p>
+ * Example:
+ * LocalResult result = client.get("/users/42").header("Accept", "application/json").execute();
+ */
+public class LocalClient {
+
+    private final LocalDispatcher dispatcher;
+
+    /**
+     * @param routeMatcher the route matcher
+     */
+    public LocalClient(SimpleRouteMatcher routeMatcher) {
+        this.dispatcher = new LocalDispatcher(routeMatcher);
+    }
+
+    public RequestBuilder get(String uri) {
+        return request("GET", uri);
+    }
+
+    public RequestBuilder post(String uri) {
+        return request("POST", uri);
+    }
+
+    public RequestBuilder put(String uri) {
+        return request("PUT", uri);
+    }
+
+    public RequestBuilder patch(String uri) {
+        return request("PATCH", uri);
+    }
+
+    public RequestBuilder delete(String uri) {
+        return request("DELETE", uri);
+    }
+
+    public RequestBuilder head(String uri) {
+        return request("HEAD", uri);
+    }
+
+    public RequestBuilder options(String uri) {
+        return request("OPTIONS", uri);
+    }
+
+    /**
+     * @param method the HTTP method
+     * @param uri    the request URI, may include a query string
+     * @return a builder of the request
+     */
+    public RequestBuilder request(String method, String uri) {
+        return new RequestBuilder(dispatcher, method, uri);
+    }
+
+    /**
+     * Builds and executes a request, a builder may be executed more than once
+     */
+    public static final class RequestBuilder {
+        private final LocalDispatcher dispatcher;
+        private final String method;
+        private final String uri;
+        private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private byte[] body;
+
+        private RequestBuilder(LocalDispatcher dispatcher, String method, String uri) {
+            this.dispatcher = dispatcher;
+            this.method = method;
+            this.uri = uri;
+        }
+
+        public RequestBuilder header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        /**
+         * @param body the body, encoded as UTF-8
+         * @return this builder
+         */
+        public RequestBuilder body(String body) {
+            return body(body != null ? body.getBytes(StandardCharsets.UTF_8) : null);
+        }
+
+        public RequestBuilder body(byte[] body) {
+            this.body = body;
+            return this;
+        }
+
+        /**
+         * Runs the request through the filters and the route on the calling thread
+         *
+         * @return the result
+         */
+        public LocalResult execute() {
+            return dispatcher.dispatch(method, uri, headers, body);
+        }
+    }
+
+}
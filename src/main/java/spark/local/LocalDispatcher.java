@@ -0,0 +1,80 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.local;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import spark.dispatch.Dispatcher;
+import spark.route.SimpleRouteMatcher;
+
+/**
+ * Runs requests through the filters and routes of a route matcher in-process,
+ * without a server or a socket. Requests go through the same {@link Dispatcher} as
+ * the Undertow and servlet backends, including the response cache, request
+ * coalescing, idempotency keys and prerendered snapshots.
+ */
+public class LocalDispatcher {
+
+    private final Dispatcher dispatcher;
+
+    /**
+     * Constructor
+     *
+     * @param routeMatcher the route matcher
+     */
+    public LocalDispatcher(SimpleRouteMatcher routeMatcher) {
+        this(new Dispatcher(routeMatcher));
+    }
+
+    private LocalDispatcher(Dispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Creates a dispatcher that bypasses prerendered snapshots, the response cache and
+     * request coalescing, used to refresh them
+     *
+     * @param routeMatcher the route matcher
+     * @return the dispatcher
+     */
+    public static LocalDispatcher uncached(SimpleRouteMatcher routeMatcher) {
+        return new LocalDispatcher(new Dispatcher(routeMatcher, false));
+    }
+
+    /**
+     * Dispatches a request
+     *
+     * @param method  the HTTP method
+     * @param uri     the request URI, may include a query string
+     * @param headers the request headers, may be null
+     * @param body    the request body, may be null
+     * @return the result
+     */
+    public LocalResult dispatch(String method, String uri, Map<String, String> headers, byte[] body) {
+        LocalExchange exchange = new LocalExchange(method, uri, headers, body);
+        try {
+            dispatcher.dispatch(exchange);
+        } catch (IOException e) {
+            // the response is recorded in memory
+            throw new UncheckedIOException(e);
+        }
+        return exchange.result();
+    }
+
+}
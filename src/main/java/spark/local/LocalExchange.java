@@ -0,0 +1,225 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.local;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spark.Request;
+import spark.Response;
+import spark.RouteImpl;
+import spark.Suspended;
+import spark.dispatch.Exchange;
+import spark.route.RouteMatch;
+
+/**
+ * In-process side of a request dispatched by the {@link spark.dispatch.Dispatcher}.
+ * The response is recorded in memory, suspended responses are awaited on the
+ * dispatching thread.
+ */
+class LocalExchange implements Exchange {
+    private static final Logger LOG = LoggerFactory.getLogger(LocalExchange.class);
+
+    private static final String SET_COOKIE_HEADER = "Set-Cookie";
+    private static final byte[] EMPTY = new byte[0];
+    private static final String INTERNAL_ERROR = "<html><body><h2>500 Internal Error</h2></body></html>";
+
+    private final LocalRequest request;
+    private final LocalResponse response = new LocalResponse();
+    private final boolean head;
+    private byte[] body = EMPTY;
+    private File file;
+    private boolean committed;
+
+    /**
+     * Constructor
+     *
+     * @param method  the HTTP method
+     * @param uri     the request URI, may include a query string
+     * @param headers the request headers, may be null
+     * @param body    the request body, may be null
+     */
+    LocalExchange(String method, String uri, Map<String, String> headers, byte[] body) {
+        this.request = new LocalRequest(method, uri, headers, body);
+        this.head = "HEAD".equals(request.requestMethod());
+    }
+
+    /**
+     * @return the recorded response
+     */
+    LocalResult result() {
+        return new LocalResult(response.status(), response.headers(), body, file);
+    }
+
+    @Override
+    public String requestMethod() {
+        return request.requestMethod();
+    }
+
+    @Override
+    public String requestPath() {
+        return request.pathInfo();
+    }
+
+    @Override
+    public String queryString() {
+        return request.queryString();
+    }
+
+    @Override
+    public String requestHeader(String name) {
+        return request.headers(name);
+    }
+
+    @Override
+    public Request request(RouteMatch match) {
+        request.changeMatch(match);
+        return request;
+    }
+
+    @Override
+    public Response response() {
+        return response;
+    }
+
+    @Override
+    public void disableSession() {
+        // in-process requests have no session
+    }
+
+    @Override
+    public boolean takeOver(Object target, RouteMatch match) {
+        return false;
+    }
+
+    @Override
+    public boolean suspend(Suspended suspended, Suspended.Completion completion) {
+        return false;
+    }
+
+    @Override
+    public boolean passOn() {
+        return false;
+    }
+
+    @Override
+    public int status() {
+        return response.status();
+    }
+
+    @Override
+    public void status(int status) {
+        response.status(status);
+    }
+
+    @Override
+    public String contentType() {
+        return response.type();
+    }
+
+    @Override
+    public void contentType(String contentType) {
+        response.type(contentType);
+    }
+
+    @Override
+    public String responseHeader(String name) {
+        List<String> values = response.headers().get(name);
+        return values != null && !values.isEmpty() ? values.get(0) : null;
+    }
+
+    @Override
+    public void setResponseHeader(String name, String value) {
+        response.setHeader(name, value);
+    }
+
+    @Override
+    public void addResponseHeader(String name, String value) {
+        response.header(name, value);
+    }
+
+    @Override
+    public Map<String, List<String>> responseHeaders() {
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : response.headers().entrySet()) {
+            headers.put(header.getKey(), new ArrayList<>(header.getValue()));
+        }
+        return headers;
+    }
+
+    @Override
+    public boolean hasCookies() {
+        return response.headers().containsKey(SET_COOKIE_HEADER);
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    @Override
+    public void send(ByteBuffer body) {
+        if (!head) {
+            byte[] bytes = new byte[body.remaining()];
+            body.get(bytes);
+            this.body = bytes;
+        }
+        committed = true;
+    }
+
+    @Override
+    public void sendFile(File file) {
+        this.file = file;
+        committed = true;
+    }
+
+    /**
+     * Renders the body into memory, a failure is answered with 500
+     */
+    @Override
+    public void stream(RouteImpl route, Object element) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            route.render(element, out);
+            if (!head) {
+                body = out.toByteArray();
+            }
+        } catch (Exception e) {
+            LOG.error("", e);
+            response.status(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            body = INTERNAL_ERROR.getBytes(StandardCharsets.UTF_8);
+        }
+        committed = true;
+    }
+
+    @Override
+    public void end() {
+        committed = true;
+    }
+
+}
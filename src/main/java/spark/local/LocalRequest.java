@@ -0,0 +1,370 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.local;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.servlet.http.HttpServletRequest;
+
+import spark.QueryParamsMap;
+import spark.Request;
+import spark.Session;
+import spark.route.RouteMatch;
+import spark.utils.RecordReader;
+import spark.utils.SparkUtils;
+
+/**
+ * Synthetic request handed to routes that are invoked in-process, without a
+ * server or a socket
+ */
+class LocalRequest implements Request {
+
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+    private final String method;
+    private final String path;
+    private final String queryString;
+    private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final byte[] body;
+
+    private Map<String, String> params = Collections.emptyMap();
+    private List<String> splat = Collections.emptyList();
+    private Map<String, String[]> queryParams;
+    private QueryParamsMap queryMap;
+    private Map<String, String> cookies;
+    private Map<String, Object> attributes;
+
+    /**
+     * Constructor
+     *
+     * @param method  the HTTP method
+     * @param uri     the request URI, may include a query string
+     * @param headers the request headers, may be null
+     * @param body    the request body, may be null
+     */
+    LocalRequest(String method, String uri, Map<String, String> headers, byte[] body) {
+        this.method = method.toUpperCase();
+        int query = uri.indexOf('?');
+        this.path = query == -1 ? uri : uri.substring(0, query);
+        this.queryString = query == -1 || query == uri.length() - 1 ? null : uri.substring(query + 1);
+        if (headers != null) {
+            this.headers.putAll(headers);
+        }
+        this.body = body != null ? body : new byte[0];
+    }
+
+    @Override
+    public void changeMatch(RouteMatch match) {
+        List<String> requestList = SparkUtils.convertRouteToList(match.getRequestURI());
+        List<String> matchedList = SparkUtils.convertRouteToList(match.getMatchUri());
+
+        params = getParams(requestList, matchedList);
+        splat = getSplat(requestList, matchedList);
+    }
+
+    private static Map<String, String> getParams(List<String> request, List<String> matched) {
+        Map<String, String> params = new HashMap<>();
+        for (int i = 0; (i < request.size()) && (i < matched.size()); i++) {
+            String matchedPart = matched.get(i);
+            if (SparkUtils.isParam(matchedPart)) {
+                params.put(matchedPart.toLowerCase(), request.get(i));
+            }
+        }
+        return Collections.unmodifiableMap(params);
+    }
+
+    private static List<String> getSplat(List<String> request, List<String> matched) {
+        int nbrOfRequestParts = request.size();
+        int nbrOfMatchedParts = matched.size();
+        boolean sameLength = (nbrOfRequestParts == nbrOfMatchedParts);
+
+        List<String> splat = new ArrayList<>();
+        for (int i = 0; (i < nbrOfRequestParts) && (i < nbrOfMatchedParts); i++) {
+            String matchedPart = matched.get(i);
+            if (SparkUtils.isSplat(matchedPart)) {
+                StringBuilder splatParam = new StringBuilder(request.get(i));
+                if (!sameLength && (i == (nbrOfMatchedParts - 1))) {
+                    for (int j = i + 1; j < nbrOfRequestParts; j++) {
+                        splatParam.append("/");
+                        splatParam.append(request.get(j));
+                    }
+                }
+                splat.add(splatParam.toString());
+            }
+        }
+        return Collections.unmodifiableList(splat);
+    }
+
+    @Override
+    public Map<String, String> params() {
+        return params;
+    }
+
+    @Override
+    public String params(String param) {
+        if (param == null) {
+            return null;
+        }
+        if (param.startsWith(":")) {
+            return params.get(param.toLowerCase());
+        } else {
+            return params.get(":" + param.toLowerCase());
+        }
+    }
+
+    @Override
+    public String[] splat() {
+        return splat.toArray(new String[splat.size()]);
+    }
+
+    @Override
+    public String requestMethod() {
+        return method;
+    }
+
+    @Override
+    public String scheme() {
+        return "http";
+    }
+
+    @Override
+    public String host() {
+        String host = headers.get("Host");
+        return host != null ? host : "localhost";
+    }
+
+    @Override
+    public String userAgent() {
+        return headers.get("User-Agent");
+    }
+
+    @Override
+    public int port() {
+        return -1;
+    }
+
+    @Override
+    public String pathInfo() {
+        return path;
+    }
+
+    @Override
+    public String servletPath() {
+        return null;
+    }
+
+    @Override
+    public String contextPath() {
+        return null;
+    }
+
+    @Override
+    public String url() {
+        return scheme() + "://" + host() + path;
+    }
+
+    @Override
+    public String contentType() {
+        return headers.get("Content-Type");
+    }
+
+    @Override
+    public String ip() {
+        return "127.0.0.1";
+    }
+
+    @Override
+    public String body() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] bodyAsBytes() {
+        return body;
+    }
+
+    @Override
+    public RecordReader lines(int maxLineLength) {
+        return RecordReader.of(body, maxLineLength);
+    }
+
+    @Override
+    public int contentLength() {
+        return body.length;
+    }
+
+    @Override
+    public String queryParams(String queryParam) {
+        String[] values = queryParams().contains(queryParam) ? queryParams.get(queryParam) : null;
+        return values != null && values.length > 0 ? values[0] : null;
+    }
+
+    @Override
+    public String headers(String header) {
+        return headers.get(header);
+    }
+
+    @Override
+    public Set<String> queryParams() {
+        if (queryParams == null) {
+            queryParams = new LinkedHashMap<>();
+            parseParams(queryString, queryParams);
+            String contentType = contentType();
+            if ("POST".equals(method) && contentType != null && contentType.startsWith(FORM_CONTENT_TYPE)) {
+                parseParams(body(), queryParams);
+            }
+        }
+        return queryParams.keySet();
+    }
+
+    private static void parseParams(String encoded, Map<String, String[]> target) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String name = decode(eq == -1 ? pair : pair.substring(0, eq));
+            String value = eq == -1 ? "" : decode(pair.substring(eq + 1));
+            String[] values = target.get(name);
+            if (values == null) {
+                target.put(name, new String[] {value});
+            } else {
+                String[] extended = new String[values.length + 1];
+                System.arraycopy(values, 0, extended, 0, values.length);
+                extended[values.length] = value;
+                target.put(name, extended);
+            }
+        }
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public Set<String> headers() {
+        return Collections.unmodifiableSet(headers.keySet());
+    }
+
+    @Override
+    public String queryString() {
+        return queryString;
+    }
+
+    @Override
+    public void attribute(String attribute, Object value) {
+        if (attributes == null) {
+            attributes = new HashMap<>();
+        }
+        attributes.put(attribute, value);
+    }
+
+    @Override
+    public Object attribute(String attribute) {
+        return attributes != null ? attributes.get(attribute) : null;
+    }
+
+    @Override
+    public Set<String> attributes() {
+        return attributes != null ? attributes.keySet() : null;
+    }
+
+    @Override
+    public HttpServletRequest raw() {
+        return null;
+    }
+
+    @Override
+    public QueryParamsMap queryMap() {
+        if (queryMap == null) {
+            queryParams();
+            queryMap = new QueryParamsMap(queryParams) {
+            };
+        }
+        return queryMap;
+    }
+
+    @Override
+    public QueryParamsMap queryMap(String key) {
+        return queryMap().get(key);
+    }
+
+    @Override
+    public Session session() {
+        return session(true);
+    }
+
+    @Override
+    public Session session(boolean create) {
+        if (!create) {
+            return null;
+        }
+        throw new IllegalStateException("Sessions are not available for local requests to " + path);
+    }
+
+    @Override
+    public Map<String, String> cookies() {
+        if (cookies == null) {
+            String header = headers.get("Cookie");
+            if (header == null) {
+                return null;
+            }
+            cookies = new HashMap<>();
+            for (String cookie : header.split(";")) {
+                int eq = cookie.indexOf('=');
+                if (eq > 0) {
+                    cookies.put(cookie.substring(0, eq).trim(), cookie.substring(eq + 1).trim());
+                }
+            }
+        }
+        return cookies;
+    }
+
+    @Override
+    public String cookie(String name) {
+        Map<String, String> cookies = cookies();
+        return cookies != null ? cookies.get(name) : null;
+    }
+
+    @Override
+    public String uri() {
+        return path;
+    }
+
+    @Override
+    public String protocol() {
+        return "HTTP/1.1";
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.local;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.http.HttpServletResponse;
+
+import spark.Response;
+
+/**
+ * Synthetic response handed to routes that are invoked in-process. Status and
+ * headers are recorded in memory.
+ */
+class LocalResponse implements Response {
+
+    private int status = HttpServletResponse.SC_OK;
+    private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private String body;
+    private boolean redirected;
+
+    @Override
+    public void status(int statusCode) {
+        this.status = statusCode;
+    }
+
+    int status() {
+        return status;
+    }
+
+    Map<String, List<String>> headers() {
+        return headers;
+    }
+
+    @Override
+    public void type(String contentType) {
+        setHeader("Content-Type", contentType);
+    }
+
+    String type() {
+        List<String> values = headers.get("Content-Type");
+        return values != null ? values.get(0) : null;
+    }
+
+    @Override
+    public void body(String body) {
+        this.body = body;
+    }
+
+    @Override
+    public String body() {
+        return body;
+    }
+
+    @Override
+    public HttpServletResponse raw() {
+        return null;
+    }
+
+    @Override
+    public void redirect(String location) {
+        redirect(location, HttpServletResponse.SC_FOUND);
+    }
+
+    @Override
+    public void redirect(String location, int httpStatusCode) {
+        redirected = true;
+        status(httpStatusCode);
+        setHeader("Location", location);
+    }
+
+    @Override
+    public boolean isRedirected() {
+        return redirected;
+    }
+
+    @Override
+    public void header(String header, String value) {
+        List<String> values = headers.get(header);
+        if (values == null) {
+            values = new ArrayList<>(1);
+            headers.put(header, values);
+        }
+        values.add(value);
+    }
+
+    void setHeader(String header, String value) {
+        headers.remove(header);
+        header(header, value);
+    }
+
+    @Override
+    public void cookie(String name, String value) {
+        cookie(name, value, -1, false);
+    }
+
+    @Override
+    public void cookie(String name, String value, int maxAge) {
+        cookie(name, value, maxAge, false);
+    }
+
+    @Override
+    public void cookie(String name, String value, int maxAge, boolean secured) {
+        cookie("", name, value, maxAge, secured);
+    }
+
+    @Override
+    public void cookie(String path, String name, String value, int maxAge, boolean secured) {
+        StringBuilder cookie = new StringBuilder(name).append('=').append(value);
+        if (path != null && !path.isEmpty()) {
+            cookie.append("; Path=").append(path);
+        }
+        if (maxAge >= 0) {
+            cookie.append("; Max-Age=").append(maxAge);
+        }
+        if (secured) {
+            cookie.append("; Secure");
+        }
+        header("Set-Cookie", cookie.toString());
+    }
+
+    @Override
+    public void removeCookie(String name) {
+        header("Set-Cookie", name + "=; Max-Age=0");
+    }
+
+}
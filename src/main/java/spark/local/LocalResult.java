@@ -0,0 +1,94 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.local;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of a route invoked in-process: status, headers and either a body or
+ * the file the route returned
+ */
+public final class LocalResult {
+
+    private final int status;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+    private final File file;
+
+    LocalResult(int status, Map<String, List<String>> headers, byte[] body, File file) {
+        this.status = status;
+        this.headers = Collections.unmodifiableMap(headers);
+        this.body = body;
+        this.file = file;
+    }
+
+    /**
+     * @return the status code
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the response headers, names are case insensitive
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @param name the header name
+     * @return the first value of the header or null
+     */
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return values != null && !values.isEmpty() ? values.get(0) : null;
+    }
+
+    /**
+     * @return the content type or null
+     */
+    public String getContentType() {
+        return getHeader("Content-Type");
+    }
+
+    /**
+     * @return the body, empty if the route returned a file
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return the body decoded as UTF-8
+     */
+    public String getBodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the file returned by the route or null
+     */
+    public File getFile() {
+        return file;
+    }
+
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.prerender;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spark.local.LocalDispatcher;
+import spark.local.LocalResult;
+import spark.route.SimpleRouteMatcher;
+
+/**
+ * Prerenders GET routes to files. Declared routes are invoked in-process and their
+ * responses are written to a directory, from where the Undertow and servlet backends
+ * serve them like static files (with sendfile, Range and conditional requests)
+ * instead of invoking the route. Snapshots are refreshed on a schedule, on demand
+ * or per path through {@link #invalidate(String)}. URIs an expansion no longer
+ * produces are dropped with their files when the path is rendered again.
+ * <p>
+ * Prerendered paths are served after the before filters, so these still guard
+ * them, but without invoking the route or the after filters. Only routes whose
+ * output doesn't depend on the request should be declared.
+ */
+public class Prerenderer {
+    private static final Logger LOG = LoggerFactory.getLogger(Prerenderer.class);
+
+    private static final String INDEX_FILE = "index.html";
+
+    private static final Prerenderer INSTANCE = new Prerenderer();
+
+    private final Map<String, Expansion> declarations = new ConcurrentHashMap<>();
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> renderedUris = new ConcurrentHashMap<>();
+
+    private volatile LocalDispatcher dispatcher;
+    private volatile File directory;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> refresh;
+
+    /**
+     * Supplies the parameter values a route path is rendered with
+     */
+    @FunctionalInterface
+    public interface Expansion {
+
+        /**
+         * @return the parameters of each page to render, e.g. {":page" -> "intro"}
+         */
+        Iterable<Map<String, String>> expand();
+    }
+
+    /**
+     * A prerendered response
+     */
+    public static final class Snapshot {
+        private final File file;
+        private final String contentType;
+        private final boolean written;
+
+        Snapshot(File file, String contentType, boolean written) {
+            this.file = file;
+            this.contentType = contentType;
+            this.written = written;
+        }
+
+        /**
+         * @return the file holding the response body
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the content type of the response or null
+         */
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    /**
+     * @return the prerenderer used by the Spark backends
+     */
+    public static Prerenderer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets the directory snapshots are written to. Defaults to a temporary directory.
+     *
+     * @param directory the directory
+     */
+    public void directory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Declares a GET route for prerendering and renders it in the background. The
+     * route must already be mapped.
+     *
+     * @param routeMatcher the route matcher to render with
+     * @param path         the route path, e.g. "/docs/:page"
+     * @param expansion    the parameter values to render the path with, may be null
+     *                     for paths without parameters
+     */
+    public void add(SimpleRouteMatcher routeMatcher, final String path, Expansion expansion) {
+        if (dispatcher == null) {
+            dispatcher = LocalDispatcher.uncached(routeMatcher);
+        }
+        declarations.put(path, expansion != null ? expansion : Collections::emptyList);
+        submit(() -> render(path));
+    }
+
+    /**
+     * @param uri the request URI
+     * @return the snapshot for the URI or null
+     */
+    public Snapshot lookup(String uri) {
+        return snapshots.isEmpty() ? null : snapshots.get(uri);
+    }
+
+    /**
+     * Re-renders all declared routes in the background
+     */
+    public void renderAll() {
+        submit(this::renderDeclarations);
+    }
+
+    /**
+     * Re-renders a declared route path or a single prerendered URI in the background
+     *
+     * @param path a declared route path or a prerendered URI
+     */
+    public void invalidate(final String path) {
+        if (declarations.containsKey(path)) {
+            submit(() -> render(path));
+        } else if (snapshots.containsKey(path)) {
+            submit(() -> renderUri(path));
+        }
+    }
+
+    /**
+     * Re-renders all declared routes periodically
+     *
+     * @param period the period
+     * @param unit   the unit of the period
+     */
+    public synchronized void refreshEvery(long period, TimeUnit unit) {
+        if (refresh != null) {
+            refresh.cancel(false);
+        }
+        refresh = executor().scheduleAtFixedRate(this::renderDeclarations, period, period, unit);
+    }
+
+    /**
+     * Stops refreshing and forgets all declarations and snapshots
+     */
+    public synchronized void clear() {
+        if (refresh != null) {
+            refresh.cancel(false);
+            refresh = null;
+        }
+        declarations.clear();
+        snapshots.clear();
+        renderedUris.clear();
+        dispatcher = null;
+    }
+
+    private void renderDeclarations() {
+        for (String path : declarations.keySet()) {
+            render(path);
+        }
+    }
+
+    private void render(String path) {
+        Expansion expansion = declarations.get(path);
+        if (expansion == null) {
+            return;
+        }
+        Set<String> uris = new LinkedHashSet<>();
+        try {
+            if (hasParameters(path)) {
+                for (Map<String, String> parameters : expansion.expand()) {
+                    uris.add(expand(path, parameters));
+                }
+            } else {
+                uris.add(path);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Could not expand " + path + " for prerendering", e);
+            return;
+        }
+        for (String uri : uris) {
+            renderUri(uri);
+        }
+        Set<String> previous = renderedUris.put(path, uris);
+        if (previous != null) {
+            for (String uri : previous) {
+                if (!uris.contains(uri) && !isRendered(uri)) {
+                    LOG.debug("Dropping {}, the expansion of {} no longer produces it", uri, path);
+                    drop(uri);
+                }
+            }
+        }
+    }
+
+    private boolean isRendered(String uri) {
+        for (Set<String> uris : renderedUris.values()) {
+            if (uris.contains(uri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // deletes the file of the snapshot unless the route returned it
+    private void drop(String uri) {
+        Snapshot snapshot = snapshots.remove(uri);
+        if (snapshot == null || !snapshot.written) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(snapshot.getFile().toPath());
+        } catch (IOException e) {
+            LOG.warn("Could not delete " + snapshot.getFile(), e);
+        }
+    }
+
+    private void renderUri(String uri) {
+        LocalDispatcher dispatcher = this.dispatcher;
+        if (dispatcher == null) {
+            return;
+        }
+        try {
+            LocalResult result = dispatcher.dispatch("GET", uri, null, null);
+            if (result.getStatus() != HttpServletResponse.SC_OK) {
+                LOG.warn("Not prerendering {}, the route responded with {}", uri, result.getStatus());
+                drop(uri);
+                return;
+            }
+            File file = result.getFile();
+            boolean written = file == null;
+            if (written) {
+                file = fileFor(uri);
+                write(file.toPath(), result.getBody());
+            }
+            Snapshot previous = snapshots.put(uri, new Snapshot(file, result.getContentType(), written));
+            if (previous != null && previous.written && !previous.getFile().equals(file)) {
+                Files.deleteIfExists(previous.getFile().toPath());
+            }
+            LOG.debug("Prerendered {} to {}", uri, file);
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Could not prerender " + uri, e);
+        }
+    }
+
+    private File fileFor(String uri) throws IOException {
+        String relative = uri.substring(1);
+        int lastSlash = relative.lastIndexOf('/');
+        if (relative.isEmpty() || relative.endsWith("/")) {
+            relative += INDEX_FILE;
+        } else if (relative.indexOf('.', lastSlash + 1) == -1) {
+            relative += "/" + INDEX_FILE;
+        }
+        File root = directory();
+        File file = new File(root, relative);
+        if (!file.getCanonicalPath().startsWith(root.getCanonicalPath() + File.separator)) {
+            throw new IOException("Path " + uri + " is outside of " + root);
+        }
+        return file;
+    }
+
+    private synchronized File directory() throws IOException {
+        if (directory == null) {
+            directory = Files.createTempDirectory("spark-prerender").toFile();
+            LOG.info("Prerendering to {}", directory);
+        }
+        return directory;
+    }
+
+    // snapshots may be sent while being replaced, so they are never written in place
+    private static void write(Path target, byte[] content) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), ".prerender", ".tmp");
+        try {
+            Files.write(temp, content);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static boolean hasParameters(String path) {
+        return path.contains("/:") || path.contains("*");
+    }
+
+    static String expand(String path, Map<String, String> parameters) {
+        StringBuilder uri = new StringBuilder();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            uri.append('/');
+            if (segment.startsWith(":")) {
+                String value = parameters.get(segment);
+                if (value == null) {
+                    value = parameters.get(segment.substring(1));
+                }
+                if (value == null) {
+                    throw new IllegalArgumentException("No value for " + segment + " in " + path);
+                }
+                uri.append(encode(value));
+            } else if (segment.equals("*")) {
+                String value = parameters.get("*");
+                if (value == null) {
+                    throw new IllegalArgumentException("No value for * in " + path);
+                }
+                uri.append(value);
+            } else {
+                uri.append(segment);
+            }
+        }
+        if (uri.length() == 0 || path.endsWith("/")) {
+            uri.append('/');
+        }
+        return uri.toString();
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void submit(Runnable task) {
+        executor().execute(task);
+    }
+
+    /**
+     * Waits until the renderings submitted so far have finished, used by tests
+     */
+    void awaitRendering() throws Exception {
+        executor().submit(() -> { }).get(10, TimeUnit.SECONDS);
+    }
+
+    private synchronized ScheduledExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "spark-prerender");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spark.utils.CacheUtils;
+import spark.utils.ClassUtils;
+import spark.utils.StringUtils;
+
+/**
+ * Content-hash fingerprints of static files. Every file in the registered folders
+ * gets an additional URL with a hash of its content inserted before the extension,
+ * e.g. "/js/app.js" becomes "/js/app.3f9a1c2b4d.js". Since the URL changes whenever
+ * the content does, fingerprinted URLs are served with a far future
+ * {@link #CACHE_CONTROL immutable} Cache-Control header.
+ * <p>
+ * Templates look up fingerprinted URLs with {@link #url(String)}, e.g. by putting
+ * {@link #getInstance()} into the model. Both directions are plain hash lookups.
+ */
+public class AssetFingerprints {
+    private static final Logger LOG = LoggerFactory.getLogger(AssetFingerprints.class);
+
+    public static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private static final int HASH_LENGTH = 10;
+
+    private static final AssetFingerprints INSTANCE = new AssetFingerprints();
+
+    // original path -> fingerprinted path
+    private final Map<String, String> urls = new ConcurrentHashMap<>();
+    // fingerprinted path -> asset
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+
+    /**
+     * @return the fingerprints shared by the static file handlers
+     */
+    public static AssetFingerprints getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Fingerprints the files of an external folder and keeps the fingerprints
+     * up to date when files change
+     *
+     * @param folder the external static file folder
+     */
+    public void addExternalFolder(File folder) {
+        final Path root = folder.toPath().toAbsolutePath().normalize();
+        StaticFileWatcher.watch(folder, changed -> update(root, changed));
+        try {
+            int count = addFiles(root, root, null, false);
+            LOG.info("Fingerprinted {} static files in {}", count, root);
+        } catch (IOException e) {
+            LOG.error("Could not fingerprint static files in " + root, e);
+        }
+    }
+
+    /**
+     * Fingerprints the files of a folder in classpath, which may reside in the
+     * file system or in a jar
+     *
+     * @param folder the folder in classpath
+     */
+    public void addClassPathFolder(String folder) {
+        String base = StringUtils.cleanPath(folder);
+        while (base.startsWith("/")) {
+            base = base.substring(1);
+        }
+        while (base.endsWith("/")) {
+            base = base.substring(0, base.length() - 1);
+        }
+        URL url = ClassUtils.getDefaultClassLoader().getResource(base);
+        if (url == null) {
+            LOG.error("Static file folder {} not found in classpath", folder);
+            return;
+        }
+        try {
+            int count;
+            if ("file".equals(url.getProtocol())) {
+                Path root = Paths.get(url.toURI());
+                count = addFiles(root, root, base, false);
+            } else if ("jar".equals(url.getProtocol())) {
+                count = addJarEntries((JarURLConnection) url.openConnection());
+            } else {
+                LOG.warn("Can't fingerprint static files in {}", url);
+                return;
+            }
+            LOG.info("Fingerprinted {} static files in {}", count, url);
+        } catch (IOException | URISyntaxException e) {
+            LOG.error("Could not fingerprint static files in " + url, e);
+        }
+    }
+
+    /**
+     * @param path the path of a static file relative to its folder, e.g. "/js/app.js"
+     * @return the fingerprinted path or the path itself if the file has no fingerprint
+     */
+    public String url(String path) {
+        String fingerprinted = urls.get(path);
+        return fingerprinted != null ? fingerprinted : path;
+    }
+
+    /**
+     * @param fingerprintedPath a request path
+     * @return the asset the fingerprinted path refers to or null
+     */
+    public Asset resolve(String fingerprintedPath) {
+        return fingerprintedPath != null ? assets.get(fingerprintedPath) : null;
+    }
+
+    /**
+     * Inserts a hash into a path before the file extension
+     *
+     * @param path the path
+     * @param hash the hash
+     * @return the fingerprinted path
+     */
+    static String fingerprint(String path, String hash) {
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        if (dot <= slash + 1) {
+            // no extension (or a dot file)
+            return path + "." + hash;
+        }
+        return path.substring(0, dot) + "." + hash + path.substring(dot);
+    }
+
+    private int addFiles(final Path root, Path start, final String classPathBase, final boolean replace) throws IOException {
+        final int[] count = {0};
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile()) {
+                    String path = "/" + root.relativize(file).toString().replace(File.separatorChar, '/');
+                    String classPathName = classPathBase != null ? classPathBase + path : null;
+                    try (InputStream in = Files.newInputStream(file)) {
+                        register(new Asset(path, file.toFile(), file.toUri().toURL(), classPathName,
+                                           attrs.size(), attrs.lastModifiedTime().toMillis()), hash(in), replace);
+                    }
+                    count[0]++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return count[0];
+    }
+
+    private int addJarEntries(JarURLConnection connection) throws IOException {
+        JarFile jar = connection.getJarFile();
+        String base = connection.getEntryName();
+        String prefix = base.endsWith("/") ? base : base + "/";
+        int count = 0;
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            if (entry.isDirectory() || !entry.getName().startsWith(prefix)) {
+                continue;
+            }
+            String path = entry.getName().substring(prefix.length() - 1);
+            URL url = new URL("jar:" + connection.getJarFileURL() + "!/" + entry.getName());
+            try (InputStream in = jar.getInputStream(entry)) {
+                register(new Asset(path, null, url, entry.getName(), entry.getSize(), entry.getTime()), hash(in), false);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private synchronized void register(Asset asset, String hash, boolean replace) {
+        String old = urls.get(asset.getPath());
+        if (old != null) {
+            if (!replace) {
+                // folders registered earlier take precedence
+                return;
+            }
+            assets.remove(old);
+        }
+        String fingerprinted = fingerprint(asset.getPath(), hash);
+        urls.put(asset.getPath(), fingerprinted);
+        assets.put(fingerprinted, asset);
+    }
+
+    private void update(Path root, Path changed) {
+        try {
+            if (Files.isRegularFile(changed)) {
+                addFiles(root, changed, null, true);
+            } else if (Files.isDirectory(changed)) {
+                // the root itself is reported when events were lost
+                remove(changed);
+                addFiles(root, changed, null, true);
+            } else {
+                remove(changed);
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not update fingerprints for " + changed, e);
+        }
+    }
+
+    private synchronized void remove(Path deleted) {
+        Iterator<Asset> iterator = assets.values().iterator();
+        while (iterator.hasNext()) {
+            Asset asset = iterator.next();
+            if (asset.getFile() != null && asset.getFile().toPath().startsWith(deleted)) {
+                urls.remove(asset.getPath());
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String hash(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return CacheUtils.toHex(digest.digest()).substring(0, HASH_LENGTH);
+    }
+
+    /**
+     * A fingerprinted static file
+     */
+    public static final class Asset {
+        private final String path;
+        private final File file;
+        private final URL url;
+        private final String classPathName;
+        private final long length;
+        private final long lastModified;
+
+        Asset(String path, File file, URL url, String classPathName, long length, long lastModified) {
+            this.path = path;
+            this.file = file;
+            this.url = url;
+            this.classPathName = classPathName;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return the original path relative to the static file folder
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return the file or null if the asset is not a plain file (e.g. a jar entry)
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the location of the content
+         */
+        public URL getUrl() {
+            return url;
+        }
+
+        /**
+         * @return the classpath name or null if the asset is from an external folder
+         */
+        public String getClassPathName() {
+            return classPathName;
+        }
+
+        /**
+         * @return the content length when the fingerprint was taken
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return the last modification time in millis when the fingerprint was taken
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+
+}
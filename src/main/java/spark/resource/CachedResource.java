@@ -0,0 +1,138 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.resource;
+
+import java.net.URL;
+
+import spark.utils.CacheUtils;
+
+/**
+ * A static resource held in memory together with its precomputed validators
+ */
+public class CachedResource {
+
+    private final String key;
+    private final URL source;
+    private final byte[] content;
+    private final String etag;
+    private final String gzipEtag;
+    private final long lastModified;
+    private final String lastModifiedHeader;
+    private final String contentType;
+
+    private volatile boolean gzipResolved;
+    private volatile byte[] gzipContent;
+
+    CachedResource(String key, URL source, byte[] content, long lastModified, String contentType) {
+        this.key = key;
+        this.source = source;
+        this.content = content;
+        // files get the same ETag whether they are sent from memory or from disk
+        this.etag = lastModified > 0 && source != null && "file".equals(source.getProtocol())
+                ? CacheUtils.fileETag(content.length, lastModified)
+                : CacheUtils.strongETag(content);
+        this.gzipEtag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+        this.lastModified = lastModified;
+        this.lastModifiedHeader = lastModified > 0 ? CacheUtils.formatDate(lastModified) : null;
+        this.contentType = contentType;
+    }
+
+    /**
+     * @return the content bytes, must not be modified
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * @return the gzipped content or null if there is no compressed variant
+     */
+    public byte[] getGzipContent() {
+        return gzipContent;
+    }
+
+    /**
+     * @return the quoted strong ETag, derived from length and modification time for
+     * files and from the content otherwise
+     */
+    public String getETag() {
+        return etag;
+    }
+
+    /**
+     * @return the quoted strong ETag of the gzipped variant
+     */
+    public String getGzipETag() {
+        return gzipEtag;
+    }
+
+    /**
+     * @return the last modification time in millis, 0 if unknown
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the Last-Modified header value or null if unknown
+     */
+    public String getLastModifiedHeader() {
+        return lastModifiedHeader;
+    }
+
+    /**
+     * @return the content type or null if unknown
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    URL getSource() {
+        return source;
+    }
+
+    boolean isGzipResolved() {
+        return gzipResolved;
+    }
+
+    void setGzipContent(byte[] gzipContent) {
+        this.gzipContent = gzipContent;
+        this.gzipResolved = true;
+    }
+
+    long size() {
+        byte[] gzip = gzipContent;
+        return content.length + (gzip != null ? gzip.length : 0);
+    }
+
+    /**
+     * Evaluates the conditional request headers against this resource
+     *
+     * @param ifNoneMatch     the If-None-Match header value
+     * @param ifModifiedSince the If-Modified-Since header value
+     * @param gzip            whether the gzipped variant is selected
+     * @return true if a 304 Not Modified response can be sent
+     */
+    public boolean isNotModified(String ifNoneMatch, String ifModifiedSince, boolean gzip) {
+        return CacheUtils.isNotModified(ifNoneMatch, ifModifiedSince, gzip ? gzipEtag : etag, lastModified);
+    }
+
+}
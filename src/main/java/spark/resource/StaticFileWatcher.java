@@ -0,0 +1,258 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches an external static file folder (recursively) and notifies listeners about
+ * changed paths. There is at most one watcher thread per folder, until the watchers
+ * are {@link #stopAll() stopped}. The folder is walked
+ * once by the watcher thread to register its subfolders, listeners get the files and
+ * folders found by that walk instead of walking the folder themselves.
+ */
+public final class StaticFileWatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(StaticFileWatcher.class);
+
+    private static final Map<Path, StaticFileWatcher> WATCHERS = new HashMap<>();
+
+    private final Path root;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // listeners waiting for the first walk of the folder, null once it is done
+    private List<Listener> walkListeners = new ArrayList<>();
+
+    private StaticFileWatcher(Path root) throws IOException {
+        this.root = root;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Listener for the changes below a watched folder
+     */
+    public interface Listener {
+
+        /**
+         * Invoked from the watcher thread with a changed path
+         *
+         * @param changed the changed path, or the folder itself when events were lost
+         */
+        void changed(Path changed);
+
+        /**
+         * Invoked once with the files and folders below the folder, including the folder
+         * itself, when the folder has been walked
+         *
+         * @param paths the absolute paths found
+         */
+        default void walked(Set<Path> paths) {
+        }
+    }
+
+    /**
+     * Registers a listener for changes below the folder. The folder is walked in the
+     * background, the listener learns about its content through
+     * {@link Listener#walked(Set)}.
+     *
+     * @param folder   the folder to watch
+     * @param listener the listener
+     * @return true if the folder is being watched
+     */
+    public static synchronized boolean watch(File folder, Listener listener) {
+        Path root = folder.toPath().toAbsolutePath().normalize();
+        StaticFileWatcher watcher = WATCHERS.get(root);
+        if (watcher == null) {
+            if (!Files.isDirectory(root)) {
+                LOG.error("Could not watch static file folder {}, it is not a directory", root);
+                return false;
+            }
+            try {
+                watcher = new StaticFileWatcher(root);
+            } catch (IOException e) {
+                LOG.error("Could not watch static file folder " + root, e);
+                return false;
+            }
+            watcher.addListener(listener);
+            Thread thread = new Thread(watcher::run, "spark-static-watcher");
+            thread.setDaemon(true);
+            thread.start();
+            WATCHERS.put(root, watcher);
+        } else {
+            watcher.addListener(listener);
+        }
+        return true;
+    }
+
+    /**
+     * Stops all watchers, their threads end and folders watched again later get new ones
+     */
+    public static synchronized void stopAll() {
+        for (StaticFileWatcher watcher : WATCHERS.values()) {
+            try {
+                watcher.watchService.close();
+            } catch (IOException e) {
+                LOG.warn("Could not stop watching static file folder " + watcher.root, e);
+            }
+        }
+        WATCHERS.clear();
+    }
+
+    private void addListener(final Listener listener) {
+        listeners.add(listener);
+        synchronized (this) {
+            if (walkListeners != null) {
+                walkListeners.add(listener);
+                return;
+            }
+        }
+        // the first walk is over, walk once more for the late listener
+        Thread thread = new Thread(() -> {
+            try {
+                listener.walked(walk(root, false));
+            } catch (IOException e) {
+                LOG.error("Could not walk static file folder " + root, e);
+            }
+        }, "spark-static-walker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        Set<Path> found = null;
+        try {
+            found = walk(root, true);
+        } catch (ClosedWatchServiceException e) {
+            return;
+        } catch (IOException e) {
+            LOG.error("Could not watch static file folder " + root, e);
+        }
+        List<Listener> waiting;
+        synchronized (this) {
+            waiting = walkListeners;
+            walkListeners = null;
+        }
+        if (found != null) {
+            for (Listener listener : waiting) {
+                listener.walked(found);
+            }
+        }
+        found = null;
+
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory = directories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW || directory == null) {
+                    notifyListeners(root);
+                    continue;
+                }
+                Path changed = directory.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed)) {
+                    try {
+                        walk(changed, true);
+                    } catch (ClosedWatchServiceException e) {
+                        return;
+                    } catch (IOException e) {
+                        LOG.warn("Could not watch new folder " + changed, e);
+                    }
+                }
+                notifyListeners(changed);
+            }
+            if (!key.reset()) {
+                directories.remove(key);
+            }
+        }
+    }
+
+    private void notifyListeners(Path changed) {
+        LOG.debug("Static file changed: {}", changed);
+        for (Listener listener : listeners) {
+            listener.changed(changed);
+        }
+    }
+
+    /**
+     * Walks a folder, optionally registering its subfolders with the watch service.
+     * Subfolders that can't be read or watched are skipped.
+     *
+     * @return the files and folders found
+     */
+    private Set<Path> walk(Path start, final boolean register) throws IOException {
+        final Set<Path> found = new HashSet<>();
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                found.add(dir);
+                if (register) {
+                    try {
+                        directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                    } catch (IOException e) {
+                        LOG.warn("Could not watch static file folder {}: {}", dir, e.toString());
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                found.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                LOG.warn("Could not read static file folder {}: {}", file, e.toString());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return found;
+    }
+
+}
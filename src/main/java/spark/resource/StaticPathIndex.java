@@ -0,0 +1,176 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the files and folders below an external static file folder, filled from
+ * the walk of its {@link StaticFileWatcher} and kept up to date by it. It answers
+ * whether a request path can possibly be a static file without touching the file
+ * system, so requests for dynamic routes skip the resource lookup altogether. Until
+ * the folder has been walked every path may be a static file.
+ */
+public class StaticPathIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(StaticPathIndex.class);
+
+    private final Path root;
+    // replaced as a whole when the folder is indexed again, so lookups never see it empty
+    private volatile Set<String> paths = ConcurrentHashMap.newKeySet();
+    private volatile boolean ready;
+
+    private StaticPathIndex(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Creates the index of a folder and starts watching it. The folder is indexed in
+     * the background.
+     *
+     * @param folder the external static file folder
+     * @return the index or null if the folder can't be watched
+     */
+    public static StaticPathIndex of(File folder) {
+        final StaticPathIndex index = new StaticPathIndex(folder.toPath().toAbsolutePath().normalize());
+        boolean watched = StaticFileWatcher.watch(folder, new StaticFileWatcher.Listener() {
+            @Override
+            public void changed(Path changed) {
+                index.update(changed);
+            }
+
+            @Override
+            public void walked(Set<Path> found) {
+                index.walked(found);
+            }
+        });
+        return watched ? index : null;
+    }
+
+    /**
+     * @return true once the folder has been indexed
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @param requestPath the path relative to the static file folder, e.g. "/css/app.css"
+     * @return false if the path is known not to exist, true if it exists or can't be
+     * decided from the index (unnormalized paths, folder not indexed yet)
+     */
+    public boolean mayContain(String requestPath) {
+        if (!ready || requestPath == null || requestPath.contains("//") || requestPath.contains("/.")
+                || requestPath.indexOf('\\') != -1) {
+            return true;
+        }
+        String path = requestPath;
+        if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (!path.startsWith("/")) {
+            path = "/" + path;
+        }
+        return paths.contains(path);
+    }
+
+    /**
+     * @return the number of indexed files and folders
+     */
+    public int size() {
+        return paths.size();
+    }
+
+    private void walked(Set<Path> found) {
+        Set<String> walked = paths;
+        for (Path path : found) {
+            walked.add(toRequestPath(path));
+        }
+        ready = true;
+        LOG.info("Indexed {} static paths in {}", walked.size(), root);
+    }
+
+    /**
+     * Applies a change reported by the watcher, invoked from the watcher thread
+     *
+     * @param changed the changed path, or the folder itself when events were lost
+     */
+    void update(Path changed) {
+        try {
+            if (changed.equals(root)) {
+                // events were lost, start over
+                Set<String> rebuilt = ConcurrentHashMap.newKeySet();
+                add(rebuilt, root);
+                paths = rebuilt;
+            } else if (Files.exists(changed)) {
+                add(paths, changed);
+            } else {
+                remove(changed);
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not update static path index for " + changed, e);
+        }
+    }
+
+    private void add(final Set<String> paths, Path start) throws IOException {
+        if (!Files.isDirectory(start)) {
+            paths.add(toRequestPath(start));
+            return;
+        }
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                paths.add(toRequestPath(dir));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                paths.add(toRequestPath(file));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // unreadable folders are skipped, as by the watcher
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void remove(Path deleted) {
+        String path = toRequestPath(deleted);
+        String prefix = path + "/";
+        paths.removeIf(p -> p.equals(path) || p.startsWith(prefix));
+    }
+
+    private String toRequestPath(Path path) {
+        String relative = root.relativize(path).toString().replace(File.separatorChar, '/');
+        return "/" + relative;
+    }
+
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.resource;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spark.utils.GzipUtils;
+import spark.utils.IOUtils;
+
+/**
+ * Bounded in-memory LRU cache of static files, shared by the Undertow and the
+ * servlet backends. Entries hold the raw bytes and precomputed validators.
+ * Files in external folders are invalidated when they change on disk.
+ * Compressible files additionally keep a gzipped variant, taken from a
+ * precompressed ".gz" sibling when there is one.
+ */
+public class StaticResourceCache {
+    private static final Logger LOG = LoggerFactory.getLogger(StaticResourceCache.class);
+
+    public static final long DEFAULT_MAX_SIZE = 32L * 1024 * 1024;
+    public static final long DEFAULT_MAX_ENTRY_SIZE = 1024L * 1024;
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    private static final StaticResourceCache INSTANCE = new StaticResourceCache(DEFAULT_MAX_SIZE, DEFAULT_MAX_ENTRY_SIZE);
+
+    private volatile long maxSize;
+    private final long maxEntrySize;
+    private final LinkedHashMap<String, CachedResource> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long size;
+    // counts invalidations, content read before one of them is not stored
+    private long generation;
+
+    /**
+     * Constructor
+     *
+     * @param maxSize      the maximum number of bytes held by the cache
+     * @param maxEntrySize the maximum size of a single cached file
+     */
+    public StaticResourceCache(long maxSize, long maxEntrySize) {
+        this.maxSize = maxSize;
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * @return the cache shared by the static file handlers
+     */
+    public static StaticResourceCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets the maximum number of bytes held by the cache
+     *
+     * @param maxSize the maximum size
+     */
+    public synchronized void maxSize(long maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    /**
+     * @param length the content length
+     * @return true if a file of the given length may be cached
+     */
+    public boolean isCacheable(long length) {
+        return length >= 0 && length <= maxEntrySize && length <= maxSize;
+    }
+
+    /**
+     * @param key the cache key, see {@link #keyOf(File)} and {@link #keyOf(URL)}
+     * @return the cached resource or null
+     */
+    public synchronized CachedResource get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * @return the current generation of the cache, to be taken before a resource is
+     * read and handed to {@link #put}
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Creates a cached resource and stores it if it fits into the cache and no entry
+     * was invalidated since the given generation, the content may be outdated then
+     *
+     * @param key          the cache key
+     * @param source       the location the content was read from
+     * @param content      the content bytes
+     * @param lastModified the last modification time in millis, 0 if unknown
+     * @param contentType  the content type, may be null
+     * @param generation   the {@link #generation()} taken before the content was read
+     * @return the created resource
+     */
+    public CachedResource put(String key, URL source, byte[] content, long lastModified, String contentType,
+                              long generation) {
+        CachedResource resource = new CachedResource(key, source, content, lastModified, contentType);
+        if (isCacheable(content.length)) {
+            synchronized (this) {
+                if (generation != this.generation) {
+                    return resource;
+                }
+                CachedResource old = entries.put(key, resource);
+                if (old != null) {
+                    size -= old.size();
+                }
+                size += resource.size();
+                evict();
+            }
+        }
+        return resource;
+    }
+
+    /**
+     * Returns the gzipped variant of a resource, resolving it on first use. A
+     * precompressed sibling (source + ".gz") is preferred, otherwise compressible
+     * content is gzipped once and kept as long as the resource stays cached.
+     *
+     * @param resource the resource
+     * @return the gzipped content or null if the resource has no compressed variant
+     */
+    public byte[] getGzipContent(CachedResource resource) {
+        if (!resource.isGzipResolved()) {
+            byte[] gzip = loadPrecompressed(resource.getSource());
+            if (gzip == null && GzipUtils.isCompressible(resource.getContentType())) {
+                gzip = GzipUtils.gzip(resource.getContent());
+                if (gzip.length >= resource.getContent().length) {
+                    gzip = null;
+                }
+            }
+            synchronized (this) {
+                if (!resource.isGzipResolved()) {
+                    boolean cached = entries.get(resource.getKey()) == resource;
+                    resource.setGzipContent(gzip);
+                    if (cached && gzip != null) {
+                        size += gzip.length;
+                        evict();
+                    }
+                }
+            }
+        }
+        return resource.getGzipContent();
+    }
+
+    /**
+     * Removes an entry
+     *
+     * @param key the cache key
+     */
+    public synchronized void invalidate(String key) {
+        generation++;
+        CachedResource old = entries.remove(key);
+        if (old != null) {
+            size -= old.size();
+        }
+    }
+
+    /**
+     * Removes all entries
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Invalidates entries of the folder whenever files below it change
+     *
+     * @param folder the external static file folder
+     */
+    public void watch(File folder) {
+        final Path root = folder.toPath().toAbsolutePath().normalize();
+        boolean watched = StaticFileWatcher.watch(folder, new StaticFileWatcher.Listener() {
+            @Override
+            public void changed(Path changed) {
+                invalidatePath(changed);
+            }
+
+            @Override
+            public void walked(Set<Path> paths) {
+                // files cached before their folder was watched may have changed unnoticed
+                invalidatePath(root);
+            }
+        });
+        if (watched) {
+            LOG.info("Watching static file folder " + folder + " for changes");
+        }
+    }
+
+    /**
+     * @param file the file
+     * @return the cache key of a file system resource
+     */
+    public static String keyOf(File file) {
+        return file.toPath().toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * @param url the url
+     * @return the cache key of a resource that is not a plain file (e.g. a jar entry)
+     */
+    public static String keyOf(URL url) {
+        return url.toExternalForm();
+    }
+
+    private synchronized void invalidatePath(Path changed) {
+        generation++;
+        String key = keyOf(changed.toFile());
+        String prefix = key + File.separator;
+        // a changed precompressed sibling invalidates the resource it belongs to
+        String uncompressedKey = key.endsWith(GZIP_SUFFIX) ? key.substring(0, key.length() - GZIP_SUFFIX.length()) : key;
+        Iterator<Map.Entry<String, CachedResource>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CachedResource> entry = iterator.next();
+            String entryKey = entry.getKey();
+            if (entryKey.equals(key) || entryKey.equals(uncompressedKey) || entryKey.startsWith(prefix)) {
+                size -= entry.getValue().size();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static byte[] loadPrecompressed(URL source) {
+        if (source == null) {
+            return null;
+        }
+        try (InputStream in = new URL(source.toExternalForm() + GZIP_SUFFIX).openStream()) {
+            return IOUtils.toByteArray(in);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            LOG.debug("Could not read precompressed variant of {}: {}", source, e.getMessage());
+            return null;
+        }
+    }
+
+    private void evict() {
+        Iterator<CachedResource> iterator = entries.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().size();
+            iterator.remove();
+        }
+    }
+
+}
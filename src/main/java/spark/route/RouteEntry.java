@@ -28,6 +28,10 @@ class RouteEntry {
         return match;
     }
 
+    boolean matchesPath(String path) {
+        return this.path.equals(SparkUtils.ALL_PATHS) || matchPath(path);
+    }
+
     private boolean matchPath(String path) { // NOSONAR
         if (!this.path.endsWith("*") && ((path.endsWith("/") && !this.path.endsWith("/")) // NOSONAR
                 || (this.path.endsWith("/") && !path.endsWith("/")))) {
@@ -35,12 +35,14 @@ public class SimpleRouteMatcher {
     private static final char SINGLE_QUOTE = '\'';
 
     private List<RouteEntry> routes;
+    private List<RouteEntry> sessionlessPaths;
 
     /**
      * Constructor
      */
     public SimpleRouteMatcher() {
         routes = new ArrayList<RouteEntry>();
+        sessionlessPaths = new ArrayList<RouteEntry>();
     }
 
     /**
@@ -115,11 +117,39 @@ public class SimpleRouteMatcher {
         return matchSet;
     }
 
+    /**
+     * Declares all routes under the given path as sessionless
+     *
+     * @param path the path, may contain params and wildcards (e.g. /api/*)
+     */
+    public void addSessionlessPath(String path) {
+        RouteEntry entry = new RouteEntry();
+        entry.path = path;
+        LOG.debug("Adds sessionless path: " + path);
+        sessionlessPaths.add(entry);
+    }
+
+    /**
+     * Checks whether the requested path belongs to a sessionless route group
+     *
+     * @param path the requested path
+     * @return true if session resolution should be skipped for the path
+     */
+    public boolean isSessionless(String path) {
+        for (RouteEntry entry : sessionlessPaths) {
+            if (entry.matchesPath(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * ¨Clear all routes
      */
     public void clearRoutes() {
         routes.clear();
+        sessionlessPaths.clear();
     }
 
     //////////////////////////////////////////////////
@@ -16,7 +16,10 @@
  */
 package spark.servlet;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,6 +31,7 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,13 +39,20 @@ import org.slf4j.LoggerFactory;
 import spark.Access;
 import spark.resource.AbstractFileResolvingResource;
 import spark.resource.AbstractResourceHandler;
+import spark.resource.AssetFingerprints;
+import spark.resource.CachedResource;
 import spark.resource.ClassPathResource;
 import spark.resource.ClassPathResourceHandler;
 import spark.resource.ExternalResource;
 import spark.resource.ExternalResourceHandler;
+import spark.resource.StaticFileWatcher;
+import spark.resource.StaticResourceCache;
 import spark.route.RouteMatcherFactory;
+import spark.utils.GzipUtils;
 import spark.utils.IOUtils;
+import spark.utils.MimeTypes;
 import spark.webserver.MatcherFilter;
+import spark.webserver.ServletFileSender;
 
 /**
  * Filter that can be configured to be used in a web.xml file.
@@ -55,6 +66,18 @@ public class SparkFilter implements Filter {
 
     public static final String APPLICATION_CLASS_PARAM = "applicationClass";
 
+    private static final String ETAG_HEADER = "ETag";
+    private static final String LAST_MODIFIED_HEADER = "Last-Modified";
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    private static final String VARY_HEADER = "Vary";
+    private static final String RANGE_HEADER = "Range";
+    private static final String ACCEPT_RANGES_HEADER = "Accept-Ranges";
+    private static final String CACHE_CONTROL_HEADER = "Cache-Control";
+    private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+
     private static List<AbstractResourceHandler> staticResourceHandlers = null;
 
     private static boolean staticResourcesSet = false;
@@ -62,6 +85,8 @@ public class SparkFilter implements Filter {
 
     private String filterPath;
     private MatcherFilter matcherFilter;
+    private final StaticResourceCache staticResourceCache = StaticResourceCache.getInstance();
+    private final AssetFingerprints assetFingerprints = AssetFingerprints.getInstance();
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
@@ -114,10 +139,22 @@ public class SparkFilter implements Filter {
 
         // handle static resources
         if (staticResourceHandlers != null) {
+            AssetFingerprints.Asset asset = assetFingerprints.resolve(relativePath);
+            if (asset != null) {
+                HttpServletResponse httpResponse = (HttpServletResponse) response;
+                httpResponse.setHeader(CACHE_CONTROL_HEADER, AssetFingerprints.CACHE_CONTROL);
+                serveStaticResource(asset.getFile() != null
+                                            ? new ExternalResource(asset.getFile().getPath())
+                                            : new ClassPathResource(asset.getClassPathName()),
+                                    httpRequest,
+                                    httpResponse);
+                return;
+            }
+
             for (AbstractResourceHandler staticResourceHandler : staticResourceHandlers) {
                 AbstractFileResolvingResource resource = staticResourceHandler.getResource(httpRequest);
                 if (resource != null && resource.isReadable()) {
-                    IOUtils.copy(resource.getInputStream(), response.getWriter());
+                    serveStaticResource(resource, httpRequest, (HttpServletResponse) response);
                     return;
                 }
             }
@@ -126,6 +163,109 @@ public class SparkFilter implements Filter {
         matcherFilter.doFilter(requestWrapper, response, chain);
     }
 
+    private void serveStaticResource(AbstractFileResolvingResource resource,
+                                     HttpServletRequest request,
+                                     HttpServletResponse response) throws IOException {
+        File file = getFile(resource);
+        String key = file != null ? StaticResourceCache.keyOf(file) : StaticResourceCache.keyOf(resource.getURL());
+        CachedResource cached = staticResourceCache.get(key);
+        if (file != null && request.getHeader(RANGE_HEADER) != null) {
+            ServletFileSender.send(request, response, file);
+            return;
+        }
+        if (cached == null) {
+            if (!staticResourceCache.isCacheable(resource.contentLength())) {
+                if (file != null) {
+                    ServletFileSender.send(request, response, file);
+                } else {
+                    streamResource(resource, request, response);
+                }
+                return;
+            }
+            long generation = staticResourceCache.generation();
+            long lastModified = resource.lastModified();
+            try (InputStream in = resource.getInputStream()) {
+                cached = staticResourceCache.put(key,
+                                                 resource.getURL(),
+                                                 IOUtils.toByteArray(in),
+                                                 lastModified,
+                                                 getContentType(resource, request),
+                                                 generation);
+            }
+        }
+
+        byte[] gzipContent = staticResourceCache.getGzipContent(cached);
+        boolean gzip = gzipContent != null && GzipUtils.acceptsGzip(request.getHeader(ACCEPT_ENCODING_HEADER));
+        if (gzipContent != null) {
+            response.setHeader(VARY_HEADER, ACCEPT_ENCODING_HEADER);
+        }
+
+        if (file != null) {
+            response.setHeader(ACCEPT_RANGES_HEADER, "bytes");
+        }
+        response.setHeader(ETAG_HEADER, gzip ? cached.getGzipETag() : cached.getETag());
+        if (cached.getLastModifiedHeader() != null) {
+            response.setHeader(LAST_MODIFIED_HEADER, cached.getLastModifiedHeader());
+        }
+
+        if (cached.isNotModified(request.getHeader(IF_NONE_MATCH_HEADER),
+                                 request.getHeader(IF_MODIFIED_SINCE_HEADER),
+                                 gzip)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] content = gzip ? gzipContent : cached.getContent();
+        if (cached.getContentType() != null) {
+            response.setContentType(cached.getContentType());
+        }
+        if (gzip) {
+            response.setHeader(CONTENT_ENCODING_HEADER, "gzip");
+        }
+        response.setContentLength(content.length);
+        if (!"HEAD".equalsIgnoreCase(request.getMethod())) {
+            response.getOutputStream().write(content);
+        }
+    }
+
+    /**
+     * Streams a resource that is neither a plain file nor small enough to be cached,
+     * e.g. a large file inside a jar
+     */
+    private static void streamResource(AbstractFileResolvingResource resource,
+                                       HttpServletRequest request,
+                                       HttpServletResponse response) throws IOException {
+        String contentType = getContentType(resource, request);
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        long length = resource.contentLength();
+        if (length >= 0) {
+            response.setHeader(CONTENT_LENGTH_HEADER, Long.toString(length));
+        }
+        if (!"HEAD".equalsIgnoreCase(request.getMethod())) {
+            try (InputStream in = resource.getInputStream()) {
+                IOUtils.copyLarge(in, response.getOutputStream());
+            }
+        }
+    }
+
+    private static String getContentType(AbstractFileResolvingResource resource,
+                                         HttpServletRequest request) throws IOException {
+        String path = resource.getURL().getPath();
+        String contentType = MimeTypes.getMimeType(path);
+        return contentType != null ? contentType : request.getServletContext().getMimeType(path);
+    }
+
+    private static File getFile(AbstractFileResolvingResource resource) throws IOException {
+        try {
+            return resource.getFile();
+        } catch (FileNotFoundException e) {
+            // not a plain file, e.g. a resource inside a jar
+            return null;
+        }
+    }
+
     /**
      * Configures location for static resources
      *
@@ -168,6 +308,7 @@ public class SparkFilter implements Filter {
                             staticResourceHandlers = new ArrayList<>();
                         }
                         staticResourceHandlers.add(new ExternalResourceHandler(folder, "index.html"));
+                        StaticResourceCache.getInstance().watch(resource.getFile());
                         LOG.info("External StaticResourceHandler configured with folder = " + folder);
                     } else {
                         LOG.error("External Static resource location must be a folder");
@@ -182,7 +323,7 @@ public class SparkFilter implements Filter {
 
     @Override
     public void destroy() {
-        // ignore
+        StaticFileWatcher.stopAll();
     }
 
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.sse;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A group of event streams receiving the same events, e.g. the subscribers of a
+ * topic. A broadcast event is encoded once and its bytes are shared by all streams.
+ * <p>
+ * The group keeps the last events with ids. A stream joining with a Last-Event-ID
+ * header that is still among them first gets the events it missed.
+ */
+public class EventGroup {
+
+    private final Set<EventStream> streams = ConcurrentHashMap.newKeySet();
+    private final ArrayDeque<SseEvent> history = new ArrayDeque<>();
+    private final int historySize;
+
+    public EventGroup() {
+        this(0);
+    }
+
+    /**
+     * @param historySize the number of events kept for streams resuming with Last-Event-ID
+     */
+    public EventGroup(int historySize) {
+        if (historySize < 0) {
+            throw new IllegalArgumentException("historySize must not be negative");
+        }
+        this.historySize = historySize;
+    }
+
+    /**
+     * Adds the stream to the group, replaying the events after its last event id.
+     * The stream leaves the group when it is closed.
+     *
+     * @param stream the stream
+     */
+    public void join(EventStream stream) {
+        synchronized (history) {
+            String lastEventId = stream.getLastEventId();
+            if (lastEventId != null && !history.isEmpty()) {
+                boolean found = false;
+                for (SseEvent event : history) {
+                    if (found) {
+                        if (!stream.send(event)) {
+                            return;
+                        }
+                    } else {
+                        found = lastEventId.equals(event.getId());
+                    }
+                }
+            }
+            if (!stream.isOpen()) {
+                return;
+            }
+            streams.add(stream);
+        }
+        stream.onClose(() -> streams.remove(stream));
+    }
+
+    public void leave(EventStream stream) {
+        streams.remove(stream);
+    }
+
+    /**
+     * Sends the event to all streams of the group
+     *
+     * @param event the event
+     * @return the number of streams that accepted the event
+     */
+    public int broadcast(SseEvent event) {
+        event.getBytes();
+        int sent = 0;
+        synchronized (history) {
+            if (historySize > 0 && event.getId() != null) {
+                if (history.size() == historySize) {
+                    history.removeFirst();
+                }
+                history.addLast(event);
+            }
+            for (Iterator<EventStream> it = streams.iterator(); it.hasNext(); ) {
+                if (it.next().send(event)) {
+                    sent++;
+                } else {
+                    it.remove();
+                }
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Closes all streams of the group
+     */
+    public void close() {
+        for (EventStream stream : streams) {
+            stream.close();
+        }
+        streams.clear();
+    }
+
+    /**
+     * @return the number of streams in the group
+     */
+    public int size() {
+        return streams.size();
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.sse;
+
+/**
+ * An open text/event-stream response. Sending never blocks: events are queued and
+ * written by the I/O thread of the connection. A client that does not keep up
+ * with the events is disconnected once its queue is full, it can reconnect and
+ * resume with the Last-Event-ID header.
+ */
+public interface EventStream {
+
+    /**
+     * Queues the event
+     *
+     * @param event the event
+     * @return false if the stream is closed or was closed because its queue is full
+     */
+    boolean send(SseEvent event);
+
+    /**
+     * Queues an event with the given data
+     *
+     * @param data the data
+     * @return false if the stream is closed or was closed because its queue is full
+     */
+    default boolean send(String data) {
+        return send(SseEvent.data(data));
+    }
+
+    /**
+     * @return the value of the Last-Event-ID header the client reconnected with or null
+     */
+    String getLastEventId();
+
+    /**
+     * @return the number of queued events and heartbeats not yet written
+     */
+    int getQueueSize();
+
+    boolean isOpen();
+
+    /**
+     * Registers a callback invoked once when the stream is closed by either side,
+     * immediately if it already is
+     *
+     * @param callback the callback
+     */
+    void onClose(Runnable callback);
+
+    /**
+     * Ends the response after the queued events have been written
+     */
+    void close();
+
+}
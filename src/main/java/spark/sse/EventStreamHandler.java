@@ -0,0 +1,38 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.sse;
+
+import spark.Request;
+
+/**
+ * Invoked when a client opens an event stream route
+ */
+@FunctionalInterface
+public interface EventStreamHandler {
+
+    /**
+     * Invoked on a worker thread before the stream is handed over to the I/O thread,
+     * events sent meanwhile are queued. Typically joins the stream to an
+     * {@link EventGroup}. Exceptions are handled like route exceptions.
+     *
+     * @param stream  the stream
+     * @param request the request that opened it
+     * @throws Exception when the stream cannot be opened
+     */
+    void onOpen(EventStream stream, Request request) throws Exception;
+
+}
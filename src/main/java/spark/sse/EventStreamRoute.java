@@ -0,0 +1,69 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.sse;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The target of an event stream route, holding its handler and stream settings
+ */
+public class EventStreamRoute {
+
+    public static final long DEFAULT_HEARTBEAT_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    public static final int DEFAULT_MAX_QUEUED_EVENTS = 1024;
+
+    private final String path;
+    private final EventStreamHandler handler;
+    private final long heartbeatMillis;
+    private final int maxQueuedEvents;
+
+    /**
+     * @param path            the route path
+     * @param handler         the handler of opened streams
+     * @param heartbeatMillis the interval of comment lines sent to idle streams, 0 disables them
+     * @param maxQueuedEvents the number of unwritten events after which a stream is closed
+     */
+    public EventStreamRoute(String path, EventStreamHandler handler, long heartbeatMillis, int maxQueuedEvents) {
+        if (heartbeatMillis < 0) {
+            throw new IllegalArgumentException("heartbeat must not be negative");
+        }
+        if (maxQueuedEvents <= 0) {
+            throw new IllegalArgumentException("maxQueuedEvents must be positive");
+        }
+        this.path = path;
+        this.handler = handler;
+        this.heartbeatMillis = heartbeatMillis;
+        this.maxQueuedEvents = maxQueuedEvents;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public EventStreamHandler getHandler() {
+        return handler;
+    }
+
+    public long getHeartbeatMillis() {
+        return heartbeatMillis;
+    }
+
+    public int getMaxQueuedEvents() {
+        return maxQueuedEvents;
+    }
+
+}
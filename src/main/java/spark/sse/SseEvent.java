@@ -0,0 +1,146 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.sse;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A server-sent event. The event is encoded to the text/event-stream format once,
+ * on first use, and the encoded bytes are shared by all streams it is sent to, so
+ * it must not be modified after it has been sent.
+ */
+public final class SseEvent {
+
+    private final String data;
+    private String id;
+    private String event;
+    private long retry = -1;
+    private volatile byte[] encoded;
+
+    private SseEvent(String data) {
+        this.data = data;
+    }
+
+    /**
+     * Creates an event
+     *
+     * @param data the data, may span multiple lines
+     * @return the event
+     */
+    public static SseEvent data(String data) {
+        return new SseEvent(data != null ? data : "");
+    }
+
+    /**
+     * Sets the event id, which the client sends back in the Last-Event-ID header when
+     * it reconnects
+     *
+     * @param id the id
+     * @return this event
+     */
+    public SseEvent id(String id) {
+        this.id = id;
+        this.encoded = null;
+        return this;
+    }
+
+    /**
+     * Sets the event type, dispatched to the listeners of that type by the client
+     *
+     * @param event the event type
+     * @return this event
+     */
+    public SseEvent event(String event) {
+        this.event = event;
+        this.encoded = null;
+        return this;
+    }
+
+    /**
+     * Sets the reconnection time of the client
+     *
+     * @param millis the reconnection time in milliseconds
+     * @return this event
+     */
+    public SseEvent retry(long millis) {
+        this.retry = millis;
+        this.encoded = null;
+        return this;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    /**
+     * @return the encoded event, shared by all callers and not to be modified
+     */
+    public byte[] getBytes() {
+        byte[] bytes = encoded;
+        if (bytes == null) {
+            bytes = encode().getBytes(StandardCharsets.UTF_8);
+            encoded = bytes;
+        }
+        return bytes;
+    }
+
+    private String encode() {
+        StringBuilder sb = new StringBuilder(data.length() + 32);
+        if (id != null) {
+            appendField(sb, "id", id);
+        }
+        if (event != null) {
+            appendField(sb, "event", event);
+        }
+        if (retry >= 0) {
+            sb.append("retry: ").append(retry).append('\n');
+        }
+        int start = 0;
+        int length = data.length();
+        for (int i = 0; i < length; i++) {
+            char c = data.charAt(i);
+            if (c == '\r' || c == '\n') {
+                appendField(sb, "data", data.substring(start, i));
+                if (c == '\r' && i + 1 < length && data.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        appendField(sb, "data", data.substring(start));
+        return sb.append('\n').toString();
+    }
+
+    private static void appendField(StringBuilder sb, String name, String value) {
+        // line breaks would end the field and inject new ones
+        sb.append(name).append(": ").append(value.replace('\r', ' ').replace('\n', ' ')).append('\n');
+    }
+
+    @Override
+    public String toString() {
+        return new String(getBytes(), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,183 @@
+package spark.undertow;
+
+import io.undertow.server.handlers.resource.FileResourceManager;
+import io.undertow.server.handlers.resource.Resource;
+import io.undertow.server.handlers.resource.ResourceChangeListener;
+import io.undertow.server.handlers.resource.ResourceManager;
+import io.undertow.server.handlers.resource.URLResource;
+import io.undertow.util.CanonicalPathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.resource.StaticPathIndex;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Resource manager for a static file folder in classpath. Unlike Undertow's
+ * ClassPathResourceManager it only exposes the configured folder and never asks the
+ * class loader at request time: the locations of the folder are resolved once, jar
+ * entries below it are indexed into an in-memory table and folders in the file
+ * system are indexed by a {@link StaticPathIndex}. Misses are answered from memory.
+ *
+ * @author Yegorius
+ */
+public class IndexedClassPathResourceManager implements ResourceManager {
+	private static final Logger log = LoggerFactory.getLogger(IndexedClassPathResourceManager.class);
+
+	private final List<Location> locations = new ArrayList<>();
+
+	/**
+	 * @param classLoader the class loader to locate the folder with
+	 * @param folder      the folder in classpath, e.g. "/public"
+	 */
+	public IndexedClassPathResourceManager(final ClassLoader classLoader, final String folder) throws IOException {
+		String prefix = folder;
+		while (prefix.startsWith("/")) prefix = prefix.substring(1);
+		while (prefix.endsWith("/")) prefix = prefix.substring(0, prefix.length() - 1);
+
+		Enumeration<URL> urls = classLoader.getResources(prefix);
+		while (urls.hasMoreElements()) {
+			URL url = urls.nextElement();
+			if ("file".equals(url.getProtocol())) {
+				try {
+					locations.add(new FileLocation(new File(url.toURI())));
+				} catch (URISyntaxException e) {
+					log.warn("Invalid static file location {}", url);
+				}
+			} else if ("jar".equals(url.getProtocol())) {
+				locations.add(new JarLocation((JarURLConnection) url.openConnection()));
+			} else {
+				log.warn("Unsupported static file location {}", url);
+			}
+		}
+		if (locations.isEmpty()) {
+			log.warn("Static file folder {} not found in classpath", folder);
+		}
+	}
+
+	@Override
+	public Resource getResource(final String path) throws IOException {
+		String canonical = CanonicalPathUtils.canonicalize(path.startsWith("/") ? path : "/" + path);
+		for (Location location : locations) {
+			Resource resource = location.getResource(canonical);
+			if (resource != null) return resource;
+		}
+		return null;
+	}
+
+	@Override
+	public boolean isResourceChangeListenerSupported() {
+		return false;
+	}
+
+	@Override
+	public void registerResourceChangeListener(final ResourceChangeListener listener) {
+		throw new UnsupportedOperationException("Resource change listeners are not supported");
+	}
+
+	@Override
+	public void removeResourceChangeListener(final ResourceChangeListener listener) {
+		throw new UnsupportedOperationException("Resource change listeners are not supported");
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (Location location : locations) {
+			location.close();
+		}
+	}
+
+	private interface Location extends Closeable {
+		Resource getResource(String path) throws IOException;
+	}
+
+	/**
+	 * The folder in an exploded classpath entry, e.g. target/classes
+	 */
+	private static final class FileLocation implements Location {
+		private final FileResourceManager resourceManager;
+		private final StaticPathIndex index;
+
+		FileLocation(final File folder) {
+			this.resourceManager = new FileResourceManager(folder, 16*1024);
+			this.index = StaticPathIndex.of(folder);
+		}
+
+		@Override
+		public Resource getResource(final String path) throws IOException {
+			if (index != null && !index.mayContain(path)) return null;
+			return resourceManager.getResource(path);
+		}
+
+		@Override
+		public void close() throws IOException {
+			resourceManager.close();
+		}
+	}
+
+	/**
+	 * The folder in a jar, its entries are indexed once
+	 */
+	private static final class JarLocation implements Location {
+		private final Map<String, URL> entries = new HashMap<>();
+
+		JarLocation(final JarURLConnection connection) throws IOException {
+			// the jar file is shared through the URL cache, so it must not be closed here
+			JarFile jar = connection.getJarFile();
+			String base = connection.getEntryName();
+			String prefix = base == null || base.isEmpty() ? "" : base.endsWith("/") ? base : base + "/";
+			String jarUrl = "jar:" + connection.getJarFileURL().toExternalForm() + "!/";
+
+			putDirectory("/", jarUrl + prefix);
+			Enumeration<JarEntry> jarEntries = jar.entries();
+			while (jarEntries.hasMoreElements()) {
+				JarEntry entry = jarEntries.nextElement();
+				String name = entry.getName();
+				if (!name.startsWith(prefix) || name.length() == prefix.length()) continue;
+
+				String path = "/" + name.substring(prefix.length());
+				if (entry.isDirectory()) {
+					putDirectory(path, jarUrl + name);
+				} else {
+					entries.put(path, new URL(jarUrl + name));
+					// not every jar has entries for its directories
+					for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+						String directory = path.substring(0, slash + 1);
+						if (entries.containsKey(directory)) break;
+						putDirectory(directory, jarUrl + prefix + directory.substring(1));
+					}
+				}
+			}
+			log.info("Indexed {} static paths in {}", entries.size(), jarUrl + prefix);
+		}
+
+		private void putDirectory(final String path, final String url) throws IOException {
+			String directory = path.endsWith("/") ? path : path + "/";
+			URL directoryUrl = new URL(url.endsWith("/") ? url : url + "/");
+			entries.put(directory, directoryUrl);
+			if (directory.length() > 1) entries.put(directory.substring(0, directory.length() - 1), directoryUrl);
+		}
+
+		@Override
+		public Resource getResource(final String path) throws IOException {
+			URL url = entries.get(path);
+			return url != null ? new URLResource(url, url.openConnection(), path) : null;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
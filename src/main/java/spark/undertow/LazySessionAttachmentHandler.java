@@ -0,0 +1,66 @@
+package spark.undertow;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.session.Session;
+import io.undertow.server.session.SessionConfig;
+import io.undertow.server.session.SessionManager;
+import io.undertow.util.AttachmentKey;
+
+/**
+ * Replacement for Undertow's SessionAttachmentHandler that defers all session work
+ * (cookie parsing, manager lookups, last access updates) until a route actually asks
+ * for the session. Requests that never touch the session only pay for one attachment.
+ *
+ * @author Yegorius
+ */
+public class LazySessionAttachmentHandler implements HttpHandler {
+	public static final AttachmentKey<LazySessionAttachmentHandler> ATTACHMENT_KEY =
+			AttachmentKey.create(LazySessionAttachmentHandler.class);
+
+	private final HttpHandler next;
+	private final SessionManager sessionManager;
+	private final SessionConfig sessionConfig;
+
+	public LazySessionAttachmentHandler(final HttpHandler next, final SessionManager sessionManager,
+										final SessionConfig sessionConfig) {
+		this.next = next;
+		this.sessionManager = sessionManager;
+		this.sessionConfig = sessionConfig;
+	}
+
+	@Override
+	public void handleRequest(final HttpServerExchange exchange) throws Exception {
+		exchange.putAttachment(ATTACHMENT_KEY, this);
+		next.handleRequest(exchange);
+	}
+
+	/**
+	 * Resolves the session of the exchange, attaching the session manager on first use
+	 *
+	 * @param exchange the exchange
+	 * @param create   whether a new session should be created if none exists
+	 * @return the session or null if there is none and create is false
+	 */
+	public Session getSession(final HttpServerExchange exchange, final boolean create) {
+		if (exchange.getAttachment(SessionManager.ATTACHMENT_KEY) == null) {
+			// keep io.undertow.util.Sessions working for code that uses it directly
+			exchange.putAttachment(SessionManager.ATTACHMENT_KEY, sessionManager);
+			exchange.putAttachment(SessionConfig.ATTACHMENT_KEY, sessionConfig);
+			exchange.addExchangeCompleteListener((completedExchange, nextListener) -> {
+				try {
+					Session session = sessionManager.getSession(completedExchange, sessionConfig);
+					if (session != null) session.requestDone(completedExchange);
+				} finally {
+					nextListener.proceed();
+				}
+			});
+		}
+
+		Session session = sessionManager.getSession(exchange, sessionConfig);
+		if (session == null && create) {
+			session = sessionManager.createSession(exchange, sessionConfig);
+		}
+		return session;
+	}
+}
@@ -4,10 +4,26 @@ import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.resource.Resource;
 import io.undertow.server.handlers.resource.ResourceHandler;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+import io.undertow.util.MimeMappings;
+import io.undertow.util.StatusCodes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import spark.resource.AssetFingerprints;
+import spark.resource.CachedResource;
+import spark.resource.StaticPathIndex;
+import spark.resource.StaticResourceCache;
+import spark.utils.GzipUtils;
+import spark.utils.IOUtils;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
 
 /**
  * @author Yegorius
@@ -18,6 +34,9 @@ public class SparkResourceHandler implements HttpHandler {
 	private HttpHandler defaultHandler;
 	private ResourceHandler staticResourceHandler;
 	private ResourceHandler externalResourceHandler;
+	private volatile StaticPathIndex externalIndex;
+	private final StaticResourceCache cache = StaticResourceCache.getInstance();
+	private final AssetFingerprints fingerprints = AssetFingerprints.getInstance();
 
 	public SparkResourceHandler(final HttpHandler defaultHandler) {
 		this.defaultHandler = defaultHandler;
@@ -25,37 +44,167 @@ public class SparkResourceHandler implements HttpHandler {
 
 	@Override
 	public void handleRequest(final HttpServerExchange exchange) throws Exception {
-		if (externalResourceHandler != null) {
-			Resource resource = null;
-			try {
-				resource = externalResourceHandler.getResourceManager().getResource(exchange.getRelativePath());
-			} catch (IOException e) {
-				// TODO: resource not found? throw 404?
-				//log.error("IO error", e);
+		String path = exchange.getRelativePath();
+
+		AssetFingerprints.Asset asset = fingerprints.resolve(path);
+		if (asset != null) {
+			serveAsset(asset, exchange);
+			return;
+		}
+
+		if (externalResourceHandler != null && (externalIndex == null || externalIndex.mayContain(path))
+				&& handleResource(externalResourceHandler, exchange)) {
+			return;
+		}
+
+		if (staticResourceHandler != null && handleResource(staticResourceHandler, exchange)) {
+			return;
+		}
+
+		// else
+		if (!exchange.isComplete()) {
+			defaultHandler.handleRequest(exchange);
+		}
+	}
+
+	private boolean handleResource(final ResourceHandler resourceHandler, final HttpServerExchange exchange) throws Exception {
+		Resource resource = null;
+		try {
+			resource = resourceHandler.getResourceManager().getResource(exchange.getRelativePath());
+		} catch (IOException e) {
+			// TODO: resource not found? throw 404?
+			//log.error("IO error", e);
+		}
+		if (resource == null) return false;
+
+		if (!serveCached(resource, exchange)) {
+			resourceHandler.handleRequest(exchange);
+		}
+		return true;
+	}
+
+	/**
+	 * Serves GET and HEAD requests for regular files from the static resource cache.
+	 * Range requests and files too large to be cached are streamed from disk.
+	 * Directories (welcome files, redirects) and other resources are left to
+	 * Undertow's ResourceHandler.
+	 */
+	private boolean serveCached(final Resource resource, final HttpServerExchange exchange) throws IOException {
+		HttpString method = exchange.getRequestMethod();
+		if (resource.isDirectory() || !(method.equals(Methods.GET) || method.equals(Methods.HEAD))) return false;
+
+		File file = resource.getFile();
+		String key = file != null ? StaticResourceCache.keyOf(file) : StaticResourceCache.keyOf(resource.getUrl());
+		CachedResource cached = cache.get(key);
+		if (file != null && exchange.getRequestHeaders().contains(Headers.RANGE)) {
+			UndertowFileSender.send(exchange, file);
+			return true;
+		}
+		if (cached == null) {
+			Long length = resource.getContentLength();
+			if (length == null || !cache.isCacheable(length)) {
+				if (file == null) return false;
+				UndertowFileSender.send(exchange, file);
+				return true;
 			}
-			if (resource != null) {
-				externalResourceHandler.handleRequest(exchange);
-				return;
+
+			long generation = cache.generation();
+			Date lastModified = resource.getLastModified();
+			try (InputStream in = resource.getUrl().openStream()) {
+				cached = cache.put(key, resource.getUrl(), IOUtils.toByteArray(in),
+						lastModified != null ? lastModified.getTime() : 0, resource.getContentType(MimeMappings.DEFAULT),
+						generation);
 			}
+			log.debug("cached static resource {}", key);
 		}
 
-		if (staticResourceHandler != null) {
-			Resource resource = null;
-			try {
-				resource = staticResourceHandler.getResourceManager().getResource(exchange.getRelativePath());
-			} catch (IOException e) {
-				// TODO: resource not found? throw 404?
-				//log.error("IO error", e);
-			}
-			if (resource != null) {
-				staticResourceHandler.handleRequest(exchange);
+		sendCached(exchange, cached, file != null);
+		return true;
+	}
+
+	/**
+	 * Serves a fingerprinted static file. Its URL changes with its content, so it
+	 * may be cached forever.
+	 */
+	private void serveAsset(final AssetFingerprints.Asset asset, final HttpServerExchange exchange) throws IOException {
+		HttpString method = exchange.getRequestMethod();
+		if (!(method.equals(Methods.GET) || method.equals(Methods.HEAD))) {
+			exchange.setResponseCode(StatusCodes.METHOD_NOT_ALLOWED);
+			exchange.getResponseHeaders().put(Headers.ALLOW, "GET, HEAD");
+			exchange.endExchange();
+			return;
+		}
+		exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, AssetFingerprints.CACHE_CONTROL);
+
+		File file = asset.getFile();
+		String contentType = UndertowFileSender.getContentType(asset.getPath());
+		if (!cache.isCacheable(asset.getLength()) || file != null && exchange.getRequestHeaders().contains(Headers.RANGE)) {
+			if (file != null) {
+				UndertowFileSender.send(exchange, file);
 				return;
 			}
+			// a large classpath asset, streamed with the headers the servlet filter sends
+			if (contentType != null) exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, contentType);
+			exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, asset.getLength());
+			if (!method.equals(Methods.HEAD)) {
+				try (InputStream in = asset.getUrl().openStream()) {
+					IOUtils.copyLarge(in, exchange.getOutputStream());
+				}
+			}
+			exchange.endExchange();
+			return;
 		}
 
-		// else
-		if (!exchange.isComplete()) {
-			defaultHandler.handleRequest(exchange);
+		String key = file != null ? StaticResourceCache.keyOf(file) : StaticResourceCache.keyOf(asset.getUrl());
+		CachedResource cached = cache.get(key);
+		if (cached == null) {
+			long generation = cache.generation();
+			try (InputStream in = asset.getUrl().openStream()) {
+				cached = cache.put(key, asset.getUrl(), IOUtils.toByteArray(in), asset.getLastModified(), contentType,
+						generation);
+			}
+		}
+		sendCached(exchange, cached, file != null);
+	}
+
+	private void sendCached(final HttpServerExchange exchange, final CachedResource cached, final boolean acceptRanges) {
+		HttpString method = exchange.getRequestMethod();
+		HeaderMap requestHeaders = exchange.getRequestHeaders();
+		HeaderMap responseHeaders = exchange.getResponseHeaders();
+
+		byte[] gzipContent = cache.getGzipContent(cached);
+		boolean gzip = gzipContent != null && GzipUtils.acceptsGzip(requestHeaders.getFirst(Headers.ACCEPT_ENCODING));
+		if (gzipContent != null) {
+			responseHeaders.put(Headers.VARY, Headers.ACCEPT_ENCODING_STRING);
+		}
+
+		if (acceptRanges) {
+			responseHeaders.put(Headers.ACCEPT_RANGES, "bytes");
+		}
+		responseHeaders.put(Headers.ETAG, gzip ? cached.getGzipETag() : cached.getETag());
+		if (cached.getLastModifiedHeader() != null) {
+			responseHeaders.put(Headers.LAST_MODIFIED, cached.getLastModifiedHeader());
+		}
+
+		if (cached.isNotModified(requestHeaders.getFirst(Headers.IF_NONE_MATCH),
+				requestHeaders.getFirst(Headers.IF_MODIFIED_SINCE), gzip)) {
+			exchange.setResponseCode(StatusCodes.NOT_MODIFIED);
+			exchange.endExchange();
+			return;
+		}
+
+		byte[] content = gzip ? gzipContent : cached.getContent();
+		if (cached.getContentType() != null) {
+			responseHeaders.put(Headers.CONTENT_TYPE, cached.getContentType());
+		}
+		if (gzip) {
+			responseHeaders.put(Headers.CONTENT_ENCODING, "gzip");
+		}
+		responseHeaders.put(Headers.CONTENT_LENGTH, content.length);
+		if (method.equals(Methods.HEAD)) {
+			exchange.endExchange();
+		} else {
+			exchange.getResponseSender().send(ByteBuffer.wrap(content));
 		}
 	}
 
@@ -64,6 +213,15 @@ public class SparkResourceHandler implements HttpHandler {
 		return this;
 	}
 
+	/**
+	 * Sets the index of the external folder, requests for paths missing from it
+	 * are not looked up in the external folder
+	 */
+	public SparkResourceHandler setExternalIndex(final StaticPathIndex index) {
+		this.externalIndex = index;
+		return this;
+	}
+
 	public SparkResourceHandler setStatic(final ResourceHandler resourceHandler) {
 		this.staticResourceHandler = resourceHandler;
 		return this;
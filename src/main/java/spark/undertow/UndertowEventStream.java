@@ -0,0 +1,262 @@
+package spark.undertow;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.XnioExecutor;
+import org.xnio.channels.StreamSinkChannel;
+import spark.sse.EventStream;
+import spark.sse.EventStreamRoute;
+import spark.sse.SseEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event stream over the response channel of an exchange. Events are queued by any
+ * thread and written without blocking by the I/O thread of the connection, which
+ * also schedules the heartbeats. No worker thread is held once the stream is started.
+ *
+ * @author Yegorius
+ */
+final class UndertowEventStream implements EventStream, ChannelListener<StreamSinkChannel> {
+	private static final Logger log = LoggerFactory.getLogger(UndertowEventStream.class);
+	private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+	private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+	private final HttpServerExchange exchange;
+	private final String lastEventId;
+	private final long heartbeatMillis;
+	private final int maxQueuedEvents;
+	private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+	private final List<Runnable> closeCallbacks = new ArrayList<>();
+	private final ChannelListener<StreamSinkChannel> closeListener = channel -> closed();
+
+	private volatile StreamSinkChannel sink;
+	private volatile XnioExecutor.Key heartbeat;
+	private volatile boolean closed;
+	// guarded by this
+	private boolean started;
+	private boolean writing;
+	private boolean closing;
+	// accessed by the I/O thread only
+	private boolean shutdown;
+	private long lastWrite;
+
+	UndertowEventStream(final HttpServerExchange exchange, final EventStreamRoute route) {
+		this.exchange = exchange;
+		this.lastEventId = exchange.getRequestHeaders().getFirst(LAST_EVENT_ID_HEADER);
+		this.heartbeatMillis = route.getHeartbeatMillis();
+		this.maxQueuedEvents = route.getMaxQueuedEvents();
+	}
+
+	/**
+	 * Takes over the response channel and dispatches the exchange to the I/O thread,
+	 * which writes the headers and the events queued so far. Must be called by the
+	 * handler of the exchange, which must return without ending it.
+	 */
+	void start() {
+		exchange.setPersistent(false);
+		exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/event-stream; charset=UTF-8");
+		exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "no-cache");
+		exchange.addExchangeCompleteListener((completedExchange, nextListener) -> {
+			try {
+				closed();
+			} finally {
+				nextListener.proceed();
+			}
+		});
+		sink = exchange.getResponseChannel();
+		sink.getWriteSetter().set(this);
+		sink.getCloseSetter().set(closeListener);
+		exchange.dispatch(sink.getIoThread(), this::started);
+	}
+
+	/**
+	 * Closes the stream without touching the exchange, used when the stream is not started
+	 */
+	void discard() {
+		closed();
+	}
+
+	private void started() {
+		synchronized (this) {
+			started = true;
+			writing = true;
+		}
+		lastWrite = System.currentTimeMillis();
+		flush();
+		if (heartbeatMillis > 0 && !closed) {
+			heartbeat = sink.getIoThread().executeAfter(this::heartbeat, heartbeatMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public boolean send(final SseEvent event) {
+		return enqueue(ByteBuffer.wrap(event.getBytes()));
+	}
+
+	private boolean enqueue(final ByteBuffer buffer) {
+		boolean overflow = false;
+		synchronized (this) {
+			if (closed || closing) return false;
+			if (queue.size() < maxQueuedEvents) {
+				queue.addLast(buffer);
+				if (!started || writing) return true;
+				writing = true;
+			} else {
+				overflow = true;
+			}
+		}
+		if (overflow) {
+			log.debug("closing event stream of {}, {} events are not written", exchange.getSourceAddress(), maxQueuedEvents);
+			abort();
+			return false;
+		}
+		sink.getIoThread().execute(this::flush);
+		return true;
+	}
+
+	@Override
+	public void handleEvent(final StreamSinkChannel channel) {
+		flush();
+	}
+
+	/**
+	 * Writes the queued buffers until the queue is empty or the channel is full, in
+	 * which case writes are resumed and the write listener continues. Runs on the I/O thread.
+	 */
+	private void flush() {
+		try {
+			while (true) {
+				ByteBuffer buffer;
+				synchronized (this) {
+					buffer = queue.peekFirst();
+				}
+				if (buffer == null) {
+					if (!sink.flush()) {
+						sink.resumeWrites();
+						return;
+					}
+					synchronized (this) {
+						if (!queue.isEmpty()) continue;
+						if (!closing) {
+							writing = false;
+							sink.suspendWrites();
+							return;
+						}
+					}
+					if (!shutdown) {
+						shutdown = true;
+						sink.shutdownWrites();
+						continue;
+					}
+					IoUtils.safeClose(sink);
+					closed();
+					return;
+				}
+				sink.write(buffer);
+				lastWrite = System.currentTimeMillis();
+				if (buffer.hasRemaining()) {
+					sink.resumeWrites();
+					return;
+				}
+				synchronized (this) {
+					queue.pollFirst();
+				}
+			}
+		} catch (IOException e) {
+			log.debug("event stream of {} failed", exchange.getSourceAddress(), e);
+			abort();
+		}
+	}
+
+	private void heartbeat() {
+		if (closed) return;
+		long idle = System.currentTimeMillis() - lastWrite;
+		if (idle >= heartbeatMillis) {
+			enqueue(ByteBuffer.wrap(HEARTBEAT));
+			idle = 0;
+		}
+		if (!closed) {
+			heartbeat = sink.getIoThread().executeAfter(this::heartbeat, heartbeatMillis - idle, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public String getLastEventId() {
+		return lastEventId;
+	}
+
+	@Override
+	public synchronized int getQueueSize() {
+		return queue.size();
+	}
+
+	@Override
+	public synchronized boolean isOpen() {
+		return !closed && !closing;
+	}
+
+	@Override
+	public void onClose(final Runnable callback) {
+		synchronized (this) {
+			if (!closed) {
+				closeCallbacks.add(callback);
+				return;
+			}
+		}
+		callback.run();
+	}
+
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed || closing) return;
+			closing = true;
+			if (!started || writing) return;
+			writing = true;
+		}
+		sink.getIoThread().execute(this::flush);
+	}
+
+	/**
+	 * Drops the queued events and closes the connection
+	 */
+	private void abort() {
+		synchronized (this) {
+			closing = true;
+			queue.clear();
+		}
+		IoUtils.safeClose(exchange.getConnection());
+		closed();
+	}
+
+	private void closed() {
+		List<Runnable> callbacks;
+		synchronized (this) {
+			if (closed) return;
+			closed = true;
+			queue.clear();
+			callbacks = new ArrayList<>(closeCallbacks);
+			closeCallbacks.clear();
+		}
+		XnioExecutor.Key key = heartbeat;
+		if (key != null) key.remove();
+		for (Runnable callback : callbacks) {
+			try {
+				callback.run();
+			} catch (RuntimeException e) {
+				log.error("event stream close callback failed", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package spark.undertow;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.ResponseCodeHandler;
+import io.undertow.util.AttachmentKey;
+import io.undertow.util.HeaderValues;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import io.undertow.util.SameThreadExecutor;
+import io.undertow.util.StatusCodes;
+import io.undertow.websockets.WebSocketConnectionCallback;
+import io.undertow.websockets.WebSocketProtocolHandshakeHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.IoUtils;
+import org.xnio.XnioExecutor;
+import spark.Access;
+import spark.Request;
+import spark.Response;
+import spark.RouteImpl;
+import spark.Suspended;
+import spark.dispatch.Exchange;
+import spark.route.RouteMatch;
+import spark.sse.EventStreamRoute;
+import spark.websocket.WebSocketRoute;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Undertow side of a request dispatched by the {@link spark.dispatch.Dispatcher}.
+ * Also takes over WebSocket upgrades and event streams and resumes suspended
+ * responses on the I/O thread.
+ *
+ * @author Yegorius
+ */
+final class UndertowExchange implements Exchange {
+	private static final Logger log = LoggerFactory.getLogger(UndertowExchange.class);
+
+	private static final AttachmentKey<Request> WEB_SOCKET_REQUEST = AttachmentKey.create(Request.class);
+	private static final String INTERNAL_ERROR = "<html><body><h2>500 Internal Error</h2></body></html>";
+
+	private final HttpServerExchange exchange;
+	private final Map<WebSocketRoute, HttpHandler> handshakeHandlers;
+	private final boolean multiPart;
+
+	UndertowExchange(final HttpServerExchange exchange, final Map<WebSocketRoute, HttpHandler> handshakeHandlers,
+					 final boolean multiPart) {
+		this.exchange = exchange;
+		this.handshakeHandlers = handshakeHandlers;
+		this.multiPart = multiPart;
+	}
+
+	@Override
+	public String requestMethod() {
+		return exchange.getRequestMethod().toString();
+	}
+
+	@Override
+	public String requestPath() {
+		return exchange.getRequestURI();
+	}
+
+	@Override
+	public String queryString() {
+		return exchange.getQueryString();
+	}
+
+	@Override
+	public String requestHeader(final String name) {
+		return exchange.getRequestHeaders().getFirst(name);
+	}
+
+	@Override
+	public Request request(final RouteMatch match) {
+		return new UndertowRequest(match, exchange, multiPart);
+	}
+
+	@Override
+	public Response response() {
+		return new UndertowResponse(exchange);
+	}
+
+	@Override
+	public void disableSession() {
+		exchange.removeAttachment(LazySessionAttachmentHandler.ATTACHMENT_KEY);
+	}
+
+	@Override
+	public boolean takeOver(final Object target, final RouteMatch match) throws Exception {
+		if (target instanceof WebSocketRoute) {
+			exchange.putAttachment(WEB_SOCKET_REQUEST, request(match));
+			handshakeHandlers.computeIfAbsent((WebSocketRoute) target, UndertowExchange::handshakeHandler)
+					.handleRequest(exchange);
+			return true;
+		}
+		if (target instanceof EventStreamRoute) {
+			openEventStream((EventStreamRoute) target, request(match));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Creates the handshake handler of a WebSocket route, requests that are not
+	 * WebSocket upgrades are answered with 400
+	 */
+	private static HttpHandler handshakeHandler(final WebSocketRoute route) {
+		WebSocketConnectionCallback callback = (webSocketExchange, channel) ->
+				new UndertowWebSocketSession(channel, route).open(webSocketExchange.getAttachment(WEB_SOCKET_REQUEST));
+		return new WebSocketProtocolHandshakeHandler(callback, new ResponseCodeHandler(StatusCodes.BAD_REQUEST));
+	}
+
+	/**
+	 * Opens the event stream and returns without ending the exchange, which the
+	 * stream dispatches to the I/O thread so no worker thread is held while it is open
+	 */
+	private void openEventStream(final EventStreamRoute route, final Request request) throws Exception {
+		UndertowEventStream stream = new UndertowEventStream(exchange, route);
+		try {
+			route.getHandler().onOpen(stream, request);
+		} catch (Exception e) {
+			stream.discard();
+			throw e;
+		}
+		stream.start();
+	}
+
+	/**
+	 * Releases the worker thread and leaves the exchange open until the response is
+	 * resumed by any thread or times out, a worker thread completes it then
+	 */
+	@Override
+	public boolean suspend(final Suspended suspended, final Suspended.Completion completion) {
+		exchange.dispatch(SameThreadExecutor.INSTANCE, () -> {
+			XnioExecutor.Key timeout = exchange.getIoThread().executeAfter(() -> Access.expire(suspended),
+					suspended.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+			Access.bind(suspended, (status, body) -> exchange.getIoThread().execute(() -> {
+				timeout.remove();
+				if (exchange.isComplete()) return;
+				// the after filters may block
+				exchange.getConnection().getWorker().execute(() -> completion.complete(status, body));
+			}));
+		});
+		return true;
+	}
+
+	@Override
+	public boolean passOn() {
+		return false;
+	}
+
+	@Override
+	public int status() {
+		return exchange.getResponseCode();
+	}
+
+	@Override
+	public void status(final int status) {
+		exchange.setResponseCode(status);
+	}
+
+	@Override
+	public String contentType() {
+		return exchange.getResponseHeaders().getFirst(Headers.CONTENT_TYPE);
+	}
+
+	@Override
+	public void contentType(final String contentType) {
+		exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, contentType);
+	}
+
+	@Override
+	public String responseHeader(final String name) {
+		return exchange.getResponseHeaders().getFirst(name);
+	}
+
+	@Override
+	public void setResponseHeader(final String name, final String value) {
+		exchange.getResponseHeaders().put(HttpString.tryFromString(name), value);
+	}
+
+	@Override
+	public void addResponseHeader(final String name, final String value) {
+		exchange.getResponseHeaders().add(HttpString.tryFromString(name), value);
+	}
+
+	@Override
+	public Map<String, List<String>> responseHeaders() {
+		Map<String, List<String>> headers = new LinkedHashMap<>();
+		for (HeaderValues values : exchange.getResponseHeaders()) {
+			headers.put(values.getHeaderName().toString(), new ArrayList<>(values));
+		}
+		return headers;
+	}
+
+	@Override
+	public boolean hasCookies() {
+		return !exchange.getResponseCookies().isEmpty() || exchange.getResponseHeaders().contains(Headers.SET_COOKIE);
+	}
+
+	@Override
+	public boolean isCommitted() {
+		return exchange.isComplete();
+	}
+
+	@Override
+	public void send(final ByteBuffer body) {
+		exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, body.remaining());
+		exchange.getResponseSender().send(body);
+		exchange.endExchange();
+	}
+
+	@Override
+	public void sendFile(final File file) throws IOException {
+		UndertowFileSender.send(exchange, file);
+	}
+
+	/**
+	 * Renders the body into the response output stream, whose pooled buffers are
+	 * flushed as they fill up. Fails with 500 as long as nothing has been sent,
+	 * afterwards the connection is closed to signal the truncated response.
+	 */
+	@Override
+	public void stream(final RouteImpl route, final Object element) {
+		try {
+			route.render(element, exchange.getOutputStream());
+		} catch (Exception e) {
+			log.error("", e);
+			if (exchange.isResponseStarted()) {
+				IoUtils.safeClose(exchange.getConnection());
+				return;
+			}
+			exchange.setResponseCode(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			exchange.getResponseSender().send(INTERNAL_ERROR);
+		}
+		exchange.endExchange();
+	}
+
+	@Override
+	public void end() {
+		exchange.endExchange();
+	}
+}
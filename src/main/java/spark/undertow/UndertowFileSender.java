@@ -0,0 +1,136 @@
+package spark.undertow;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import io.undertow.util.MimeMappings;
+import io.undertow.util.StatusCodes;
+import org.xnio.channels.Channels;
+import org.xnio.channels.StreamSinkChannel;
+import spark.utils.ByteRange;
+import spark.utils.CacheUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Sends files with support for conditional and Range requests (single ranges and
+ * multipart/byteranges). File content is transferred from the FileChannel to the
+ * response channel, which uses sendfile where the platform allows it.
+ *
+ * @author Yegorius
+ */
+final class UndertowFileSender {
+
+	private UndertowFileSender() {
+	}
+
+	/**
+	 * @param exchange the exchange, must be in blocking mode
+	 * @param file     the file to send
+	 */
+	static void send(final HttpServerExchange exchange, final File file) throws IOException {
+		long length = file.length();
+		long lastModified = file.lastModified();
+		String etag = CacheUtils.fileETag(length, lastModified);
+
+		HeaderMap requestHeaders = exchange.getRequestHeaders();
+		HeaderMap responseHeaders = exchange.getResponseHeaders();
+		responseHeaders.put(Headers.ACCEPT_RANGES, "bytes");
+		responseHeaders.put(Headers.ETAG, etag);
+		responseHeaders.put(Headers.LAST_MODIFIED, CacheUtils.formatDate(lastModified));
+
+		if (CacheUtils.isNotModified(requestHeaders.getFirst(Headers.IF_NONE_MATCH),
+				requestHeaders.getFirst(Headers.IF_MODIFIED_SINCE), etag, lastModified)) {
+			exchange.setResponseCode(StatusCodes.NOT_MODIFIED);
+			exchange.endExchange();
+			return;
+		}
+
+		List<ByteRange> ranges = null;
+		String range = requestHeaders.getFirst(Headers.RANGE);
+		if (range != null && ByteRange.ifRangeMatches(requestHeaders.getFirst(Headers.IF_RANGE), etag, lastModified)) {
+			ranges = ByteRange.parse(range, length);
+		}
+		if (ranges != null && ranges.isEmpty()) {
+			exchange.setResponseCode(StatusCodes.REQUEST_RANGE_NOT_SATISFIABLE);
+			responseHeaders.put(Headers.CONTENT_RANGE, "bytes */" + length);
+			exchange.endExchange();
+			return;
+		}
+
+		String contentType = responseHeaders.getFirst(Headers.CONTENT_TYPE);
+		if (contentType == null) contentType = getContentType(file.getName());
+		boolean head = exchange.getRequestMethod().equals(Methods.HEAD);
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (ranges == null) {
+				if (contentType != null) responseHeaders.put(Headers.CONTENT_TYPE, contentType);
+				responseHeaders.put(Headers.CONTENT_LENGTH, length);
+				if (!head) transfer(exchange, channel, new ByteRange(0, length - 1));
+			} else if (ranges.size() == 1) {
+				ByteRange single = ranges.get(0);
+				exchange.setResponseCode(StatusCodes.PARTIAL_CONTENT);
+				if (contentType != null) responseHeaders.put(Headers.CONTENT_TYPE, contentType);
+				responseHeaders.put(Headers.CONTENT_RANGE, single.toContentRange(length));
+				responseHeaders.put(Headers.CONTENT_LENGTH, single.getLength());
+				if (!head) transfer(exchange, channel, single);
+			} else {
+				String boundary = ByteRange.newBoundary();
+				exchange.setResponseCode(StatusCodes.PARTIAL_CONTENT);
+				responseHeaders.put(Headers.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+				responseHeaders.put(Headers.CONTENT_LENGTH, ByteRange.multipartLength(boundary, contentType, ranges, length));
+				if (!head) {
+					StreamSinkChannel sink = exchange.getResponseChannel();
+					for (ByteRange part : ranges) {
+						write(sink, ByteRange.partHeader(boundary, contentType, part, length));
+						transferBlocking(sink, channel, part);
+					}
+					write(sink, ByteRange.multipartEnd(boundary));
+					Channels.shutdownWritesBlocking(sink);
+				}
+			}
+		}
+		exchange.endExchange();
+	}
+
+	private static void transfer(HttpServerExchange exchange, FileChannel channel, ByteRange range) throws IOException {
+		if (range.getLength() <= 0) return;
+		StreamSinkChannel sink = exchange.getResponseChannel();
+		transferBlocking(sink, channel, range);
+		Channels.shutdownWritesBlocking(sink);
+	}
+
+	private static void transferBlocking(StreamSinkChannel sink, FileChannel channel, ByteRange range) throws IOException {
+		long position = range.getStart();
+		long remaining = range.getLength();
+		while (remaining > 0) {
+			long transferred = sink.transferFrom(channel, position, remaining);
+			if (transferred == 0) {
+				if (position >= channel.size()) throw new IOException("Unexpected end of file");
+				sink.awaitWritable();
+				continue;
+			}
+			position += transferred;
+			remaining -= transferred;
+		}
+	}
+
+	private static void write(StreamSinkChannel sink, String text) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+		while (buffer.hasRemaining()) {
+			Channels.writeBlocking(sink, buffer);
+		}
+	}
+
+	static String getContentType(final String name) {
+		int dot = name.lastIndexOf('.');
+		return dot == -1 ? null : MimeMappings.DEFAULT.getMimeType(name.substring(dot + 1));
+	}
+}
@@ -3,12 +3,10 @@ package spark.undertow;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.Cookie;
 import io.undertow.server.handlers.form.*;
-import io.undertow.server.session.SessionManager;
 import io.undertow.servlet.spec.HttpSessionImpl;
 import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
 import io.undertow.util.Methods;
-import io.undertow.util.Sessions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xnio.Pooled;
@@ -19,6 +17,7 @@ import spark.Request;
 import spark.Session;
 import spark.route.RouteMatch;
 import spark.utils.IOUtils;
+import spark.utils.RecordReader;
 import spark.utils.SparkUtils;
 
 import javax.servlet.http.HttpServletRequest;
@@ -216,6 +215,29 @@ public class UndertowRequest implements Request {
 		return bodyAsBytes;
 	}
 
+	/**
+	 * Reads the body lines from the request channel into a pooled buffer while they
+	 * are received. The buffer is released when the reader or the exchange completes.
+	 */
+	@Override
+	public RecordReader lines(final int maxLineLength) {
+		if (bodyAsBytes != null || !exchange.isRequestChannelAvailable()) {
+			return RecordReader.of(bodyAsBytes, maxLineLength);
+		}
+		final StreamSourceChannel requestChannel = exchange.getRequestChannel();
+		final Pooled<ByteBuffer> pooledBuffer = exchange.getConnection().getBufferPool().allocate();
+		final RecordReader reader = new RecordReader(buffer -> Channels.readBlocking(requestChannel, buffer),
+				pooledBuffer.getResource(), maxLineLength, pooledBuffer::free);
+		exchange.addExchangeCompleteListener((completedExchange, nextListener) -> {
+			try {
+				reader.close();
+			} finally {
+				nextListener.proceed();
+			}
+		});
+		return reader;
+	}
+
 	private void readBody() {
 		try {
 			if (exchange.isRequestChannelAvailable()) {
@@ -344,18 +366,23 @@ public class UndertowRequest implements Request {
 
 	@Override
 	public Session session() {
-		if (session == null) {
-			session = adaptSession(Sessions.getOrCreateSession(exchange), true);
-		}
-		return session;
+		return session(true);
 	}
 
 	@Override
 	public Session session(final boolean create) {
 		if (session == null) {
-			io.undertow.server.session.Session undertowSession = Sessions.getSession(exchange);
-			if (undertowSession != null) return adaptSession(undertowSession, false);
-			if (create) return adaptSession(Sessions.getOrCreateSession(exchange), true);
+			LazySessionAttachmentHandler sessions = exchange.getAttachment(LazySessionAttachmentHandler.ATTACHMENT_KEY);
+			if (sessions == null) {
+				if (!create) return null;
+				throw new IllegalStateException("Sessions are disabled for " + exchange.getRequestPath());
+			}
+			io.undertow.server.session.Session undertowSession = sessions.getSession(exchange, false);
+			if (undertowSession != null) {
+				session = adaptSession(undertowSession, false);
+			} else if (create) {
+				session = adaptSession(sessions.getSession(exchange, true), true);
+			}
 		}
 		return session;
 	}
@@ -17,18 +17,23 @@
 package spark.undertow;
 
 import io.undertow.Undertow;
+import io.undertow.UndertowOptions;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.handlers.BlockingHandler;
-import io.undertow.server.handlers.resource.ClassPathResourceManager;
 import io.undertow.server.handlers.resource.FileResourceManager;
 import io.undertow.server.handlers.resource.ResourceHandler;
-import io.undertow.server.session.SessionAttachmentHandler;
+import io.undertow.server.handlers.resource.ResourceManager;
 import io.undertow.server.session.SessionConfig;
 import io.undertow.server.session.SessionManager;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xnio.Options;
+import spark.ServerConfig;
 import spark.SparkServer;
+import spark.resource.StaticPathIndex;
+import spark.resource.StaticResourceCache;
+import spark.utils.ClassUtils;
 
 import javax.net.ssl.SSLContext;
 import java.io.File;
@@ -51,6 +56,7 @@ public class UndertowSparkServer implements SparkServer {
 	private final boolean mainIsBlocking;
 	private HttpHandler mainHandler;
     private Undertow server;
+	private ServerConfig config = new ServerConfig();
 
 	public UndertowSparkServer(HttpHandler mainHandler, SessionManager sessionManager, SessionConfig sessionConfig) {
 		this(mainHandler, sessionManager, sessionConfig, true);
@@ -77,6 +83,7 @@ public class UndertowSparkServer implements SparkServer {
 		}
 
 		Undertow.Builder builder = Undertow.builder();
+		applyConfig(builder);
 
 		if (keystoreFile == null) {
 			builder.addHttpListener(port, host);
@@ -91,14 +98,15 @@ public class UndertowSparkServer implements SparkServer {
 		}
 
 		// Handle static file routes
+		SparkResourceHandler resourceHandler = null;
 		if (staticFilesFolder != null || externalFilesFolder != null) {
-			SparkResourceHandler resourceHandler = new SparkResourceHandler(mainHandler);
+			resourceHandler = new SparkResourceHandler(mainHandler);
 			resourceHandler.setStatic(getStaticResHandler(staticFilesFolder));
 			resourceHandler.setExternal(getExternalResHandler(externalFilesFolder));
 			mainHandler = resourceHandler;
 		}
 
-		mainHandler = new SessionAttachmentHandler(mainHandler, sessionManager, sessionConfig);
+		mainHandler = new LazySessionAttachmentHandler(mainHandler, sessionManager, sessionConfig);
 
 		if (mainIsBlocking) {
 			mainHandler = new BlockingHandler(mainHandler);
@@ -112,6 +120,76 @@ public class UndertowSparkServer implements SparkServer {
 		log.info(">> Listening on {}:{}", host, port);
 
 		server.start();
+
+		if (resourceHandler != null && externalFilesFolder != null) {
+			// walked once in the background after the server listens, requests are looked
+			// up in the folder until it is indexed
+			File folder = new File(externalFilesFolder);
+			resourceHandler.setExternalIndex(StaticPathIndex.of(folder));
+			StaticResourceCache.getInstance().watch(folder);
+		}
+	}
+
+	@Override
+	public void configure(ServerConfig config) {
+		this.config = config;
+	}
+
+	/**
+	 * Applies the server config. Unset thread and buffer settings are resolved the way
+	 * Undertow resolves them, so that the effective values can be logged.
+	 */
+	private void applyConfig(Undertow.Builder builder) {
+		int ioThreads = config.getIoThreads() != null
+				? config.getIoThreads() : Math.max(Runtime.getRuntime().availableProcessors(), 2);
+		int workerThreads = config.getWorkerThreads() != null ? config.getWorkerThreads() : ioThreads * 8;
+
+		long maxMemory = Runtime.getRuntime().maxMemory();
+		int bufferSize;
+		boolean directBuffers;
+		if (maxMemory < 64 * 1024 * 1024) {
+			bufferSize = 512;
+			directBuffers = false;
+		} else if (maxMemory < 128 * 1024 * 1024) {
+			bufferSize = 1024;
+			directBuffers = true;
+		} else {
+			bufferSize = 16 * 1024 - 20;
+			directBuffers = true;
+		}
+		if (config.getBufferSize() != null) bufferSize = config.getBufferSize();
+		if (config.getDirectBuffers() != null) directBuffers = config.getDirectBuffers();
+
+		builder.setIoThreads(ioThreads)
+				.setWorkerThreads(workerThreads)
+				.setBufferSize(bufferSize)
+				.setDirectBuffers(directBuffers);
+		if (config.getBacklog() != null) {
+			builder.setSocketOption(Options.BACKLOG, config.getBacklog());
+		}
+		if (config.getTcpNoDelay() != null) {
+			builder.setSocketOption(Options.TCP_NODELAY, config.getTcpNoDelay());
+		}
+		if (config.getKeepAliveTimeoutMillis() != null) {
+			builder.setServerOption(UndertowOptions.NO_REQUEST_TIMEOUT, toInt(config.getKeepAliveTimeoutMillis()));
+		}
+		if (config.getIdleTimeoutMillis() != null) {
+			builder.setServerOption(UndertowOptions.IDLE_TIMEOUT, toInt(config.getIdleTimeoutMillis()));
+		}
+
+		log.info(">> I/O threads: {}, worker threads: {}, buffers: {} bytes {}",
+				ioThreads, workerThreads, bufferSize, directBuffers ? "direct" : "heap");
+		log.info(">> backlog: {}, TCP_NODELAY: {}, keep-alive timeout: {} ms, idle timeout: {} ms",
+				orDefault(config.getBacklog()), orDefault(config.getTcpNoDelay()),
+				orDefault(config.getKeepAliveTimeoutMillis()), orDefault(config.getIdleTimeoutMillis()));
+	}
+
+	private static int toInt(long value) {
+		return (int) Math.min(Integer.MAX_VALUE, value);
+	}
+
+	private static Object orDefault(Object value) {
+		return value != null ? value : "default";
 	}
 
     public void stop() {
@@ -152,11 +230,15 @@ public class UndertowSparkServer implements SparkServer {
      */
     private static ResourceHandler getStaticResHandler(String staticFilesPath) {
         if (staticFilesPath != null) {
-			ClassPathResourceManager resourceManager = new ClassPathResourceManager(ClassLoader.getSystemClassLoader());
-			ResourceHandler resourceHandler = new ResourceHandler(resourceManager);
-			resourceHandler.setWelcomeFiles("index.html");
-			resourceHandler.setDirectoryListingEnabled(false);
-			return resourceHandler;
+            try {
+				ResourceManager resourceManager = new IndexedClassPathResourceManager(ClassUtils.getDefaultClassLoader(), staticFilesPath);
+				ResourceHandler resourceHandler = new ResourceHandler(resourceManager);
+				resourceHandler.setWelcomeFiles("index.html");
+				resourceHandler.setDirectoryListingEnabled(false);
+				return resourceHandler;
+            } catch (Exception exception) {
+				log.error("Error during initialisation of static resource {}", staticFilesPath, exception);
+            }
         }
 		return null;
 	}
@@ -0,0 +1,216 @@
+package spark.undertow;
+
+import io.undertow.websockets.core.AbstractReceiveListener;
+import io.undertow.websockets.core.BufferedBinaryMessage;
+import io.undertow.websockets.core.BufferedTextMessage;
+import io.undertow.websockets.core.CloseMessage;
+import io.undertow.websockets.core.WebSocketCallback;
+import io.undertow.websockets.core.WebSocketChannel;
+import io.undertow.websockets.core.WebSockets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.IoUtils;
+import org.xnio.Pooled;
+import spark.Request;
+import spark.websocket.WebSocketHandler;
+import spark.websocket.WebSocketMessage;
+import spark.websocket.WebSocketRoute;
+import spark.websocket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WebSocket session over an Undertow channel. Messages are sent with the non-blocking
+ * WebSockets API, the number of messages not yet written is bounded per session.
+ * Binary messages are received into buffers of the connection pool and handed to the
+ * handler without copying.
+ *
+ * @author Yegorius
+ */
+final class UndertowWebSocketSession extends AbstractReceiveListener implements WebSocketSession {
+	private static final Logger log = LoggerFactory.getLogger(UndertowWebSocketSession.class);
+
+	private final WebSocketChannel channel;
+	private final WebSocketHandler handler;
+	private final int maxQueuedMessages;
+	private final int maxMessageSize;
+	private final AtomicInteger queued = new AtomicInteger();
+	private final List<Runnable> closeCallbacks = new ArrayList<>();
+	private final WebSocketCallback<Void> sendCallback = new WebSocketCallback<Void>() {
+		@Override
+		public void complete(final WebSocketChannel channel, final Void context) {
+			queued.decrementAndGet();
+		}
+
+		@Override
+		public void onError(final WebSocketChannel channel, final Void context, final Throwable throwable) {
+			queued.decrementAndGet();
+			log.debug("sending to {} failed", channel.getSourceAddress(), throwable);
+			IoUtils.safeClose(channel);
+		}
+	};
+
+	private volatile int closeCode = -1;
+	private volatile String closeReason;
+	private boolean closed; // guarded by this
+
+	UndertowWebSocketSession(final WebSocketChannel channel, final WebSocketRoute route) {
+		this.channel = channel;
+		this.handler = route.getHandler();
+		this.maxQueuedMessages = route.getMaxQueuedMessages();
+		this.maxMessageSize = route.getMaxMessageSize();
+	}
+
+	/**
+	 * Invokes the connect handler and starts receiving messages, runs on the I/O thread
+	 */
+	void open(final Request request) {
+		channel.addCloseTask(closedChannel -> closed());
+		try {
+			handler.onConnect(this, request);
+		} catch (Exception e) {
+			log.error("", e);
+			IoUtils.safeClose(channel);
+			return;
+		}
+		channel.getReceiveSetter().set(this);
+		channel.resumeReceives();
+	}
+
+	@Override
+	protected void onFullTextMessage(final WebSocketChannel channel, final BufferedTextMessage message) throws IOException {
+		try {
+			handler.onText(this, message.getData());
+		} catch (Exception e) {
+			failed(e);
+		}
+	}
+
+	@Override
+	protected void onFullBinaryMessage(final WebSocketChannel channel, final BufferedBinaryMessage message) throws IOException {
+		Pooled<ByteBuffer[]> data = message.getData();
+		try {
+			handler.onBinary(this, data.getResource());
+		} catch (Exception e) {
+			failed(e);
+		} finally {
+			data.free();
+		}
+	}
+
+	@Override
+	protected void onCloseMessage(final CloseMessage message, final WebSocketChannel channel) {
+		closeCode = message.getCode();
+		closeReason = message.getReason();
+	}
+
+	@Override
+	protected void onError(final WebSocketChannel channel, final Throwable error) {
+		handler.onError(this, error);
+		super.onError(channel, error);
+	}
+
+	@Override
+	protected long getMaxTextBufferSize() {
+		return maxMessageSize;
+	}
+
+	@Override
+	protected long getMaxBinaryBufferSize() {
+		return maxMessageSize;
+	}
+
+	@Override
+	public boolean send(final WebSocketMessage message) {
+		if (!reserve()) return false;
+		ByteBuffer payload = ByteBuffer.wrap(message.getPayload());
+		if (message.isText()) {
+			WebSockets.sendText(payload, channel, sendCallback);
+		} else {
+			WebSockets.sendBinary(payload, channel, sendCallback);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean send(final ByteBuffer data) {
+		if (!reserve()) return false;
+		WebSockets.sendBinary(data, channel, sendCallback);
+		return true;
+	}
+
+	private boolean reserve() {
+		if (!isOpen()) return false;
+		if (queued.incrementAndGet() > maxQueuedMessages) {
+			queued.decrementAndGet();
+			log.debug("closing WebSocket of {}, {} messages are not written", channel.getSourceAddress(), maxQueuedMessages);
+			IoUtils.safeClose(channel);
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int getQueueSize() {
+		return queued.get();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return channel.isOpen() && !channel.isCloseFrameSent();
+	}
+
+	@Override
+	public void onClose(final Runnable callback) {
+		synchronized (this) {
+			if (!closed) {
+				closeCallbacks.add(callback);
+				return;
+			}
+		}
+		callback.run();
+	}
+
+	@Override
+	public void close() {
+		close(CloseMessage.NORMAL_CLOSURE, null);
+	}
+
+	@Override
+	public void close(final int code, final String reason) {
+		if (isOpen()) {
+			WebSockets.sendClose(code, reason, channel, null);
+		}
+	}
+
+	private void failed(final Exception e) {
+		handler.onError(this, e);
+		IoUtils.safeClose(channel);
+	}
+
+	private void closed() {
+		List<Runnable> callbacks;
+		synchronized (this) {
+			if (closed) return;
+			closed = true;
+			callbacks = new ArrayList<>(closeCallbacks);
+			closeCallbacks.clear();
+		}
+		try {
+			handler.onClose(this, closeCode, closeReason);
+		} catch (RuntimeException e) {
+			log.error("WebSocket close handler failed", e);
+		}
+		for (Runnable callback : callbacks) {
+			try {
+				callback.run();
+			} catch (RuntimeException e) {
+				log.error("WebSocket close callback failed", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A satisfiable byte range of a representation together with the helpers
+ * for parsing Range/If-Range headers and building multipart/byteranges bodies
+ */
+public final class ByteRange {
+
+    /**
+     * More ranges than this are ignored and the full representation is sent
+     */
+    public static final int MAX_RANGES = 16;
+
+    private static final String BYTES_UNIT = "bytes=";
+    private static final String CRLF = "\r\n";
+
+    private final long start;
+    private final long end;
+
+    /**
+     * Constructor
+     *
+     * @param start the first byte position
+     * @param end   the last byte position (inclusive)
+     */
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return the first byte position
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return the last byte position (inclusive)
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the number of bytes in the range
+     */
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * @param totalLength the length of the whole representation
+     * @return the Content-Range header value
+     */
+    public String toContentRange(long totalLength) {
+        return "bytes " + start + "-" + end + "/" + totalLength;
+    }
+
+    /**
+     * Parses a Range header
+     *
+     * @param header      the Range header value
+     * @param totalLength the length of the representation
+     * @return the satisfiable ranges, an empty list if none is satisfiable or null
+     * if the header is invalid or should be ignored
+     */
+    public static List<ByteRange> parse(String header, long totalLength) {
+        if (header == null || !header.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return null;
+        }
+        String[] specs = header.substring(BYTES_UNIT.length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<ByteRange> ranges = new ArrayList<>(specs.length);
+        try {
+            for (String spec : specs) {
+                spec = spec.trim();
+                int dash = spec.indexOf('-');
+                if (dash == -1) {
+                    return null;
+                }
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                if (first.isEmpty()) {
+                    // suffix range: the last n bytes
+                    long suffix = Long.parseLong(last);
+                    if (suffix > 0 && totalLength > 0) {
+                        ranges.add(new ByteRange(Math.max(0, totalLength - suffix), totalLength - 1));
+                    }
+                    continue;
+                }
+                long start = Long.parseLong(first);
+                long end = last.isEmpty() ? totalLength - 1 : Long.parseLong(last);
+                if (start < 0 || end < start) {
+                    return null;
+                }
+                if (start < totalLength) {
+                    ranges.add(new ByteRange(start, Math.min(end, totalLength - 1)));
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return ranges.isEmpty() ? Collections.<ByteRange>emptyList() : ranges;
+    }
+
+    /**
+     * Evaluates an If-Range header. Entity tags are compared strongly, dates must
+     * match the last modification time exactly.
+     *
+     * @param ifRange      the If-Range header value, may be null
+     * @param etag         the current ETag, may be null
+     * @param lastModified the last modification time in millis, 0 or less if unknown
+     * @return true if the Range header should be honored
+     */
+    public static boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return etag != null && !etag.startsWith("W/") && ifRange.equals(etag);
+        }
+        long date = CacheUtils.parseDate(ifRange);
+        return date != -1 && lastModified > 0 && date / 1000 == lastModified / 1000;
+    }
+
+    /**
+     * @return a new multipart boundary
+     */
+    public static String newBoundary() {
+        return "SPARK_BOUNDARY_" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * @param boundary    the multipart boundary
+     * @param contentType the content type of the representation, may be null
+     * @param range       the range of the part
+     * @param totalLength the length of the representation
+     * @return the delimiter and headers preceding the part data
+     */
+    public static String partHeader(String boundary, String contentType, ByteRange range, long totalLength) {
+        StringBuilder header = new StringBuilder(CRLF).append("--").append(boundary).append(CRLF);
+        if (contentType != null) {
+            header.append("Content-Type: ").append(contentType).append(CRLF);
+        }
+        header.append("Content-Range: ").append(range.toContentRange(totalLength)).append(CRLF).append(CRLF);
+        return header.toString();
+    }
+
+    /**
+     * @param boundary the multipart boundary
+     * @return the closing delimiter of a multipart body
+     */
+    public static String multipartEnd(String boundary) {
+        return CRLF + "--" + boundary + "--" + CRLF;
+    }
+
+    /**
+     * Computes the Content-Length of a multipart/byteranges body
+     *
+     * @param boundary    the multipart boundary
+     * @param contentType the content type of the representation, may be null
+     * @param ranges      the ranges
+     * @param totalLength the length of the representation
+     * @return the body length in bytes
+     */
+    public static long multipartLength(String boundary, String contentType, List<ByteRange> ranges, long totalLength) {
+        long length = multipartEnd(boundary).length();
+        for (ByteRange range : ranges) {
+            length += partHeader(boundary, contentType, range, totalLength).length() + range.getLength();
+        }
+        return length;
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Helpers for HTTP validators (ETag, Last-Modified) and conditional requests
+ */
+public final class CacheUtils {
+
+    private static final DateTimeFormatter HTTP_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private CacheUtils() {
+    }
+
+    /**
+     * Formats a timestamp as an HTTP date (RFC 7231)
+     *
+     * @param millis milliseconds since the epoch
+     * @return the formatted date
+     */
+    public static String formatDate(long millis) {
+        return HTTP_DATE_FORMAT.format(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * Parses an HTTP date
+     *
+     * @param date the date header value
+     * @return milliseconds since the epoch or -1 if the date cannot be parsed
+     */
+    public static long parseDate(String date) {
+        if (date == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Creates a strong ETag from the content bytes
+     *
+     * @param content the content
+     * @return the quoted ETag
+     */
+    public static String strongETag(byte[] content) {
+        return '"' + toHex(md5(content)) + '"';
+    }
+
+    /**
+     * Creates a strong ETag from the content bytes using a fast non-cryptographic
+     * 64 bit hash, for rendered responses that are hashed on every request
+     *
+     * @param content the content
+     * @return the quoted ETag
+     */
+    public static String fastETag(byte[] content) {
+        return '"' + Long.toHexString(hash64(content)) + '-' + Integer.toHexString(content.length) + '"';
+    }
+
+    /**
+     * Computes the 64 bit MurmurHash2 (64A) of the bytes
+     *
+     * @param content the content
+     * @return the hash
+     */
+    public static long hash64(byte[] content) {
+        final long m = 0xc6a4a7935bd1e995L;
+        final int r = 47;
+        int length = content.length;
+        long h = 0x9747b28cL ^ (length * m);
+
+        ByteBuffer buffer = ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN);
+        int blocks = length & ~7;
+        for (int i = 0; i < blocks; i += 8) {
+            long k = buffer.getLong(i);
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h ^= k;
+            h *= m;
+        }
+        int tail = length & 7;
+        if (tail > 0) {
+            for (int i = tail - 1; i >= 0; i--) {
+                h ^= (long) (content[blocks + i] & 0xff) << (i * 8);
+            }
+            h *= m;
+        }
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+        return h;
+    }
+
+    /**
+     * Creates an ETag for a file from its length and modification time, for files
+     * that are too large to be hashed
+     *
+     * @param length       the file length
+     * @param lastModified the last modification time in millis
+     * @return the quoted ETag
+     */
+    public static String fileETag(long length, long lastModified) {
+        return '"' + Long.toHexString(lastModified) + '-' + Long.toHexString(length) + '"';
+    }
+
+    /**
+     * Checks an If-None-Match header against an ETag using the weak comparison
+     * function, as mandated for If-None-Match.
+     *
+     * @param ifNoneMatch the If-None-Match header value
+     * @param etag        the current ETag
+     * @return true if one of the listed tags matches
+     */
+    public static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        String opaqueTag = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || stripWeak(candidate).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates If-None-Match and If-Modified-Since. If-Modified-Since is only
+     * considered when no If-None-Match header is present.
+     *
+     * @param ifNoneMatch     the If-None-Match header value, may be null
+     * @param ifModifiedSince the If-Modified-Since header value, may be null
+     * @param etag            the current ETag, may be null
+     * @param lastModified    the last modification time in millis, 0 or less if unknown
+     * @return true if a 304 Not Modified response can be sent
+     */
+    public static boolean isNotModified(String ifNoneMatch, String ifModifiedSince, String etag, long lastModified) {
+        if (ifNoneMatch != null) {
+            return etagMatches(ifNoneMatch, etag);
+        }
+        if (ifModifiedSince != null && lastModified > 0) {
+            long since = parseDate(ifModifiedSince);
+            return since != -1 && lastModified / 1000 <= since / 1000;
+        }
+        return false;
+    }
+
+    /**
+     * Converts bytes to a lower case hex string
+     *
+     * @param bytes the bytes
+     * @return the hex string
+     */
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static byte[] md5(byte[] content) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+}
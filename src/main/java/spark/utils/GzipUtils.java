@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip compression with pooled Deflaters and Accept-Encoding negotiation helpers
+ */
+public final class GzipUtils {
+
+    private static final int POOL_SIZE = 8;
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private GzipUtils() {
+    }
+
+    /**
+     * Compresses the content into the gzip format
+     *
+     * @param content the content
+     * @return the gzipped bytes
+     */
+    public static byte[] gzip(byte[] content) {
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 32);
+            out.write(HEADER, 0, HEADER.length);
+
+            deflater.setInput(content);
+            deflater.finish();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            writeIntLE(out, (int) crc.getValue());
+            writeIntLE(out, content.length);
+            return out.toByteArray();
+        } finally {
+            deflater.reset();
+            if (!DEFLATERS.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * @param acceptEncoding the Accept-Encoding header value
+     * @return true if the client accepts gzip
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+                return parts.length < 2 || !isZeroQuality(parts[1]);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param contentType the content type, may be null
+     * @return true if content of the type usually benefits from compression
+     */
+    public static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase();
+        return type.startsWith("text/")
+                || type.startsWith("application/javascript")
+                || type.startsWith("application/json")
+                || type.startsWith("application/xml")
+                || type.startsWith("image/svg+xml");
+    }
+
+    private static boolean isZeroQuality(String parameter) {
+        String param = parameter.trim();
+        if (!param.startsWith("q=")) {
+            return false;
+        }
+        try {
+            return Double.parseDouble(param.substring(2)) == 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.utils;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Precomputed table of MIME types by file extension, used when serving static files
+ * so that no lookup goes through the servlet container or the JDK's file name map.
+ */
+public final class MimeTypes {
+
+    private static final Map<String, String> TYPES = new HashMap<>(128);
+
+    static {
+        // text
+        add("text/html", "html", "htm");
+        add("text/css", "css");
+        add("text/plain", "txt", "text", "log", "md");
+        add("text/csv", "csv");
+        add("text/xml", "xsl");
+        add("text/cache-manifest", "appcache", "manifest");
+        add("text/calendar", "ics");
+        add("text/vtt", "vtt");
+        // application
+        add("application/javascript", "js", "mjs");
+        add("application/json", "json", "map");
+        add("application/ld+json", "jsonld");
+        add("application/manifest+json", "webmanifest");
+        add("application/xml", "xml");
+        add("application/xhtml+xml", "xhtml");
+        add("application/rss+xml", "rss");
+        add("application/atom+xml", "atom");
+        add("application/pdf", "pdf");
+        add("application/zip", "zip");
+        add("application/gzip", "gz");
+        add("application/x-tar", "tar");
+        add("application/java-archive", "jar");
+        add("application/wasm", "wasm");
+        add("application/octet-stream", "bin", "exe", "dll", "iso", "dmg");
+        add("application/msword", "doc");
+        add("application/vnd.openxmlformats-officedocument.wordprocessingml.document", "docx");
+        add("application/vnd.ms-excel", "xls");
+        add("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx");
+        add("application/vnd.ms-powerpoint", "ppt");
+        add("application/vnd.openxmlformats-officedocument.presentationml.presentation", "pptx");
+        // images
+        add("image/png", "png");
+        add("image/jpeg", "jpg", "jpeg", "jpe");
+        add("image/gif", "gif");
+        add("image/webp", "webp");
+        add("image/avif", "avif");
+        add("image/svg+xml", "svg", "svgz");
+        add("image/x-icon", "ico");
+        add("image/bmp", "bmp");
+        add("image/tiff", "tif", "tiff");
+        // fonts
+        add("font/woff", "woff");
+        add("font/woff2", "woff2");
+        add("font/ttf", "ttf");
+        add("font/otf", "otf");
+        add("application/vnd.ms-fontobject", "eot");
+        // audio and video
+        add("audio/mpeg", "mp3");
+        add("audio/ogg", "oga", "ogg");
+        add("audio/wav", "wav");
+        add("audio/webm", "weba");
+        add("audio/aac", "aac");
+        add("audio/flac", "flac");
+        add("video/mp4", "mp4", "m4v");
+        add("video/webm", "webm");
+        add("video/ogg", "ogv");
+        add("video/quicktime", "mov");
+        add("video/x-msvideo", "avi");
+        add("video/mp2t", "ts");
+        add("application/vnd.apple.mpegurl", "m3u8");
+    }
+
+    private MimeTypes() {
+    }
+
+    private static void add(String type, String... extensions) {
+        for (String extension : extensions) {
+            TYPES.put(extension, type);
+        }
+    }
+
+    /**
+     * Gets the MIME type of a file by its extension
+     *
+     * @param name the file name or path
+     * @return the MIME type or null if the extension is unknown
+     */
+    public static String getMimeType(String name) {
+        if (name == null) {
+            return null;
+        }
+        int dot = name.lastIndexOf('.');
+        if (dot == -1 || dot < name.lastIndexOf('/')) {
+            return null;
+        }
+        String type = TYPES.get(name.substring(dot + 1));
+        if (type == null) {
+            type = TYPES.get(name.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+        }
+        return type;
+    }
+
+}
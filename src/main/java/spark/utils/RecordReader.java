@@ -0,0 +1,232 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads newline delimited records, e.g. NDJSON, from a request body while it is
+ * received. Bytes are read into a single buffer and every record is decoded as
+ * UTF-8 on its own, so memory is bounded by the buffer and the record size limit.
+ * A trailing carriage return is removed from each record.
+ * <p>
+ * The reader can be iterated once, failures while reading are thrown as
+ * {@link UncheckedIOException}. It is closed when the body has been read completely;
+ * closing it earlier releases its buffer and leaves the rest of the body unread.
+ */
+public final class RecordReader implements Iterator<String>, Iterable<String>, Closeable {
+
+    private final Source source;
+    private final ByteBuffer buffer;
+    private final int maxRecordLength;
+    private final Runnable onClose;
+    private boolean skipBlankLines;
+
+    private byte[] record = new byte[128];
+    private int length;
+    private String next;
+    private boolean closed;
+    private long count;
+
+    /**
+     * @param source          the source of the body bytes
+     * @param buffer          the read buffer
+     * @param maxRecordLength the maximum length of a record in bytes
+     * @param onClose         invoked once when the reader is closed, may be null
+     */
+    public RecordReader(Source source, ByteBuffer buffer, int maxRecordLength, Runnable onClose) {
+        if (maxRecordLength <= 0) {
+            throw new IllegalArgumentException("maxRecordLength must be positive");
+        }
+        this.source = source;
+        this.buffer = buffer;
+        this.maxRecordLength = maxRecordLength;
+        this.onClose = onClose;
+        buffer.clear();
+        buffer.flip();
+    }
+
+    /**
+     * Creates a reader over bytes that have already been received
+     *
+     * @param body            the body
+     * @param maxRecordLength the maximum length of a record in bytes
+     * @return the reader
+     */
+    public static RecordReader of(byte[] body, int maxRecordLength) {
+        final ByteBuffer content = ByteBuffer.wrap(body != null ? body : new byte[0]);
+        return new RecordReader(target -> {
+            if (!content.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(content.remaining(), target.remaining());
+            ByteBuffer slice = content.duplicate();
+            slice.limit(slice.position() + n);
+            target.put(slice);
+            content.position(content.position() + n);
+            return n;
+        }, ByteBuffer.allocate(8192), maxRecordLength, null);
+    }
+
+    /**
+     * Skips empty records, e.g. blank lines between NDJSON records
+     *
+     * @return this reader
+     */
+    public RecordReader skipBlankLines() {
+        this.skipBlankLines = true;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !closed) {
+            next = readRecord();
+        }
+        return next != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String result = next;
+        next = null;
+        count++;
+        return result;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return this;
+    }
+
+    /**
+     * @return the remaining records as a sequential stream, closing the stream closes the reader
+     */
+    public Stream<String> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+                                    false).onClose(this::close);
+    }
+
+    /**
+     * @return the number of records returned so far
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (onClose != null) {
+                onClose.run();
+            }
+        }
+    }
+
+    private String readRecord() {
+        try {
+            while (true) {
+                while (buffer.hasRemaining()) {
+                    int start = buffer.position();
+                    int end = start;
+                    int limit = buffer.limit();
+                    while (end < limit && buffer.get(end) != '\n') {
+                        end++;
+                    }
+                    append(end - start);
+                    if (end < limit) {
+                        buffer.get();
+                        String result = take();
+                        if (!skipBlankLines || !result.isEmpty()) {
+                            return result;
+                        }
+                    }
+                }
+                buffer.clear();
+                int read = source.read(buffer);
+                buffer.flip();
+                if (read < 0) {
+                    close();
+                    String result = length > 0 ? take() : null;
+                    return result != null && skipBlankLines && result.isEmpty() ? null : result;
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void append(int n) {
+        if (length + n > maxRecordLength) {
+            close();
+            throw new RecordTooLongException("Record " + (count + 1) + " exceeds " + maxRecordLength + " bytes");
+        }
+        if (length + n > record.length) {
+            record = Arrays.copyOf(record, Math.min(maxRecordLength, Math.max(record.length * 2, length + n)));
+        }
+        buffer.get(record, length, n);
+        length += n;
+    }
+
+    private String take() {
+        int end = length > 0 && record[length - 1] == '\r' ? length - 1 : length;
+        String result = new String(record, 0, end, StandardCharsets.UTF_8);
+        length = 0;
+        return result;
+    }
+
+    /**
+     * Reads body bytes into a buffer
+     */
+    @FunctionalInterface
+    public interface Source {
+        /**
+         * @param buffer the buffer to fill
+         * @return the number of bytes read or -1 at the end of the body
+         * @throws IOException when reading fails
+         */
+        int read(ByteBuffer buffer) throws IOException;
+    }
+
+    /**
+     * Thrown when a record exceeds the maximum record length
+     */
+    public static class RecordTooLongException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public RecordTooLongException(String message) {
+            super(message);
+        }
+    }
+
+}
@@ -25,16 +25,21 @@ import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
+import org.eclipse.jetty.http.HttpCookie;
 import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.SessionManager;
 import org.eclipse.jetty.server.session.SessionHandler;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
+import spark.route.SimpleRouteMatcher;
 import spark.utils.IOUtils;
 
 /**
- * Simple Jetty Handler
+ * Simple Jetty Handler. The requested session is resolved lazily on the first
+ * getSession() call instead of up front for every request.
  *
  * @author Per Wendel
  */
@@ -43,9 +48,37 @@ class JettyHandler extends SessionHandler {
     private static final Logger LOG = Log.getLogger(JettyHandler.class);
 
     private Filter filter;
+    private SimpleRouteMatcher routeMatcher;
 
-    public JettyHandler(Filter filter) {
+    public JettyHandler(Filter filter, SimpleRouteMatcher routeMatcher) {
         this.filter = filter;
+        this.routeMatcher = routeMatcher;
+    }
+
+    @Override
+    public void doScope(
+            String target,
+            Request baseRequest,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException, ServletException {
+        SessionManager oldSessionManager = baseRequest.getSessionManager();
+        HttpSession oldSession = baseRequest.getSession(false);
+        try {
+            if (oldSessionManager != getSessionManager()) {
+                baseRequest.setSessionManager(getSessionManager());
+                baseRequest.setSession(null);
+            }
+            nextScope(target, baseRequest, request, response);
+        } finally {
+            HttpSession session = baseRequest.getSession(false);
+            if (session != null && session != oldSession) {
+                getSessionManager().complete(session);
+            }
+            if (oldSessionManager != getSessionManager()) {
+                baseRequest.setSessionManager(oldSessionManager);
+                baseRequest.setSession(oldSession);
+            }
+        }
     }
 
     @Override
@@ -57,7 +90,8 @@ class JettyHandler extends SessionHandler {
         LOG.debug("jettyhandler, handle();");
         try {
             // wrap the request so 'getInputStream()' can be called multiple times
-            filter.doFilter(new HttpRequestWrapper(request), response, null);
+            boolean sessionless = routeMatcher.isSessionless(target);
+            filter.doFilter(new HttpRequestWrapper(request, baseRequest, sessionless), response, null);
             baseRequest.setHandled(true);
         } catch (NotConsumedException ignore) {
             // TODO : Not use an exception in order to be faster.
@@ -65,11 +99,47 @@ class JettyHandler extends SessionHandler {
         }
     }
 
-    private class HttpRequestWrapper extends HttpServletRequestWrapper {
+    private void resolveRequestedSession(Request baseRequest, HttpServletRequest request) {
+        checkRequestedSessionId(baseRequest, request);
+        HttpSession session = baseRequest.getSession(false);
+        if (session != null) {
+            HttpCookie cookie = getSessionManager().access(session, request.isSecure());
+            if (cookie != null) {
+                baseRequest.getResponse().addCookie(cookie);
+            }
+        }
+    }
+
+    class HttpRequestWrapper extends HttpServletRequestWrapper {
         private byte[] cachedBytes;
+        private Request baseRequest;
+        private boolean sessionless;
+        private boolean sessionResolved;
 
-        public HttpRequestWrapper(HttpServletRequest request) {
+        public HttpRequestWrapper(HttpServletRequest request, Request baseRequest, boolean sessionless) {
             super(request);
+            this.baseRequest = baseRequest;
+            this.sessionless = sessionless;
+        }
+
+        @Override
+        public HttpSession getSession() {
+            return getSession(true);
+        }
+
+        @Override
+        public HttpSession getSession(boolean create) {
+            if (sessionless) {
+                if (!create) {
+                    return null;
+                }
+                throw new IllegalStateException("Sessions are disabled for " + getRequestURI());
+            }
+            if (!sessionResolved) {
+                resolveRequestedSession(baseRequest, (HttpServletRequest) getRequest());
+                sessionResolved = true;
+            }
+            return super.getSession(create);
         }
 
         @Override
@@ -80,6 +150,14 @@ class JettyHandler extends SessionHandler {
             return new CachedServletInputStream();
         }
 
+        /**
+         * @return the cached body when it was already read, otherwise the body as it is
+         * received, which is then not cached
+         */
+        ServletInputStream getUncachedInputStream() throws IOException {
+            return cachedBytes != null ? new CachedServletInputStream() : super.getInputStream();
+        }
+
         private void cacheInputStream() throws IOException {
             cachedBytes = IOUtils.toByteArray(super.getInputStream());
         }
@@ -17,7 +17,6 @@
 package spark.webserver;
 
 import java.io.IOException;
-import java.util.List;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -28,16 +27,7 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import spark.Access;
-import spark.FilterImpl;
-import spark.HaltException;
-import spark.Request;
-import spark.Response;
-import spark.RouteImpl;
-import spark.exception.ExceptionHandlerImpl;
-import spark.exception.ExceptionMapper;
-import spark.route.HttpMethod;
-import spark.route.RouteMatch;
+import spark.dispatch.Dispatcher;
 import spark.route.SimpleRouteMatcher;
 
 /**
@@ -47,18 +37,10 @@ import spark.route.SimpleRouteMatcher;
  */
 public class MatcherFilter implements Filter {
 
-    private static final String ACCEPT_TYPE_REQUEST_MIME_HEADER = "Accept";
-    private static final String HTTP_METHOD_OVERRIDE_HEADER = "X-HTTP-Method-Override";
-
-    private SimpleRouteMatcher routeMatcher;
+    private Dispatcher dispatcher;
     private boolean isServletContext;
     private boolean hasOtherHandlers;
 
-    /**
-     * The logger.
-     */
-    private static final org.slf4j.Logger LOG = org.slf4j.LoggerFactory.getLogger(MatcherFilter.class);
-
     /**
      * Constructor
      *
@@ -67,7 +49,7 @@ public class MatcherFilter implements Filter {
      * @param hasOtherHandlers If true, do nothing if request is not consumed by Spark in order to let others handlers process the request.
      */
     public MatcherFilter(SimpleRouteMatcher routeMatcher, boolean isServletContext, boolean hasOtherHandlers) {
-        this.routeMatcher = routeMatcher;
+        this.dispatcher = new Dispatcher(routeMatcher);
         this.isServletContext = isServletContext;
         this.hasOtherHandlers = hasOtherHandlers;
     }
@@ -81,165 +63,10 @@ public class MatcherFilter implements Filter {
         HttpServletRequest httpRequest = (HttpServletRequest) servletRequest; // NOSONAR
         HttpServletResponse httpResponse = (HttpServletResponse) servletResponse;
 
-        String method = httpRequest.getHeader(HTTP_METHOD_OVERRIDE_HEADER);
-        if (method == null) {
-            method = httpRequest.getMethod();
-        }
-        String httpMethodStr = method.toLowerCase(); // NOSONAR
-        String uri = httpRequest.getRequestURI(); // NOSONAR
-        String acceptType = httpRequest.getHeader(ACCEPT_TYPE_REQUEST_MIME_HEADER);
-
-        String bodyContent = null;
-
-        RequestWrapper requestWrapper = new RequestWrapper();
-        ResponseWrapper responseWrapper = new ResponseWrapper();
-
-        Response response = RequestResponseFactory.create(httpResponse);
-
-        LOG.debug("httpMethod:" + httpMethodStr + ", uri: " + uri);
-        try {
-            // BEFORE filters
-            List<RouteMatch> matchSet = routeMatcher.findTargetsForRequestedRoute(HttpMethod.before, uri, acceptType);
-
-            for (RouteMatch filterMatch : matchSet) {
-                Object filterTarget = filterMatch.getTarget();
-                if (filterTarget instanceof FilterImpl) {
-                    Request request = RequestResponseFactory.create(filterMatch, httpRequest);
-
-                    FilterImpl filter = (FilterImpl) filterTarget;
-
-                    requestWrapper.setDelegate(request);
-                    responseWrapper.setDelegate(response);
-
-                    filter.handle(requestWrapper, responseWrapper);
-
-                    String bodyAfterFilter = Access.getBody(response);
-                    if (bodyAfterFilter != null) {
-                        bodyContent = bodyAfterFilter;
-                    }
-                }
-            }
-            // BEFORE filters, END
-
-            HttpMethod httpMethod = HttpMethod.valueOf(httpMethodStr);
-
-            RouteMatch match = null;
-            match = routeMatcher.findTargetForRequestedRoute(httpMethod, uri, acceptType);
-
-            Object target = null;
-            if (match != null) {
-                target = match.getTarget();
-            } else if (httpMethod == HttpMethod.head && bodyContent == null) {
-                // See if get is mapped to provide default head mapping
-                bodyContent =
-                        routeMatcher.findTargetForRequestedRoute(HttpMethod.get, uri, acceptType) != null ? "" : null;
-            }
-
-            if (target != null) {
-                try {
-                    String result = null;
-                    if (target instanceof RouteImpl) {
-                        RouteImpl route = ((RouteImpl) target);
-
-                        if (requestWrapper.getDelegate() == null) {
-                            Request request = RequestResponseFactory.create(match, httpRequest);
-                            requestWrapper.setDelegate(request);
-                        } else {
-                            requestWrapper.changeMatch(match);
-                        }
-
-                        responseWrapper.setDelegate(response);
-
-                        Object element = route.handle(requestWrapper, responseWrapper);
-
-                        result = route.render(element);
-                        // result = element.toString(); // TODO: Remove later when render fixed
-                    }
-                    if (result != null) {
-                        bodyContent = result;
-                    }
-                } catch (HaltException hEx) { // NOSONAR
-                    throw hEx; // NOSONAR
-                }
-            }
-
-            // AFTER filters
-            matchSet = routeMatcher.findTargetsForRequestedRoute(HttpMethod.after, uri, acceptType);
-
-            for (RouteMatch filterMatch : matchSet) {
-                Object filterTarget = filterMatch.getTarget();
-                if (filterTarget instanceof FilterImpl) {
-
-                    if (requestWrapper.getDelegate() == null) {
-                        Request request = RequestResponseFactory.create(filterMatch, httpRequest);
-                        requestWrapper.setDelegate(request);
-                    } else {
-                        requestWrapper.changeMatch(filterMatch);
-                    }
-
-                    responseWrapper.setDelegate(response);
-
-                    FilterImpl filter = (FilterImpl) filterTarget;
-                    filter.handle(requestWrapper, responseWrapper);
-
-                    String bodyAfterFilter = Access.getBody(response);
-                    if (bodyAfterFilter != null) {
-                        bodyContent = bodyAfterFilter;
-                    }
-                }
-            }
-            // AFTER filters, END
-
-        } catch (HaltException hEx) {
-            LOG.debug("halt performed");
-            httpResponse.setStatus(hEx.getStatusCode());
-            if (hEx.getBody() != null) {
-                bodyContent = hEx.getBody();
-            } else {
-                bodyContent = "";
-            }
-        } catch (Exception e) {
-            ExceptionHandlerImpl handler = ExceptionMapper.getInstance().getHandler(e);
-            if (handler != null) {
-                handler.handle(e, requestWrapper, responseWrapper);
-                String bodyAfterFilter = Access.getBody(responseWrapper.getDelegate());
-                if (bodyAfterFilter != null) {
-                    bodyContent = bodyAfterFilter;
-                }
-            } else {
-                LOG.error("", e);
-                httpResponse.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                bodyContent = INTERNAL_ERROR;
-            }
-        }
-
-        // If redirected and content is null set to empty string to not throw NotConsumedException
-        if (bodyContent == null && responseWrapper.isRedirected()) {
-            bodyContent = "";
-        }
-
-        boolean consumed = bodyContent != null;
-
-        if (!consumed && hasOtherHandlers) {
-            throw new NotConsumedException();
-        }
-
-        if (!consumed && !isServletContext) {
-            LOG.info("The requested route [" + uri + "] has not been mapped in Spark");
-            httpResponse.setStatus(HttpServletResponse.SC_NOT_FOUND);
-            bodyContent = String.format(NOT_FOUND);
-            consumed = true;
-        }
+        ServletExchange exchange = new ServletExchange(httpRequest, httpResponse, isServletContext, hasOtherHandlers);
+        dispatcher.dispatch(exchange);
 
-        if (consumed) {
-            // Write body content
-            if (!httpResponse.isCommitted()) {
-                if (httpResponse.getContentType() == null) {
-                    httpResponse.setContentType("text/html; charset=utf-8");
-                }
-                httpResponse.getOutputStream().write(bodyContent.getBytes("utf-8"));
-            }
-        } else if (chain != null) {
+        if (exchange.isPassedOn() && chain != null) {
             chain.doFilter(httpRequest, httpResponse);
         }
     }
@@ -248,6 +75,4 @@ public class MatcherFilter implements Filter {
         // TODO Auto-generated method stub
     }
 
-    private static final String NOT_FOUND = "<html><body><h2>404 Not found</h2></body></html>";
-    private static final String INTERNAL_ERROR = "<html><body><h2>500 Internal Error</h2></body></html>";
 }
@@ -26,6 +26,7 @@ import spark.QueryParamsMap;
 import spark.Request;
 import spark.Session;
 import spark.route.RouteMatch;
+import spark.utils.RecordReader;
 
 final class RequestWrapper implements Request {
 
@@ -88,6 +89,11 @@ final class RequestWrapper implements Request {
         return delegate.bodyAsBytes();
     }
 
+    @Override
+    public RecordReader lines(int maxLineLength) {
+        return delegate.lines(maxLineLength);
+    }
+
     @Override
     public int contentLength() {
         return delegate.contentLength();
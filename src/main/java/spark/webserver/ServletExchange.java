@@ -0,0 +1,250 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.webserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spark.Request;
+import spark.Response;
+import spark.RouteImpl;
+import spark.Suspended;
+import spark.dispatch.Exchange;
+import spark.route.RouteMatch;
+
+/**
+ * Servlet side of a request dispatched by the {@link spark.dispatch.Dispatcher}.
+ * Suspended responses are awaited on the request thread, requests are not made
+ * asynchronous.
+ */
+final class ServletExchange implements Exchange {
+    private static final Logger LOG = LoggerFactory.getLogger(ServletExchange.class);
+
+    private static final String SET_COOKIE_HEADER = "Set-Cookie";
+    private static final String CONTENT_TYPE_HEADER = "Content-Type";
+    private static final String INTERNAL_ERROR = "<html><body><h2>500 Internal Error</h2></body></html>";
+
+    private final HttpServletRequest httpRequest;
+    private final HttpServletResponse httpResponse;
+    private final boolean isServletContext;
+    private final boolean hasOtherHandlers;
+
+    private final RequestWrapper requestWrapper = new RequestWrapper();
+    private final ResponseWrapper responseWrapper = new ResponseWrapper();
+    private final Response response;
+    private boolean passedOn;
+
+    /**
+     * Constructor
+     *
+     * @param httpRequest      the servlet request
+     * @param httpResponse     the servlet response
+     * @param isServletContext if true, requests not consumed by Spark are passed on to the filter chain
+     * @param hasOtherHandlers if true, requests not consumed by Spark are left to other handlers
+     */
+    ServletExchange(HttpServletRequest httpRequest,
+                    HttpServletResponse httpResponse,
+                    boolean isServletContext,
+                    boolean hasOtherHandlers) {
+        this.httpRequest = httpRequest;
+        this.httpResponse = httpResponse;
+        this.isServletContext = isServletContext;
+        this.hasOtherHandlers = hasOtherHandlers;
+        this.response = RequestResponseFactory.create(httpResponse);
+    }
+
+    /**
+     * @return true if the request was not consumed and is to be passed on to the filter chain
+     */
+    boolean isPassedOn() {
+        return passedOn;
+    }
+
+    @Override
+    public String requestMethod() {
+        return httpRequest.getMethod();
+    }
+
+    @Override
+    public String requestPath() {
+        return httpRequest.getRequestURI();
+    }
+
+    @Override
+    public String queryString() {
+        return httpRequest.getQueryString();
+    }
+
+    @Override
+    public String requestHeader(String name) {
+        return httpRequest.getHeader(name);
+    }
+
+    @Override
+    public Request request(RouteMatch match) {
+        if (requestWrapper.getDelegate() == null) {
+            requestWrapper.setDelegate(RequestResponseFactory.create(match, httpRequest));
+        } else {
+            requestWrapper.changeMatch(match);
+        }
+        return requestWrapper;
+    }
+
+    @Override
+    public Response response() {
+        responseWrapper.setDelegate(response);
+        return responseWrapper;
+    }
+
+    @Override
+    public void disableSession() {
+        // sessions of sessionless paths are kept from being resolved by the JettyHandler
+    }
+
+    @Override
+    public boolean takeOver(Object target, RouteMatch match) {
+        return false;
+    }
+
+    @Override
+    public boolean suspend(Suspended suspended, Suspended.Completion completion) {
+        return false;
+    }
+
+    @Override
+    public boolean passOn() {
+        if (hasOtherHandlers) {
+            throw new NotConsumedException();
+        }
+        passedOn = isServletContext;
+        return passedOn;
+    }
+
+    @Override
+    public int status() {
+        return httpResponse.getStatus();
+    }
+
+    @Override
+    public void status(int status) {
+        httpResponse.setStatus(status);
+    }
+
+    @Override
+    public String contentType() {
+        return httpResponse.getContentType();
+    }
+
+    @Override
+    public void contentType(String contentType) {
+        httpResponse.setContentType(contentType);
+    }
+
+    @Override
+    public String responseHeader(String name) {
+        return httpResponse.getHeader(name);
+    }
+
+    @Override
+    public void setResponseHeader(String name, String value) {
+        httpResponse.setHeader(name, value);
+    }
+
+    @Override
+    public void addResponseHeader(String name, String value) {
+        httpResponse.addHeader(name, value);
+    }
+
+    @Override
+    public Map<String, List<String>> responseHeaders() {
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (String name : httpResponse.getHeaderNames()) {
+            headers.put(name, new ArrayList<>(httpResponse.getHeaders(name)));
+        }
+        if (!headers.containsKey(CONTENT_TYPE_HEADER) && httpResponse.getContentType() != null) {
+            List<String> contentType = new ArrayList<>();
+            contentType.add(httpResponse.getContentType());
+            headers.put(CONTENT_TYPE_HEADER, contentType);
+        }
+        return headers;
+    }
+
+    @Override
+    public boolean hasCookies() {
+        return httpResponse.containsHeader(SET_COOKIE_HEADER);
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return httpResponse.isCommitted();
+    }
+
+    @Override
+    public void send(ByteBuffer body) throws IOException {
+        httpResponse.setContentLength(body.remaining());
+        ServletOutputStream out = httpResponse.getOutputStream();
+        if (body.hasArray()) {
+            out.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+        } else {
+            Channels.newChannel(out).write(body);
+        }
+    }
+
+    @Override
+    public void sendFile(File file) throws IOException {
+        ServletFileSender.send(httpRequest, httpResponse, file);
+    }
+
+    /**
+     * Renders the body into the response output stream. Fails with 500 as long as
+     * the response is not committed, afterwards the failure is propagated to the
+     * container, which aborts the truncated response.
+     */
+    @Override
+    public void stream(RouteImpl route, Object element) throws IOException {
+        try {
+            route.render(element, httpResponse.getOutputStream());
+        } catch (Exception e) {
+            if (httpResponse.isCommitted()) {
+                throw new IOException("Rendering failed after the response was committed", e);
+            }
+            LOG.error("", e);
+            httpResponse.resetBuffer();
+            httpResponse.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            httpResponse.getOutputStream().write(INTERNAL_ERROR.getBytes("utf-8"));
+        }
+    }
+
+    @Override
+    public void end() {
+        // the container completes the response when the filter returns
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.webserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import spark.utils.ByteRange;
+import spark.utils.CacheUtils;
+import spark.utils.MimeTypes;
+
+/**
+ * Sends files through the servlet API with support for conditional and Range
+ * requests (single ranges and multipart/byteranges). File content is copied
+ * with positional FileChannel transfers, the file is never loaded as a whole.
+ */
+public final class ServletFileSender {
+
+    private ServletFileSender() {
+    }
+
+    /**
+     * Sends the file
+     *
+     * @param request  the request
+     * @param response the response
+     * @param file     the file to send
+     * @throws IOException when writing fails
+     */
+    public static void send(HttpServletRequest request,
+                            HttpServletResponse response,
+                            File file) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        String etag = CacheUtils.fileETag(length, lastModified);
+
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("ETag", etag);
+        response.setHeader("Last-Modified", CacheUtils.formatDate(lastModified));
+
+        if (CacheUtils.isNotModified(request.getHeader("If-None-Match"),
+                                     request.getHeader("If-Modified-Since"),
+                                     etag,
+                                     lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        List<ByteRange> ranges = null;
+        String range = request.getHeader("Range");
+        if (range != null && ByteRange.ifRangeMatches(request.getHeader("If-Range"), etag, lastModified)) {
+            ranges = ByteRange.parse(range, length);
+        }
+        if (ranges != null && ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader("Content-Range", "bytes */" + length);
+            return;
+        }
+
+        String contentType = response.getContentType();
+        if (contentType == null) {
+            contentType = MimeTypes.getMimeType(file.getName());
+        }
+        boolean head = "HEAD".equalsIgnoreCase(request.getMethod());
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (ranges == null) {
+                if (contentType != null) {
+                    response.setContentType(contentType);
+                }
+                response.setHeader("Content-Length", Long.toString(length));
+                if (!head) {
+                    transfer(channel, 0, length, response.getOutputStream());
+                }
+            } else if (ranges.size() == 1) {
+                ByteRange single = ranges.get(0);
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                if (contentType != null) {
+                    response.setContentType(contentType);
+                }
+                response.setHeader("Content-Range", single.toContentRange(length));
+                response.setHeader("Content-Length", Long.toString(single.getLength()));
+                if (!head) {
+                    transfer(channel, single.getStart(), single.getLength(), response.getOutputStream());
+                }
+            } else {
+                String boundary = ByteRange.newBoundary();
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setContentType("multipart/byteranges; boundary=" + boundary);
+                response.setHeader("Content-Length",
+                                   Long.toString(ByteRange.multipartLength(boundary, contentType, ranges, length)));
+                if (!head) {
+                    OutputStream out = response.getOutputStream();
+                    for (ByteRange part : ranges) {
+                        out.write(ByteRange.partHeader(boundary, contentType, part, length)
+                                          .getBytes(StandardCharsets.ISO_8859_1));
+                        transfer(channel, part.getStart(), part.getLength(), out);
+                    }
+                    out.write(ByteRange.multipartEnd(boundary).getBytes(StandardCharsets.ISO_8859_1));
+                }
+            }
+        }
+    }
+
+    private static void transfer(FileChannel channel, long position, long count, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        while (count > 0) {
+            long transferred = channel.transferTo(position, count, target);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+}
@@ -17,6 +17,11 @@
 package spark.webserver;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -36,6 +41,7 @@ import spark.Request;
 import spark.Session;
 import spark.route.RouteMatch;
 import spark.utils.IOUtils;
+import spark.utils.RecordReader;
 import spark.utils.SparkUtils;
 
 /**
@@ -256,6 +262,26 @@ public class ServletRequest implements Request {
         return bodyAsBytes;
     }
 
+    /**
+     * @param maxLineLength the maximum length of a line in bytes
+     * @return a reader of the body lines, reading the body while it is received
+     */
+    @Override
+    public RecordReader lines(int maxLineLength) {
+        if (bodyAsBytes != null) {
+            return RecordReader.of(bodyAsBytes, maxLineLength);
+        }
+        try {
+            // the embedded Jetty handler caches the body for repeated reads, lines() reads past it
+            ReadableByteChannel channel = Channels.newChannel(servletRequest instanceof JettyHandler.HttpRequestWrapper
+                    ? ((JettyHandler.HttpRequestWrapper) servletRequest).getUncachedInputStream()
+                    : servletRequest.getInputStream());
+            return new RecordReader(channel::read, ByteBuffer.allocate(8192), maxLineLength, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private void readBody() {
 		try {
 			bodyAsBytes = IOUtils.toByteArray(servletRequest.getInputStream());
@@ -23,17 +23,24 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import org.eclipse.jetty.server.AbstractConnectionFactory;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.server.handler.ResourceHandler;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import spark.ServerConfig;
+
 /**
  * Spark server implementation
  *
@@ -45,6 +52,7 @@ public class SparkServer implements spark.SparkServer {
     private static final String NAME = "Spark";
     private Handler handler;
     private Server server;
+    private ServerConfig config = new ServerConfig();
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -53,6 +61,11 @@ public class SparkServer implements spark.SparkServer {
         System.setProperty("org.mortbay.log.class", "spark.JettyLogger");
     }
 
+    @Override
+    public void configure(ServerConfig config) {
+        this.config = config;
+    }
+
     /**
      * Ignites the spark server, listening on the specified port, running SSL secured with the specified keystore
      * and truststore.  If truststore is null, keystore is reused.
@@ -91,7 +104,12 @@ public class SparkServer implements spark.SparkServer {
         }
 
         // Set some timeout options to make debugging easier.
-        connector.setIdleTimeout(TimeUnit.HOURS.toMillis(1));
+        long idleTimeout = config.getIdleTimeoutMillis() != null
+                ? config.getIdleTimeoutMillis() : TimeUnit.HOURS.toMillis(1);
+        connector.setIdleTimeout(idleTimeout);
+        if (config.getBacklog() != null) {
+            connector.setAcceptQueueSize(config.getBacklog());
+        }
         connector.setSoLingerTime(-1);
         connector.setHost(host);
         connector.setPort(port);
@@ -120,6 +138,7 @@ public class SparkServer implements spark.SparkServer {
         try {
             logger.info("== {} has ignited ...", NAME);
             logger.info(">> Listening on {}:{}", host, port);
+            logConfig(connector, idleTimeout);
 
             server.start();
             server.join();
@@ -153,7 +172,7 @@ public class SparkServer implements spark.SparkServer {
      * @param truststorePassword the trust store password
      * @return a secure socket connector
      */
-    private static ServerConnector createSecureSocketConnector(String keystoreFile,
+    private ServerConnector createSecureSocketConnector(String keystoreFile,
                                                                String keystorePassword, String truststoreFile,
                                                                String truststorePassword) {
 
@@ -169,7 +188,8 @@ public class SparkServer implements spark.SparkServer {
         if (truststorePassword != null) {
             sslContextFactory.setTrustStorePassword(truststorePassword);
         }
-        return new ServerConnector(new Server(), sslContextFactory);
+        return new ServerConnector(createServer(), null, null, null, -1, selectors(),
+                AbstractConnectionFactory.getFactories(sslContextFactory, createHttpConnectionFactory()));
     }
 
     /**
@@ -177,8 +197,52 @@ public class SparkServer implements spark.SparkServer {
      *
      * @return - a server connector
      */
-    private static ServerConnector createSocketConnector() {
-        return new ServerConnector(new Server());
+    private ServerConnector createSocketConnector() {
+        return new ServerConnector(createServer(), null, null, null, -1, selectors(), createHttpConnectionFactory());
+    }
+
+    private Server createServer() {
+        if (config.getWorkerThreads() == null) {
+            return new Server();
+        }
+        return new Server(new QueuedThreadPool(config.getWorkerThreads()));
+    }
+
+    /**
+     * @return the number of selectors, -1 lets Jetty derive it from the number of processors
+     */
+    private int selectors() {
+        return config.getIoThreads() != null ? config.getIoThreads() : -1;
+    }
+
+    private HttpConnectionFactory createHttpConnectionFactory() {
+        HttpConfiguration httpConfiguration = new HttpConfiguration();
+        if (config.getBufferSize() != null) {
+            httpConfiguration.setOutputBufferSize(config.getBufferSize());
+        }
+        return new HttpConnectionFactory(httpConfiguration);
+    }
+
+    /**
+     * Logs the effective server settings and the settings Jetty does not support
+     */
+    private void logConfig(ServerConnector connector, long idleTimeout) {
+        ThreadPool threadPool = server.getThreadPool();
+        Object workerThreads = threadPool instanceof QueuedThreadPool
+                ? ((QueuedThreadPool) threadPool).getMaxThreads() : "default";
+        Object selectors = config.getIoThreads() != null ? config.getIoThreads() : "default";
+        Object bufferSize = config.getBufferSize() != null ? config.getBufferSize() : "default";
+        logger.info(">> selectors: {}, worker threads: {}, output buffer: {} bytes", selectors, workerThreads, bufferSize);
+        logger.info(">> accept queue: {}, idle timeout: {} ms", connector.getAcceptQueueSize(), idleTimeout);
+        if (config.getDirectBuffers() != null) {
+            logger.warn("directBuffers is not supported by Jetty and is ignored");
+        }
+        if (config.getTcpNoDelay() != null) {
+            logger.warn("tcpNoDelay is not supported by Jetty and is ignored");
+        }
+        if (config.getKeepAliveTimeoutMillis() != null) {
+            logger.warn("keepAliveTimeout is not supported by Jetty and is ignored, use idleTimeout");
+        }
     }
 
     /**
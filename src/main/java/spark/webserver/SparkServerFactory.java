@@ -17,6 +17,7 @@
 package spark.webserver;
 
 import spark.route.RouteMatcherFactory;
+import spark.route.SimpleRouteMatcher;
 
 /**
  * @author Per Wendel
@@ -27,9 +28,10 @@ public final class SparkServerFactory {
     }
 
     public static spark.SparkServer create(boolean hasMultipleHandler) {
-        MatcherFilter matcherFilter = new MatcherFilter(RouteMatcherFactory.get(), false, hasMultipleHandler);
+        SimpleRouteMatcher routeMatcher = RouteMatcherFactory.get();
+        MatcherFilter matcherFilter = new MatcherFilter(routeMatcher, false, hasMultipleHandler);
         matcherFilter.init(null);
-        JettyHandler handler = new JettyHandler(matcherFilter);
+        JettyHandler handler = new JettyHandler(matcherFilter, routeMatcher);
         return new SparkServer(handler);
     }
 
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.websocket;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A group of WebSocket sessions receiving the same messages, e.g. the members of a
+ * chat room. A broadcast message is encoded once and its payload is shared by all
+ * sessions.
+ */
+public class WebSocketGroup {
+
+    private final Set<WebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Adds the session to the group, it leaves the group when it is closed
+     *
+     * @param session the session
+     */
+    public void join(WebSocketSession session) {
+        if (session.isOpen()) {
+            sessions.add(session);
+            session.onClose(() -> sessions.remove(session));
+        }
+    }
+
+    public void leave(WebSocketSession session) {
+        sessions.remove(session);
+    }
+
+    /**
+     * Sends the message to all sessions of the group
+     *
+     * @param message the message
+     * @return the number of sessions that accepted the message
+     */
+    public int broadcast(WebSocketMessage message) {
+        message.getPayload();
+        int sent = 0;
+        for (WebSocketSession session : sessions) {
+            if (session.send(message)) {
+                sent++;
+            } else {
+                sessions.remove(session);
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Sends a text message to all sessions of the group
+     *
+     * @param text the text
+     * @return the number of sessions that accepted the message
+     */
+    public int broadcast(String text) {
+        return broadcast(WebSocketMessage.text(text));
+    }
+
+    /**
+     * Closes all sessions of the group
+     */
+    public void close() {
+        for (WebSocketSession session : sessions) {
+            session.close();
+        }
+        sessions.clear();
+    }
+
+    /**
+     * @return the number of sessions in the group
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+}
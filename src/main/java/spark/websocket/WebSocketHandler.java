@@ -0,0 +1,73 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.websocket;
+
+import java.nio.ByteBuffer;
+
+import spark.Request;
+
+/**
+ * Handles the events of the sessions of a WebSocket route. The methods are invoked
+ * on the I/O thread of the connection and must not block, blocking work belongs on
+ * an executor. Messages are delivered complete, up to the size limit of the route.
+ */
+public interface WebSocketHandler {
+
+    /**
+     * Invoked when the handshake is complete
+     *
+     * @param session the session
+     * @param request the upgrade request
+     * @throws Exception when the session cannot be opened, it is closed then
+     */
+    void onConnect(WebSocketSession session, Request request) throws Exception;
+
+    /**
+     * @param session the session
+     * @param text    the text message
+     * @throws Exception when the message cannot be handled, passed to {@link #onError}
+     */
+    default void onText(WebSocketSession session, String text) throws Exception {
+    }
+
+    /**
+     * Invoked with the pooled buffers of a binary message, which are released when
+     * the method returns and must be copied to be retained
+     *
+     * @param session the session
+     * @param data    the message buffers
+     * @throws Exception when the message cannot be handled, passed to {@link #onError}
+     */
+    default void onBinary(WebSocketSession session, ByteBuffer[] data) throws Exception {
+    }
+
+    /**
+     * @param session the session
+     * @param code    the close code sent by the client or -1 if the connection was lost
+     * @param reason  the close reason or null
+     */
+    default void onClose(WebSocketSession session, int code, String reason) {
+    }
+
+    /**
+     * @param session the session
+     * @param error   the error, the session is closed afterwards
+     */
+    default void onError(WebSocketSession session, Throwable error) {
+    }
+
+}
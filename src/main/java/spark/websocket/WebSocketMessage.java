@@ -0,0 +1,75 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.websocket;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A text or binary WebSocket message. Text is encoded to UTF-8 once, on first use,
+ * and the payload bytes are shared by all sessions it is sent to, so they must not
+ * be modified after the message has been sent.
+ */
+public final class WebSocketMessage {
+
+    private final String text;
+    private volatile byte[] payload;
+
+    private WebSocketMessage(String text, byte[] payload) {
+        this.text = text;
+        this.payload = payload;
+    }
+
+    /**
+     * @param text the text
+     * @return a text message
+     */
+    public static WebSocketMessage text(String text) {
+        return new WebSocketMessage(text != null ? text : "", null);
+    }
+
+    /**
+     * @param data the data, not copied
+     * @return a binary message
+     */
+    public static WebSocketMessage binary(byte[] data) {
+        return new WebSocketMessage(null, data != null ? data : new byte[0]);
+    }
+
+    public boolean isText() {
+        return text != null;
+    }
+
+    /**
+     * @return the text or null for binary messages
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the payload, shared by all callers and not to be modified
+     */
+    public byte[] getPayload() {
+        byte[] bytes = payload;
+        if (bytes == null) {
+            bytes = text.getBytes(StandardCharsets.UTF_8);
+            payload = bytes;
+        }
+        return bytes;
+    }
+
+}
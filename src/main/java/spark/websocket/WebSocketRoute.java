@@ -0,0 +1,67 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.websocket;
+
+/**
+ * The target of a WebSocket route, holding its handler and session limits
+ */
+public class WebSocketRoute {
+
+    public static final int DEFAULT_MAX_QUEUED_MESSAGES = 1024;
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 1024 * 1024;
+
+    private final String path;
+    private final WebSocketHandler handler;
+    private final int maxQueuedMessages;
+    private final int maxMessageSize;
+
+    /**
+     * @param path              the route path
+     * @param handler           the handler of the sessions
+     * @param maxQueuedMessages the number of unwritten messages after which a session is closed
+     * @param maxMessageSize    the maximum size of a received message in bytes
+     */
+    public WebSocketRoute(String path, WebSocketHandler handler, int maxQueuedMessages, int maxMessageSize) {
+        if (maxQueuedMessages <= 0) {
+            throw new IllegalArgumentException("maxQueuedMessages must be positive");
+        }
+        if (maxMessageSize <= 0) {
+            throw new IllegalArgumentException("maxMessageSize must be positive");
+        }
+        this.path = path;
+        this.handler = handler;
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public WebSocketHandler getHandler() {
+        return handler;
+    }
+
+    public int getMaxQueuedMessages() {
+        return maxQueuedMessages;
+    }
+
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.websocket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An open WebSocket connection. Sending never blocks: messages are queued and
+ * written by the I/O thread of the connection. A client that does not keep up with
+ * the messages is disconnected once its queue is full.
+ */
+public interface WebSocketSession {
+
+    /**
+     * Queues the message
+     *
+     * @param message the message
+     * @return false if the session is closed or was closed because its queue is full
+     */
+    boolean send(WebSocketMessage message);
+
+    /**
+     * Queues a text message
+     *
+     * @param text the text
+     * @return false if the session is closed or was closed because its queue is full
+     */
+    default boolean send(String text) {
+        return send(WebSocketMessage.text(text));
+    }
+
+    /**
+     * Queues a binary message with the remaining bytes of the buffer, which is not
+     * copied and must not be modified until it has been written
+     *
+     * @param data the data
+     * @return false if the session is closed or was closed because its queue is full
+     */
+    boolean send(ByteBuffer data);
+
+    /**
+     * @return the number of queued messages not yet written
+     */
+    int getQueueSize();
+
+    boolean isOpen();
+
+    /**
+     * Registers a callback invoked once when the session is closed by either side,
+     * immediately if it already is
+     *
+     * @param callback the callback
+     */
+    void onClose(Runnable callback);
+
+    /**
+     * Sends a normal closure close frame
+     */
+    void close();
+
+    /**
+     * Sends a close frame
+     *
+     * @param code   the close code
+     * @param reason the reason, may be null
+     */
+    void close(int code, String reason);
+
+}
@@ -0,0 +1,97 @@
+package spark;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContainerLimitsTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsCgroupV2Limits() throws IOException {
+        Path root = folder.getRoot().toPath();
+        write(root.resolve("cgroup.controllers"), "cpu memory");
+        write(root.resolve("cpu.max"), "50000 100000");
+        write(root.resolve("memory.max"), String.valueOf(256 * MB));
+
+        ContainerLimits limits = ContainerLimits.read(root, 32);
+        assertEquals("cgroup v2", limits.getSource());
+        assertEquals(0.5, limits.getCpus(), 0.001);
+        assertEquals(256 * MB, limits.getMemoryLimit());
+    }
+
+    @Test
+    public void unlimitedCgroupV2FallsBackToHost() throws IOException {
+        Path root = folder.getRoot().toPath();
+        write(root.resolve("cgroup.controllers"), "cpu memory");
+        write(root.resolve("cpu.max"), "max 100000");
+        write(root.resolve("memory.max"), "max");
+
+        ContainerLimits limits = ContainerLimits.read(root, 4);
+        assertEquals(4, limits.getCpus(), 0.001);
+        assertEquals(-1, limits.getMemoryLimit());
+    }
+
+    @Test
+    public void readsCgroupV1Limits() throws IOException {
+        Path root = folder.getRoot().toPath();
+        write(root.resolve("cpu,cpuacct/cpu.cfs_quota_us"), "1600000");
+        write(root.resolve("cpu,cpuacct/cpu.cfs_period_us"), "100000");
+        write(root.resolve("memory/memory.limit_in_bytes"), "9223372036854771712");
+
+        ContainerLimits limits = ContainerLimits.read(root, 64);
+        assertEquals("cgroup v1", limits.getSource());
+        assertEquals(16, limits.getCpus(), 0.001);
+        assertEquals(-1, limits.getMemoryLimit());
+    }
+
+    @Test
+    public void quotaIsCappedByHostCpus() throws IOException {
+        Path root = folder.getRoot().toPath();
+        write(root.resolve("cpu/cpu.cfs_quota_us"), "800000");
+        write(root.resolve("cpu/cpu.cfs_period_us"), "100000");
+
+        assertEquals(2, ContainerLimits.read(root, 2).getCpus(), 0.001);
+    }
+
+    @Test
+    public void smallPodGetsSmallPoolsAndBudgets() throws IOException {
+        Path root = folder.getRoot().toPath();
+        write(root.resolve("cgroup.controllers"), "cpu memory");
+        write(root.resolve("cpu.max"), "50000 100000");
+        write(root.resolve("memory.max"), String.valueOf(256 * MB));
+
+        AutoTuning tuning = new AutoTuning(ContainerLimits.read(root, 32), 8192 * MB);
+        ServerConfig config = tuning.serverConfig();
+        assertEquals(Integer.valueOf(1), config.getIoThreads());
+        assertEquals(Integer.valueOf(8), config.getWorkerThreads());
+        assertEquals(Integer.valueOf(4096), config.getBufferSize());
+        assertEquals(16 * MB, tuning.getStaticCacheSize());
+        assertEquals(32 * MB, tuning.getResponseCacheSize());
+    }
+
+    @Test
+    public void explicitSettingsWinOverTunedDefaults() {
+        ServerConfig tuned = new ServerConfig().ioThreads(16).workerThreads(128);
+        ServerConfig config = new ServerConfig().workerThreads(32).withDefaults(tuned);
+        assertEquals(Integer.valueOf(16), config.getIoThreads());
+        assertEquals(Integer.valueOf(32), config.getWorkerThreads());
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+}
@@ -0,0 +1,179 @@
+package spark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import spark.cache.IdempotencyStore;
+import spark.util.SparkTestUtil;
+import spark.util.SparkTestUtil.UrlResponse;
+
+import static spark.Spark.halt;
+import static spark.Spark.idempotencyKeys;
+import static spark.Spark.post;
+
+/**
+ * System tests for Idempotency-Key support.
+ */
+public class IdempotencyIntegrationTest {
+
+    private static final AtomicInteger orders = new AtomicInteger();
+    private static final AtomicInteger downloads = new AtomicInteger();
+    private static final AtomicInteger failures = new AtomicInteger();
+    private static final AtomicInteger refusals = new AtomicInteger();
+    private static final CountDownLatch slowStarted = new CountDownLatch(1);
+    private static final CountDownLatch slowReleased = new CountDownLatch(1);
+
+    static SparkTestUtil testUtil;
+    static File tmpFile;
+
+    @AfterClass
+    public static void tearDown() {
+        slowReleased.countDown();
+        Spark.stop();
+        IdempotencyStore.getInstance().waitTimeout(IdempotencyStore.DEFAULT_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        if (tmpFile != null) {
+            tmpFile.delete();
+        }
+    }
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        testUtil = new SparkTestUtil(4567);
+
+        tmpFile = File.createTempFile("receipt", ".txt");
+        FileWriter writer = new FileWriter(tmpFile);
+        writer.write("receipt");
+        writer.close();
+
+        idempotencyKeys(1, TimeUnit.MINUTES);
+        IdempotencyStore.getInstance().waitTimeout(500, TimeUnit.MILLISECONDS);
+
+        post("/orders", (request, response) -> {
+            response.status(201);
+            return "order " + orders.incrementAndGet();
+        });
+
+        post("/slow", (request, response) -> {
+            slowStarted.countDown();
+            slowReleased.await(10, TimeUnit.SECONDS);
+            return "slow";
+        });
+
+        post("/receipts", (request, response) -> {
+            downloads.incrementAndGet();
+            return tmpFile;
+        });
+
+        post("/broken", (request, response) -> {
+            if (failures.incrementAndGet() == 1) {
+                throw new AssertionError("broken");
+            }
+            return "fixed";
+        });
+
+        post("/refused", (request, response) -> {
+            halt(403, "refused " + refusals.incrementAndGet());
+            return null;
+        });
+
+        try {
+            Thread.sleep(500);
+        } catch (Exception e) {
+        }
+    }
+
+    @Test
+    public void testRetryIsReplayed() throws Exception {
+        UrlResponse first = postWithKey("/orders", "order-1");
+        Assert.assertEquals(201, first.status);
+        Assert.assertEquals("order 1", first.body);
+        Assert.assertNull(first.headers.get(IdempotencyStore.REPLAYED_HEADER));
+
+        UrlResponse retry = postWithKey("/orders", "order-1");
+        Assert.assertEquals(201, retry.status);
+        Assert.assertEquals("order 1", retry.body);
+        Assert.assertEquals("true", retry.headers.get(IdempotencyStore.REPLAYED_HEADER));
+
+        UrlResponse other = postWithKey("/orders", "order-2");
+        Assert.assertEquals("order 2", other.body);
+        Assert.assertEquals(2, orders.get());
+    }
+
+    @Test
+    public void testDuplicateOfExecutingRequestConflicts() throws Exception {
+        AtomicReference<UrlResponse> first = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                first.set(new SparkTestUtil(4567).doMethod("POST", "/slow", "", false, "text/html", key("slow-1")));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        Assert.assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+
+        UrlResponse duplicate = postWithKey("/slow", "slow-1");
+        Assert.assertEquals(409, duplicate.status);
+
+        slowReleased.countDown();
+        thread.join(5000);
+        Assert.assertEquals(200, first.get().status);
+        Assert.assertEquals("slow", first.get().body);
+    }
+
+    @Test
+    public void testRouteEndingTheExchangeReleasesTheKey() throws Exception {
+        UrlResponse first = postWithKey("/receipts", "receipt-1");
+        Assert.assertEquals(200, first.status);
+        Assert.assertEquals("receipt", first.body);
+
+        // not stored, the retry executes the route instead of waiting for a response
+        UrlResponse retry = postWithKey("/receipts", "receipt-1");
+        Assert.assertEquals(200, retry.status);
+        Assert.assertEquals("receipt", retry.body);
+        Assert.assertNull(retry.headers.get(IdempotencyStore.REPLAYED_HEADER));
+        Assert.assertEquals(2, downloads.get());
+    }
+
+    @Test
+    public void testErrorReleasesTheKey() throws Exception {
+        UrlResponse first = postWithKey("/broken", "broken-1");
+        Assert.assertEquals(500, first.status);
+
+        UrlResponse retry = postWithKey("/broken", "broken-1");
+        Assert.assertEquals(200, retry.status);
+        Assert.assertEquals("fixed", retry.body);
+    }
+
+    @Test
+    public void testHaltIsReplayed() throws Exception {
+        UrlResponse first = postWithKey("/refused", "refused-1");
+        Assert.assertEquals(403, first.status);
+        Assert.assertEquals("refused 1", first.body);
+
+        UrlResponse retry = postWithKey("/refused", "refused-1");
+        Assert.assertEquals(403, retry.status);
+        Assert.assertEquals("refused 1", retry.body);
+        Assert.assertEquals("true", retry.headers.get(IdempotencyStore.REPLAYED_HEADER));
+    }
+
+    private static UrlResponse postWithKey(String path, String idempotencyKey) throws IOException {
+        return testUtil.doMethod("POST", path, "", false, "text/html", key(idempotencyKey));
+    }
+
+    private static Map<String, String> key(String idempotencyKey) {
+        return Collections.singletonMap(IdempotencyStore.IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+    }
+}
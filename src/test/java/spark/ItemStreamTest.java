@@ -0,0 +1,75 @@
+package spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class ItemStreamTest {
+
+    @Test
+    public void writesNdjsonInBatches() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        ItemStream.of(Arrays.asList(1, 2, 3, 4), ItemStream.<Integer>ndjson(i -> "{\"id\":" + i + "}"))
+                .flushEvery(16)
+                .writeTo(out);
+
+        assertEquals("{\"id\":1}\n{\"id\":2}\n{\"id\":3}\n{\"id\":4}\n", out.toString("UTF-8"));
+        assertEquals(2, out.flushes);
+    }
+
+    @Test
+    public void writesCsvAndClosesStreams() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        Stream<String[]> rows = Stream.of(new String[] {"a", "b,c"}, new String[] {"say \"hi\"", null})
+                .onClose(() -> closed.set(true));
+        ItemStream<String[]> items = ItemStream.of(rows, ItemStream.<String[]>csv(row -> row)).prefix("x,y\r\n");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        items.writeTo(out);
+
+        assertEquals("x,y\r\na,\"b,c\"\r\n\"say \"\"hi\"\"\",\r\n", out.toString("UTF-8"));
+        assertEquals("text/csv; charset=utf-8", items.getContentType());
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void closeClosesTheSourceOnce() throws Exception {
+        AtomicInteger closes = new AtomicInteger();
+        ItemStream<Integer> items = ItemStream.of(Stream.of(1, 2).onClose(closes::incrementAndGet), ItemStream.lines());
+
+        items.close();
+        items.close();
+
+        assertEquals(1, closes.get());
+    }
+
+    @Test
+    public void streamResultsAreWrittenAsLines() throws Exception {
+        Object items = ItemStream.itemsOf(Stream.of("a", 1));
+        assertTrue(items instanceof ItemStream);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((ItemStream<?>) items).writeTo(out);
+
+        assertEquals("a\n1\n", out.toString("UTF-8"));
+        assertEquals("text/plain; charset=utf-8", ((ItemStream<?>) items).getContentType());
+        assertEquals("plain", ItemStream.itemsOf("plain"));
+    }
+
+    private static final class CountingOutputStream extends ByteArrayOutputStream {
+        private int flushes;
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+package spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ServerConfigTest {
+
+    @Test
+    public void unsetValuesAreNull() {
+        ServerConfig config = new ServerConfig();
+        assertNull(config.getIoThreads());
+        assertNull(config.getWorkerThreads());
+        assertNull(config.getBufferSize());
+        assertNull(config.getDirectBuffers());
+        assertNull(config.getBacklog());
+        assertNull(config.getTcpNoDelay());
+        assertNull(config.getKeepAliveTimeoutMillis());
+        assertNull(config.getIdleTimeoutMillis());
+    }
+
+    @Test
+    public void timeoutsAreConvertedToMillis() {
+        ServerConfig config = new ServerConfig().keepAliveTimeout(30, TimeUnit.SECONDS).idleTimeout(2, TimeUnit.MINUTES);
+        assertEquals(Long.valueOf(30000), config.getKeepAliveTimeoutMillis());
+        assertEquals(Long.valueOf(120000), config.getIdleTimeoutMillis());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroWorkerThreads() {
+        new ServerConfig().workerThreads(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooSmallBuffers() {
+        new ServerConfig().bufferSize(256);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeTimeouts() {
+        new ServerConfig().idleTimeout(-1, TimeUnit.SECONDS);
+    }
+
+}
@@ -0,0 +1,92 @@
+package spark;
+
+import static spark.Spark.get;
+import static spark.Spark.sessionless;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import spark.util.SparkTestUtil;
+import spark.util.SparkTestUtil.UrlResponse;
+
+/**
+ * System tests for lazily resolved sessions and sessionless route groups.
+ */
+public class SessionIntegrationTest {
+
+    @AfterClass
+    public static void tearDown() {
+        Spark.stop();
+    }
+
+    @BeforeClass
+    public static void setup() {
+        sessionless("/api/*");
+
+        get("/plain", (request, response) -> "plain");
+
+        get("/visits", (request, response) -> {
+            Integer visits = request.session().attribute("visits");
+            visits = visits == null ? 1 : visits + 1;
+            request.session().attribute("visits", visits);
+            return visits.toString();
+        });
+
+        get("/api/session", (request, response) -> {
+            if (request.session(false) != null) {
+                return "attached";
+            }
+            try {
+                request.session();
+                return "created";
+            } catch (IllegalStateException e) {
+                return "disabled";
+            }
+        });
+
+        try {
+            Thread.sleep(500);
+        } catch (Exception e) {
+        }
+    }
+
+    @Test
+    public void testUntouchedSessionCreatesNoSession() throws Exception {
+        UrlResponse response = new SparkTestUtil(4567).doMethod("GET", "/plain", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("plain", response.body);
+        Assert.assertNull(response.headers.get("Set-Cookie"));
+    }
+
+    @Test
+    public void testSessionIsKeptAcrossRequests() throws Exception {
+        SparkTestUtil testUtil = new SparkTestUtil(4567);
+
+        UrlResponse first = testUtil.doMethod("GET", "/visits", null);
+        Assert.assertEquals(200, first.status);
+        Assert.assertEquals("1", first.body);
+        Assert.assertTrue(first.headers.get("Set-Cookie").startsWith("JSESSIONID="));
+
+        UrlResponse second = testUtil.doMethod("GET", "/visits", null);
+        Assert.assertEquals(200, second.status);
+        Assert.assertEquals("2", second.body);
+    }
+
+    @Test
+    public void testSessionlessPathSkipsTheSession() throws Exception {
+        SparkTestUtil testUtil = new SparkTestUtil(4567);
+
+        UrlResponse response = testUtil.doMethod("GET", "/api/session", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("disabled", response.body);
+        Assert.assertNull(response.headers.get("Set-Cookie"));
+
+        // the session cookie of the client is not resolved either
+        Assert.assertEquals("1", testUtil.doMethod("GET", "/visits", null).body);
+        response = testUtil.doMethod("GET", "/api/session", null);
+        Assert.assertEquals("disabled", response.body);
+        Assert.assertNull(response.headers.get("Set-Cookie"));
+    }
+}
@@ -0,0 +1,114 @@
+package spark;
+
+import static spark.Spark.after;
+import static spark.Spark.autoETags;
+import static spark.Spark.get;
+import static spark.Spark.halt;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import spark.util.SparkTestUtil;
+import spark.util.SparkTestUtil.UrlResponse;
+
+/**
+ * System tests for streamed responses with automatic ETags enabled.
+ */
+public class StreamingIntegrationTest {
+
+    private static final int ITEMS = 20000;
+    private static final int RENDERED = 256 * 1024;
+
+    static SparkTestUtil testUtil;
+    static final AtomicBoolean haltedClosed = new AtomicBoolean();
+
+    @AfterClass
+    public static void tearDown() {
+        Spark.stop();
+    }
+
+    @BeforeClass
+    public static void setup() {
+        testUtil = new SparkTestUtil(4567);
+
+        autoETags();
+
+        get("/plain", (request, response) -> "plain");
+
+        get("/items", (request, response) ->
+                ItemStream.of(IntStream.range(0, ITEMS).boxed(), ItemStream.<Integer>ndjson(i -> "{\"id\":" + i + "}")));
+
+        get("/rendered", (request, response) -> "x", (StreamingResponseTransformer) (model, out) -> {
+            byte[] chunk = new byte[1024];
+            for (int i = 0; i < RENDERED / chunk.length; i++) {
+                out.write(chunk);
+            }
+        });
+
+        get("/lines", (request, response) -> IntStream.range(0, ITEMS).boxed());
+
+        get("/halted", (request, response) ->
+                ItemStream.of(Stream.of("a", "b").onClose(() -> haltedClosed.set(true)), ItemStream.lines()));
+
+        after("/halted", (request, response) -> halt(403, "denied"));
+
+        try {
+            Thread.sleep(500);
+        } catch (Exception e) {
+        }
+    }
+
+    @Test
+    public void testRenderedBodyGetsAnETag() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/plain", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertNotNull(response.headers.get("ETag"));
+    }
+
+    @Test
+    public void testItemStreamIsSentChunked() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/items", null);
+        Assert.assertEquals(200, response.status);
+        assertStreamed(response);
+        Assert.assertEquals(ITEMS, response.body.split("\n").length);
+    }
+
+    @Test
+    public void testStreamingRenderIsSentChunked() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/rendered", null);
+        Assert.assertEquals(200, response.status);
+        assertStreamed(response);
+        Assert.assertEquals(RENDERED, response.body.length());
+    }
+
+    @Test
+    public void testStreamResultIsSentAsLines() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/lines", null);
+        Assert.assertEquals(200, response.status);
+        assertStreamed(response);
+        Assert.assertTrue(response.headers.get("Content-Type").startsWith("text/plain"));
+        String[] lines = response.body.split("\n");
+        Assert.assertEquals(ITEMS, lines.length);
+        Assert.assertEquals("0", lines[0]);
+    }
+
+    @Test
+    public void testReplacedItemStreamIsClosed() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/halted", null);
+        Assert.assertEquals(403, response.status);
+        Assert.assertEquals("denied", response.body);
+        Assert.assertTrue(haltedClosed.get());
+    }
+
+    private static void assertStreamed(UrlResponse response) {
+        Assert.assertEquals("chunked", response.headers.get("Transfer-Encoding"));
+        Assert.assertNull(response.headers.get("Content-Length"));
+        Assert.assertNull(response.headers.get("ETag"));
+    }
+}
@@ -0,0 +1,56 @@
+package spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class StreamingRenderTest {
+
+    @Test
+    public void streamingTransformerWritesIntoTheStream() throws Exception {
+        RouteImpl route = ResponseTransformerRouteImpl.create("/", (request, response) -> "x",
+                (StreamingResponseTransformer) (model, out) -> out.write(("[" + model + "]").getBytes()));
+        assertTrue(route.isStreaming());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        route.render("x", out);
+        assertEquals("[x]", out.toString("UTF-8"));
+        assertEquals("[x]", route.render("x"));
+        assertEquals("[x]", new String(route.renderBytes("x"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void streamingTemplateEngineWritesIntoTheStream() throws Exception {
+        StreamingTemplateEngine engine = new StreamingTemplateEngine() {
+            @Override
+            public void render(ModelAndView modelAndView, Writer writer) throws IOException {
+                writer.write(modelAndView.getViewName() + "=" + modelAndView.getModel());
+            }
+        };
+        RouteImpl route = TemplateViewRouteImpl.create("/", (request, response) -> null, engine);
+        assertTrue(route.isStreaming());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        route.render(new ModelAndView("ü", "page"), out);
+        assertEquals("page=ü", out.toString("UTF-8"));
+        assertEquals("page=ü", new String(route.renderBytes(new ModelAndView("ü", "page")), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void plainRoutesAreNotStreaming() throws Exception {
+        RouteImpl route = ResponseTransformerRouteImpl.create("/", (request, response) -> "x", model -> "<" + model + ">");
+        assertFalse(route.isStreaming());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        route.render("x", out);
+        assertEquals("<x>", out.toString("UTF-8"));
+    }
+
+}
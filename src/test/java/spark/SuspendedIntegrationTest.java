@@ -0,0 +1,84 @@
+package spark;
+
+import static spark.Spark.after;
+import static spark.Spark.get;
+import static spark.Spark.halt;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import spark.util.SparkTestUtil;
+import spark.util.SparkTestUtil.UrlResponse;
+
+/**
+ * System tests for the after filters of suspended responses.
+ */
+public class SuspendedIntegrationTest {
+
+    static SparkTestUtil testUtil;
+    static ScheduledExecutorService executor;
+
+    @AfterClass
+    public static void tearDown() {
+        Spark.stop();
+        executor.shutdownNow();
+    }
+
+    @BeforeClass
+    public static void setup() {
+        testUtil = new SparkTestUtil(4567);
+        executor = Executors.newSingleThreadScheduledExecutor();
+
+        get("/resumed", (request, response) -> {
+            Suspended suspended = Suspended.of(10, TimeUnit.SECONDS);
+            executor.schedule(() -> suspended.resume("update"), 100, TimeUnit.MILLISECONDS);
+            return suspended;
+        });
+
+        get("/expired", (request, response) -> Suspended.of(100, TimeUnit.MILLISECONDS).fallback(200, "[]"));
+
+        get("/halted", (request, response) -> {
+            Suspended suspended = Suspended.of(10, TimeUnit.SECONDS);
+            executor.schedule(() -> suspended.resume("update"), 100, TimeUnit.MILLISECONDS);
+            return suspended;
+        });
+
+        after((request, response) -> response.header("X-After", "applied"));
+
+        after("/halted", (request, response) -> halt(403, "denied"));
+
+        try {
+            Thread.sleep(500);
+        } catch (Exception e) {
+        }
+    }
+
+    @Test
+    public void testAfterFiltersApplyToResumedResponse() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/resumed", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("update", response.body);
+        Assert.assertEquals("applied", response.headers.get("X-After"));
+    }
+
+    @Test
+    public void testAfterFiltersApplyToFallback() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/expired", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("[]", response.body);
+        Assert.assertEquals("applied", response.headers.get("X-After"));
+    }
+
+    @Test
+    public void testAfterFilterHaltReplacesResumedResponse() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/halted", null);
+        Assert.assertEquals(403, response.status);
+        Assert.assertEquals("denied", response.body);
+    }
+}
@@ -0,0 +1,59 @@
+package spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SuspendedTest {
+
+    @Test
+    public void resumeBeforeBindIsDelivered() {
+        Suspended suspended = Suspended.of(1, TimeUnit.SECONDS);
+        assertTrue(suspended.resume(201, "created"));
+        assertFalse(suspended.resume("again"));
+
+        List<String> received = new ArrayList<>();
+        Access.bind(suspended, (status, body) -> received.add(status + " " + body));
+        assertEquals(1, received.size());
+        assertEquals("201 created", received.get(0));
+    }
+
+    @Test
+    public void expireSendsTheFallbackOnce() {
+        Suspended suspended = Suspended.of(1, TimeUnit.SECONDS).fallback(200, "[]");
+        List<String> received = new ArrayList<>();
+        Access.bind(suspended, (status, body) -> received.add(status + " " + body));
+
+        assertTrue(Access.expire(suspended));
+        assertFalse(suspended.resume("late"));
+        assertFalse(Access.expire(suspended));
+        assertEquals(1, received.size());
+        assertEquals("200 []", received.get(0));
+        assertTrue(suspended.isDone());
+    }
+
+    @Test
+    public void awaitReturnsWhenResumedByAnotherThread() throws Exception {
+        final Suspended suspended = Suspended.of(10, TimeUnit.SECONDS);
+        new Thread(() -> suspended.resume("update")).start();
+
+        final String[] result = new String[1];
+        Access.await(suspended, (status, body) -> result[0] = status + " " + body);
+        assertEquals("200 update", result[0]);
+    }
+
+    @Test
+    public void awaitFallsBackAfterTheTimeout() throws Exception {
+        Suspended suspended = Suspended.of(10, TimeUnit.MILLISECONDS);
+        final String[] result = new String[1];
+        Access.await(suspended, (status, body) -> result[0] = status + " " + body);
+        assertEquals("204 ", result[0]);
+    }
+
+}
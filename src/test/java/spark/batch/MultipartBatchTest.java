@@ -0,0 +1,68 @@
+package spark.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MultipartBatchTest {
+
+    private static final String BATCH = "preamble\r\n"
+            + "--b1\r\n"
+            + "Content-Type: application/http\r\n"
+            + "Content-ID: <item1>\r\n"
+            + "\r\n"
+            + "GET /users/1?fields=name HTTP/1.1\r\n"
+            + "Accept: application/json\r\n"
+            + "\r\n"
+            + "\r\n"
+            + "--b1\n"
+            + "Content-Type: application/http\n"
+            + "\n"
+            + "POST https://api.example.com/events HTTP/1.1\n"
+            + "Content-Type: application/json\n"
+            + "\n"
+            + "{\"type\":\"open\"}\n"
+            + "--b1--\r\n";
+
+    @Test
+    public void boundaryOfMultipartMixed() {
+        assertEquals("b1", MultipartBatch.boundaryOf("multipart/mixed; boundary=b1"));
+        assertEquals("a b", MultipartBatch.boundaryOf("multipart/mixed; charset=utf-8; boundary=\"a b\""));
+        assertNull(MultipartBatch.boundaryOf("multipart/form-data; boundary=b1"));
+        assertNull(MultipartBatch.boundaryOf("multipart/mixed"));
+    }
+
+    @Test
+    public void parseParts() {
+        List<MultipartBatch.Part> parts = MultipartBatch.parse(BATCH.getBytes(StandardCharsets.UTF_8), "b1", 10);
+        assertEquals(2, parts.size());
+
+        MultipartBatch.Part first = parts.get(0);
+        assertEquals("<item1>", first.getContentId());
+        assertEquals("GET", first.getMethod());
+        assertEquals("/users/1?fields=name", first.getUri());
+        assertEquals("application/json", first.getHeaders().get("accept"));
+        assertEquals(0, first.getBody().length);
+
+        MultipartBatch.Part second = parts.get(1);
+        assertNull(second.getContentId());
+        assertEquals("POST", second.getMethod());
+        assertEquals("/events", second.getUri());
+        assertEquals("{\"type\":\"open\"}", new String(second.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsTooManyParts() {
+        MultipartBatch.parse(BATCH.getBytes(StandardCharsets.UTF_8), "b1", 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsUnterminatedBatch() {
+        MultipartBatch.parse("--b1\r\n\r\nGET / HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8), "b1", 10);
+    }
+
+}
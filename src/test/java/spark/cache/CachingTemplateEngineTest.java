@@ -0,0 +1,95 @@
+package spark.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import spark.ModelAndView;
+import spark.TemplateEngine;
+
+public class CachingTemplateEngineTest {
+
+    private final AtomicInteger renders = new AtomicInteger();
+
+    private final TemplateEngine engine = new TemplateEngine() {
+        @Override
+        public String render(ModelAndView modelAndView) {
+            renders.incrementAndGet();
+            return modelAndView.getViewName() + ":" + modelAndView.getModel();
+        }
+    };
+
+    @Test
+    public void rendersOncePerViewAndModel() {
+        CachingTemplateEngine cache = new CachingTemplateEngine(engine, 10, 1, TimeUnit.MINUTES);
+
+        byte[] first = cache.renderBytes(new ModelAndView(Collections.singletonMap("name", "ä"), "hello"));
+        byte[] second = cache.renderBytes(new ModelAndView(Collections.singletonMap("name", "ä"), "hello"));
+        assertSame(first, second);
+        assertArrayEquals("hello:{name=ä}".getBytes(StandardCharsets.UTF_8), first);
+
+        cache.renderBytes(new ModelAndView(Collections.singletonMap("name", "b"), "hello"));
+        cache.renderBytes(new ModelAndView(Collections.singletonMap("name", "ä"), "bye"));
+        assertEquals(3, renders.get());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void suppliedFingerprintsReplaceTheModel() {
+        CachingTemplateEngine cache = new CachingTemplateEngine(engine, 10, 1, TimeUnit.MINUTES);
+
+        cache.renderBytes(new ModelAndView(new Object(), "page", "42"));
+        cache.renderBytes(new ModelAndView(new Object(), "page", "42"));
+        assertEquals(1, renders.get());
+
+        cache.invalidate("page");
+        cache.renderBytes(new ModelAndView(new Object(), "page", "42"));
+        assertEquals(2, renders.get());
+    }
+
+    @Test
+    public void modelsWithoutValueEqualityAreNotCached() {
+        CachingTemplateEngine cache = new CachingTemplateEngine(engine, 10, 1, TimeUnit.MINUTES);
+
+        cache.renderBytes(new ModelAndView(new Named("a"), "page"));
+        cache.renderBytes(new ModelAndView(new Named("a"), "page"));
+        cache.renderBytes(new ModelAndView(Collections.singletonList(new Named("a")), "page"));
+        cache.renderBytes(new ModelAndView(Collections.singletonList(new Named("a")), "page"));
+        assertEquals(4, renders.get());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        CachingTemplateEngine cache = new CachingTemplateEngine(engine, 1, 1, TimeUnit.MINUTES);
+
+        cache.renderBytes(new ModelAndView("a", "view"));
+        cache.renderBytes(new ModelAndView("b", "view"));
+        cache.renderBytes(new ModelAndView("a", "view"));
+        assertEquals(3, renders.get());
+    }
+
+    /**
+     * Equal toString() but identity equality
+     */
+    private static final class Named {
+        private final String name;
+
+        private Named(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package spark.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class IdempotencyStoreTest {
+
+    @Test
+    public void retriesAreReplayed() throws Exception {
+        IdempotencyStore store = new IdempotencyStore();
+        store.enable(1, TimeUnit.MINUTES);
+
+        IdempotencyStore.Execution first = store.begin("post", "/orders", "k1", "Bearer a");
+        assertNull(first.getReplay());
+        assertFalse(first.isConflict());
+        first.complete(201, Collections.singletonMap("Location", Collections.singletonList("/orders/1")),
+                       "created".getBytes(StandardCharsets.UTF_8));
+
+        CachedResponse replay = store.begin("post", "/orders", "k1", "Bearer a").getReplay();
+        assertNotNull(replay);
+        assertEquals(201, replay.getStatus());
+        assertEquals("/orders/1", replay.getHeaders().get("Location").get(0));
+
+        assertNull(store.begin("post", "/orders", "k1", "Bearer b").getReplay());
+        assertNull(store.begin("put", "/orders", "k1", "Bearer a").getReplay());
+        assertEquals(1, store.getStats().getReplays());
+    }
+
+    @Test
+    public void duplicatesWaitForTheFirstRequest() throws Exception {
+        final IdempotencyStore store = new IdempotencyStore();
+        store.enable(1, TimeUnit.MINUTES);
+        IdempotencyStore.Execution first = store.begin("post", "/orders", "k1", null);
+
+        final AtomicReference<IdempotencyStore.Execution> duplicate = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                duplicate.set(store.begin("post", "/orders", "k1", null));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        Thread.sleep(50);
+        first.complete(200, Collections.<String, List<String>>emptyMap(), new byte[0]);
+        thread.join();
+
+        assertNotNull(duplicate.get().getReplay());
+    }
+
+    @Test
+    public void abandonedExecutionsCanBeRetriedAndSlowOnesConflict() throws Exception {
+        IdempotencyStore store = new IdempotencyStore();
+        store.enable(1, TimeUnit.MINUTES);
+        store.waitTimeout(10, TimeUnit.MILLISECONDS);
+
+        store.begin("post", "/orders", "k1", null).abandon();
+        IdempotencyStore.Execution retry = store.begin("post", "/orders", "k1", null);
+        assertNull(retry.getReplay());
+        assertFalse(retry.isConflict());
+
+        assertTrue(store.begin("post", "/orders", "k1", null).isConflict());
+        assertEquals(1, store.getStats().getConflicts());
+    }
+
+}
@@ -0,0 +1,93 @@
+package spark.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import spark.Request;
+import spark.Response;
+import spark.RouteImpl;
+import spark.route.HttpMethod;
+import spark.route.RouteMatch;
+
+public class RequestCoalescerTest {
+
+    private final RouteMatch match = new RouteMatch(HttpMethod.get, new RouteImpl("/items/:id") {
+        @Override
+        public Object handle(Request request, Response response) {
+            return null;
+        }
+    }, "/items/:id", "/items/1", "*/*");
+
+    @Test
+    public void waitersShareTheResponseOfTheLeader() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        coalescer.coalesce("/items/:id", 5, TimeUnit.SECONDS);
+
+        final RequestCoalescer.Flight leader = join(coalescer, "b=2&a=1");
+        RequestCoalescer.Flight waiter = join(coalescer, "a=1&b=2");
+        assertTrue(leader.isLeader());
+        assertFalse(waiter.isLeader());
+
+        Thread thread = new Thread(() -> leader.complete(200, headers("Content-Type", "application/json"),
+                                                          "[1]".getBytes(StandardCharsets.UTF_8)));
+        thread.start();
+        CachedResponse shared = waiter.await();
+        thread.join();
+
+        assertNotNull(shared);
+        assertEquals(200, shared.getStatus());
+        assertEquals(3, shared.getLength());
+        assertEquals(1, coalescer.getStats().getExecutions());
+        assertEquals(1, coalescer.getStats().getCoalesced());
+        assertEquals(0, coalescer.getStats().getInFlight());
+        assertTrue(join(coalescer, "a=1&b=2").isLeader());
+    }
+
+    @Test
+    public void waitersTimeOut() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        coalescer.coalesce("/items/:id", 10, TimeUnit.MILLISECONDS);
+
+        RequestCoalescer.Flight leader = join(coalescer, null);
+        assertNull(join(coalescer, null).await());
+        assertEquals(1, coalescer.getStats().getTimeouts());
+        leader.abandon();
+    }
+
+    @Test
+    public void responsesWithCookiesAreNotShared() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        coalescer.coalesce("/items/:id", 5, TimeUnit.SECONDS);
+
+        RequestCoalescer.Flight leader = join(coalescer, null);
+        RequestCoalescer.Flight waiter = join(coalescer, null);
+        leader.complete(200, headers("Set-Cookie", "id=1"), new byte[0]);
+        assertNull(waiter.await());
+        assertEquals(1, coalescer.getStats().getAbandoned());
+    }
+
+    @Test
+    public void otherRoutesAreNotCoalesced() {
+        assertNull(new RequestCoalescer().join(match, "/items/1", null, name -> null));
+    }
+
+    private RequestCoalescer.Flight join(RequestCoalescer coalescer, String queryString) {
+        return coalescer.join(match, "/items/1", queryString, name -> null);
+    }
+
+    private static Map<String, List<String>> headers(String name, String value) {
+        return Collections.singletonMap(name, Collections.singletonList(value));
+    }
+
+}
@@ -0,0 +1,76 @@
+package spark.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ResponseCacheTest {
+
+    private final CachePolicy policy = CachePolicy.ttl(1, TimeUnit.MINUTES).tags("products");
+
+    @Test
+    public void queryParametersAreSorted() {
+        assertEquals("a=1&b=2&b=3", ResponseCache.normalizeQuery("b=3&a=1&&b=2"));
+    }
+
+    @Test
+    public void storesAndPurgesByTag() {
+        ResponseCache cache = new ResponseCache();
+        ResponseCache.Key key = key("/products/1");
+        assertTrue(cache.store(key, policy, 200, headers("Content-Type", "application/json"), body("{}"), "product-1"));
+
+        CachedResponse cached = cache.lookup(key);
+        assertNotNull(cached);
+        assertEquals(2, cached.getLength());
+        assertEquals(1, cache.getStats().getHits());
+
+        assertEquals(1, cache.purgeTag("product-1"));
+        assertNull(cache.lookup(key));
+        assertEquals(1, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void skipsUncacheableResponses() {
+        ResponseCache cache = new ResponseCache();
+        assertFalse(cache.store(key("/a"), policy, 404, headers("Content-Type", "text/html"), body(""), null));
+        assertFalse(cache.store(key("/b"), policy, 200, headers("Set-Cookie", "id=1"), body(""), null));
+        assertFalse(cache.store(key("/c"), policy, 200, headers("Cache-Control", "private"), body(""), null));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        ResponseCache cache = new ResponseCache();
+        cache.maxSize(1000);
+        cache.store(key("/1"), policy, 200, headers("Content-Type", "text/plain"), new byte[400], null);
+        cache.store(key("/2"), policy, 200, headers("Content-Type", "text/plain"), new byte[400], null);
+        assertNull(cache.lookup(key("/1")));
+        assertNotNull(cache.lookup(key("/2")));
+        assertEquals(1, cache.getStats().getEvictions());
+    }
+
+    private static ResponseCache.Key key(String uri) {
+        return new ResponseCache.Key(uri, "/products/:id", uri, Collections.<String, String>emptyMap());
+    }
+
+    private static Map<String, List<String>> headers(String name, String value) {
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put(name, Collections.singletonList(value));
+        return headers;
+    }
+
+    private static byte[] body(String body) {
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,141 @@
+package spark.local;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spark.FilterImpl;
+import spark.Request;
+import spark.Response;
+import spark.RouteImpl;
+import spark.Spark;
+import spark.cache.RequestCoalescer;
+import spark.route.SimpleRouteMatcher;
+import spark.utils.CacheUtils;
+
+public class LocalClientTest {
+
+    private static final long LAST_MODIFIED = 1400000000000L;
+
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch released = new CountDownLatch(1);
+    private LocalClient client;
+
+    @Before
+    public void setup() {
+        SimpleRouteMatcher routeMatcher = new SimpleRouteMatcher();
+        routeMatcher.parseValidateAddRoute("get '/hello/:name'", "*/*", new RouteImpl("/hello/:name") {
+            @Override
+            public Object handle(Request request, Response response) {
+                response.header("X-Greeting", "true");
+                return "Hello " + request.params(":name");
+            }
+        });
+        routeMatcher.parseValidateAddRoute("post '/echo'", "*/*", new RouteImpl("/echo") {
+            @Override
+            public Object handle(Request request, Response response) {
+                response.type("text/plain");
+                return request.body() + " " + request.queryParams("suffix");
+            }
+        });
+        routeMatcher.parseValidateAddRoute("get '/secure/data'", "*/*", new RouteImpl("/secure/data") {
+            @Override
+            public Object handle(Request request, Response response) {
+                return "secret";
+            }
+        });
+        routeMatcher.parseValidateAddRoute("before '/secure/*'", "*/*", new FilterImpl("/secure/*") {
+            @Override
+            public void handle(Request request, Response response) {
+                if (request.headers("Authorization") == null) {
+                    Spark.halt(401, "login first");
+                }
+            }
+        });
+        routeMatcher.parseValidateAddRoute("get '/report'", "*/*", new RouteImpl("/report") {
+            @Override
+            public Object handle(Request request, Response response) throws InterruptedException {
+                entered.countDown();
+                released.await(10, TimeUnit.SECONDS);
+                response.header("Last-Modified", CacheUtils.formatDate(LAST_MODIFIED));
+                return "report";
+            }
+        });
+        client = new LocalClient(routeMatcher);
+    }
+
+    @After
+    public void tearDown() {
+        RequestCoalescer.getInstance().clear();
+    }
+
+    @Test
+    public void getWithPathParameter() {
+        LocalResult result = client.get("/hello/spark").execute();
+        assertEquals(200, result.getStatus());
+        assertEquals("Hello spark", result.getBodyAsString());
+        assertEquals("true", result.getHeader("x-greeting"));
+        assertEquals("text/html; charset=utf-8", result.getContentType());
+    }
+
+    @Test
+    public void postWithBodyAndQuery() {
+        LocalResult result = client.post("/echo?suffix=back").body("ping").execute();
+        assertEquals("ping back", result.getBodyAsString());
+        assertEquals("text/plain", result.getContentType());
+    }
+
+    @Test
+    public void beforeFiltersApply() {
+        assertEquals(401, client.get("/secure/data").execute().getStatus());
+        LocalResult result = client.get("/secure/data").header("Authorization", "Bearer x").execute();
+        assertEquals(200, result.getStatus());
+        assertEquals("secret", result.getBodyAsString());
+    }
+
+    @Test
+    public void headHasNoBody() {
+        LocalResult result = client.head("/hello/spark").execute();
+        assertEquals(200, result.getStatus());
+        assertEquals(0, result.getBody().length);
+    }
+
+    @Test
+    public void coalescedWaiterGetsNotModified() throws Exception {
+        RequestCoalescer coalescer = RequestCoalescer.getInstance();
+        coalescer.coalesce("/report", 10, TimeUnit.SECONDS);
+        long coalesced = coalescer.getStats().getCoalesced();
+
+        LocalResult[] leader = new LocalResult[1];
+        Thread thread = new Thread(() -> leader[0] = client.get("/report").execute());
+        thread.start();
+        entered.await(10, TimeUnit.SECONDS);
+
+        LocalResult[] waiter = new LocalResult[1];
+        Thread waiting = new Thread(() -> waiter[0] = client.get("/report")
+                .header("If-Modified-Since", CacheUtils.formatDate(LAST_MODIFIED)).execute());
+        waiting.start();
+        while (coalescer.getStats().getCoalesced() == coalesced) {
+            Thread.sleep(10);
+        }
+        released.countDown();
+        thread.join();
+        waiting.join();
+
+        assertEquals(200, leader[0].getStatus());
+        assertEquals("report", leader[0].getBodyAsString());
+        assertEquals(304, waiter[0].getStatus());
+        assertEquals(0, waiter[0].getBody().length);
+    }
+
+    @Test
+    public void unmappedRouteIsNotFound() {
+        assertEquals(404, client.get("/missing").execute().getStatus());
+    }
+
+}
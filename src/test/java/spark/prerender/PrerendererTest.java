@@ -0,0 +1,193 @@
+package spark.prerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spark.FilterImpl;
+import spark.Request;
+import spark.Response;
+import spark.RouteImpl;
+import spark.Spark;
+import spark.local.LocalClient;
+import spark.local.LocalResult;
+import spark.route.SimpleRouteMatcher;
+
+public class PrerendererTest {
+
+    private final Prerenderer prerenderer = Prerenderer.getInstance();
+    private final AtomicInteger invocations = new AtomicInteger();
+    private final Map<String, Integer> statuses = new HashMap<>();
+    private final List<String> pages = new ArrayList<>();
+
+    private SimpleRouteMatcher routeMatcher;
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("prerender-test").toFile();
+        prerenderer.directory(directory);
+        routeMatcher = new SimpleRouteMatcher();
+        routeMatcher.parseValidateAddRoute("get '/about'", "*/*", new RouteImpl("/about") {
+            @Override
+            public Object handle(Request request, Response response) {
+                response.type("text/plain");
+                return "about " + invocations.incrementAndGet();
+            }
+        });
+        routeMatcher.parseValidateAddRoute("get '/docs/:page'", "*/*", new RouteImpl("/docs/:page") {
+            @Override
+            public Object handle(Request request, Response response) {
+                String page = request.params(":page");
+                response.status(statuses.getOrDefault(page, 200));
+                return "page " + page;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        prerenderer.clear();
+        Files.walk(directory.toPath())
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    @Test
+    public void snapshotIsServedWithoutInvokingTheRoute() throws Exception {
+        prerenderer.add(routeMatcher, "/about", null);
+        prerenderer.awaitRendering();
+        assertEquals(1, invocations.get());
+
+        LocalResult result = new LocalClient(routeMatcher).get("/about").execute();
+
+        assertEquals(200, result.getStatus());
+        assertEquals("text/plain", result.getContentType());
+        assertEquals(prerenderer.lookup("/about").getFile(), result.getFile());
+        assertEquals("about 1", read(result.getFile()));
+        assertEquals(1, invocations.get());
+    }
+
+    @Test
+    public void beforeFiltersGuardSnapshots() throws Exception {
+        routeMatcher.parseValidateAddRoute("before '/about'", "*/*", new FilterImpl("/about") {
+            @Override
+            public void handle(Request request, Response response) {
+                if (request.headers("X-Deny") != null) {
+                    Spark.halt(401, "denied");
+                }
+            }
+        });
+        prerenderer.add(routeMatcher, "/about", null);
+        prerenderer.awaitRendering();
+        LocalClient client = new LocalClient(routeMatcher);
+
+        LocalResult denied = client.get("/about").header("X-Deny", "true").execute();
+        assertEquals(401, denied.getStatus());
+        assertEquals("denied", denied.getBodyAsString());
+
+        LocalResult allowed = client.get("/about").execute();
+        assertEquals(prerenderer.lookup("/about").getFile(), allowed.getFile());
+        assertEquals(1, invocations.get());
+    }
+
+    @Test
+    public void invalidateRendersAgain() throws Exception {
+        prerenderer.add(routeMatcher, "/about", null);
+        prerenderer.awaitRendering();
+
+        prerenderer.invalidate("/about");
+        prerenderer.awaitRendering();
+
+        assertEquals(2, invocations.get());
+        assertEquals("about 2", read(prerenderer.lookup("/about").getFile()));
+    }
+
+    @Test
+    public void failingUriIsRemoved() throws Exception {
+        pages.add("intro");
+        prerenderer.add(routeMatcher, "/docs/:page", this::pageParameters);
+        prerenderer.awaitRendering();
+        File file = prerenderer.lookup("/docs/intro").getFile();
+
+        statuses.put("intro", 500);
+        prerenderer.invalidate("/docs/intro");
+        prerenderer.awaitRendering();
+
+        assertNull(prerenderer.lookup("/docs/intro"));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void staleUriIsRemoved() throws Exception {
+        pages.add("intro");
+        pages.add("legacy");
+        prerenderer.add(routeMatcher, "/docs/:page", this::pageParameters);
+        prerenderer.awaitRendering();
+        File legacy = prerenderer.lookup("/docs/legacy").getFile();
+        assertTrue(legacy.exists());
+
+        pages.remove("legacy");
+        prerenderer.invalidate("/docs/:page");
+        prerenderer.awaitRendering();
+
+        assertNotNull(prerenderer.lookup("/docs/intro"));
+        assertNull(prerenderer.lookup("/docs/legacy"));
+        assertFalse(legacy.exists());
+    }
+
+    @Test
+    public void expandParameters() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put(":section", "guides");
+        parameters.put("page", "getting started");
+
+        assertEquals("/docs/guides/getting%20started", Prerenderer.expand("/docs/:section/:page", parameters));
+    }
+
+    @Test
+    public void expandKeepsTrailingSlash() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put(":lang", "en");
+
+        assertEquals("/en/", Prerenderer.expand("/:lang/", parameters));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void expandFailsOnMissingParameter() {
+        Prerenderer.expand("/docs/:page", new HashMap<String, String>());
+    }
+
+    private Iterable<Map<String, String>> pageParameters() {
+        List<Map<String, String>> parameters = new ArrayList<>();
+        for (String page : new ArrayList<>(pages)) {
+            parameters.add(Collections.singletonMap(":page", page));
+        }
+        return parameters;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+}
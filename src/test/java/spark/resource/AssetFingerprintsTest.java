@@ -0,0 +1,45 @@
+package spark.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AssetFingerprintsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fingerprintIsInsertedBeforeExtension() {
+        assertEquals("/js/app.abc.js", AssetFingerprints.fingerprint("/js/app.js", "abc"));
+        assertEquals("/js/jquery.min.abc.js", AssetFingerprints.fingerprint("/js/jquery.min.js", "abc"));
+        assertEquals("/LICENSE.abc", AssetFingerprints.fingerprint("/LICENSE", "abc"));
+        assertEquals("/v1.0/.htaccess.abc", AssetFingerprints.fingerprint("/v1.0/.htaccess", "abc"));
+    }
+
+    @Test
+    public void externalFolderIsFingerprinted() throws IOException {
+        File js = new File(folder.newFolder("js"), "app.js");
+        Files.write(js.toPath(), "alert(1);".getBytes(StandardCharsets.UTF_8));
+
+        AssetFingerprints fingerprints = new AssetFingerprints();
+        fingerprints.addExternalFolder(folder.getRoot());
+
+        String url = fingerprints.url("/js/app.js");
+        assertNotEquals("/js/app.js", url);
+        assertEquals(js.getCanonicalFile(), fingerprints.resolve(url).getFile().getCanonicalFile());
+        assertEquals("/js/app.js", fingerprints.resolve(url).getPath());
+        assertEquals("/js/unknown.js", fingerprints.url("/js/unknown.js"));
+        assertNull(fingerprints.resolve("/js/app.js"));
+    }
+
+}
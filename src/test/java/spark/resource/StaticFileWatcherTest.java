@@ -0,0 +1,118 @@
+package spark.resource;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StaticFileWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        StaticFileWatcher.stopAll();
+    }
+
+    @Test
+    public void walkReportsTheContentOfTheFolder() throws Exception {
+        File css = folder.newFolder("css");
+        write(new File(css, "app.css"));
+        RecordingListener listener = new RecordingListener();
+
+        assertTrue(StaticFileWatcher.watch(folder.getRoot(), listener));
+
+        Set<Path> walked = listener.awaitWalked();
+        assertTrue(walked.contains(root()));
+        assertTrue(walked.contains(root().resolve("css")));
+        assertTrue(walked.contains(root().resolve("css/app.css")));
+    }
+
+    @Test
+    public void changesAreReported() throws Exception {
+        folder.newFolder("css");
+        RecordingListener listener = new RecordingListener();
+        StaticFileWatcher.watch(folder.getRoot(), listener);
+        listener.awaitWalked();
+
+        write(new File(folder.getRoot(), "css/new.css"));
+
+        assertTrue(listener.awaitChange(root().resolve("css/new.css")));
+    }
+
+    @Test
+    public void stoppedWatchersReportNoChanges() throws Exception {
+        RecordingListener stopped = new RecordingListener();
+        StaticFileWatcher.watch(folder.getRoot(), stopped);
+        stopped.awaitWalked();
+
+        StaticFileWatcher.stopAll();
+        write(new File(folder.getRoot(), "app.js"));
+        assertFalse(stopped.awaitChange(root().resolve("app.js")));
+
+        // watching the folder again starts a new watcher
+        RecordingListener restarted = new RecordingListener();
+        StaticFileWatcher.watch(folder.getRoot(), restarted);
+        assertTrue(restarted.awaitWalked().contains(root().resolve("app.js")));
+    }
+
+    @Test
+    public void foldersThatCannotBeWatchedAreRefused() {
+        assertFalse(StaticFileWatcher.watch(new File(folder.getRoot(), "missing"), new RecordingListener()));
+    }
+
+    private Path root() {
+        return folder.getRoot().toPath().toAbsolutePath().normalize();
+    }
+
+    private static void write(File file) throws IOException {
+        Files.write(file.toPath(), file.getName().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class RecordingListener implements StaticFileWatcher.Listener {
+        private final BlockingQueue<Set<Path>> walks = new LinkedBlockingQueue<>();
+        private final BlockingQueue<Path> changes = new LinkedBlockingQueue<>();
+
+        @Override
+        public void changed(Path changed) {
+            changes.add(changed);
+        }
+
+        @Override
+        public void walked(Set<Path> paths) {
+            walks.add(paths);
+        }
+
+        Set<Path> awaitWalked() throws InterruptedException {
+            Set<Path> walked = walks.poll(10, TimeUnit.SECONDS);
+            assertNotNull(walked);
+            return walked;
+        }
+
+        boolean awaitChange(Path expected) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 2000;
+            for (long left = 2000; left > 0; left = deadline - System.currentTimeMillis()) {
+                Path changed = changes.poll(left, TimeUnit.MILLISECONDS);
+                if (expected.equals(changed)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package spark.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StaticPathIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StaticPathIndex index;
+
+    @Before
+    public void setup() throws Exception {
+        write(new File(folder.newFolder("css"), "app.css"));
+        write(folder.newFile("index.html"));
+        index = StaticPathIndex.of(folder.getRoot());
+        awaitReady(index);
+    }
+
+    @Test
+    public void indexedPathsAreHits() {
+        assertTrue(index.mayContain("/index.html"));
+        assertTrue(index.mayContain("/css/app.css"));
+        assertTrue(index.mayContain("/css"));
+        assertTrue(index.mayContain("/css/"));
+        assertTrue(index.mayContain("css/app.css"));
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void laterIndexOfAWatchedFolderIsIndexed() throws Exception {
+        StaticPathIndex other = StaticPathIndex.of(folder.getRoot());
+        awaitReady(other);
+        assertTrue(other.mayContain("/css/app.css"));
+        assertFalse(other.mayContain("/hello"));
+    }
+
+    @Test
+    public void unknownPathsAreMisses() {
+        assertFalse(index.mayContain("/hello"));
+        assertFalse(index.mayContain("/css/other.css"));
+        assertFalse(index.mayContain("/index.htm"));
+    }
+
+    @Test
+    public void unnormalizedPathsAreUndecided() {
+        assertTrue(index.mayContain("/css//app.css"));
+        assertTrue(index.mayContain("/css/../secret"));
+        assertTrue(index.mayContain("/css\\app.css"));
+    }
+
+    @Test
+    public void createdAndDeletedFilesAreTracked() throws Exception {
+        File created = new File(folder.getRoot(), "css/new.css");
+        write(created);
+        awaitContains("/css/new.css", true);
+
+        Files.delete(created.toPath());
+        awaitContains("/css/new.css", false);
+        assertTrue(index.mayContain("/css/app.css"));
+    }
+
+    @Test
+    public void deletedFolderRemovesItsPaths() throws Exception {
+        Files.delete(new File(folder.getRoot(), "css/app.css").toPath());
+        Files.delete(new File(folder.getRoot(), "css").toPath());
+        awaitContains("/css", false);
+        assertFalse(index.mayContain("/css/app.css"));
+    }
+
+    @Test
+    public void overflowRebuildsTheIndex() throws Exception {
+        File added = new File(folder.getRoot(), "added.js");
+        write(added);
+        Files.delete(new File(folder.getRoot(), "index.html").toPath());
+
+        index.update(folder.getRoot().toPath().toAbsolutePath().normalize());
+
+        assertTrue(index.mayContain("/added.js"));
+        assertTrue(index.mayContain("/css/app.css"));
+        assertFalse(index.mayContain("/index.html"));
+    }
+
+    private static void awaitReady(StaticPathIndex index) throws InterruptedException {
+        assertNotNull(index);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!index.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(index.isReady());
+    }
+
+    private void awaitContains(String path, boolean expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (index.mayContain(path) != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, index.mayContain(path));
+    }
+
+    private static void write(File file) throws IOException {
+        Files.write(file.toPath(), file.getName().getBytes(StandardCharsets.UTF_8));
+    }
+}
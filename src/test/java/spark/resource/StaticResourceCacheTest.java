@@ -0,0 +1,67 @@
+package spark.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import spark.utils.CacheUtils;
+
+public class StaticResourceCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final StaticResourceCache cache = new StaticResourceCache(1024 * 1024, 1024);
+
+    @Test
+    public void cachedFileHasTheETagOfTheFileSenders() throws IOException {
+        File file = folder.newFile("app.css");
+        byte[] content = "body { margin: 0 }".getBytes(StandardCharsets.UTF_8);
+        Files.write(file.toPath(), content);
+
+        CachedResource cached = cache.put(StaticResourceCache.keyOf(file), file.toURI().toURL(), content,
+                                          file.lastModified(), "text/css", cache.generation());
+
+        assertEquals(CacheUtils.fileETag(file.length(), file.lastModified()), cached.getETag());
+        assertTrue(cached.isNotModified(cached.getETag(), null, false));
+    }
+
+    @Test
+    public void otherResourcesHaveAContentETag() throws IOException {
+        byte[] content = "body { margin: 0 }".getBytes(StandardCharsets.UTF_8);
+        URL url = new URL("jar:file:/app.jar!/public/app.css");
+
+        CachedResource cached = cache.put(StaticResourceCache.keyOf(url), url, content, 1000, "text/css",
+                                          cache.generation());
+
+        assertEquals(CacheUtils.strongETag(content), cached.getETag());
+    }
+
+    @Test
+    public void contentReadBeforeAnInvalidationIsNotStored() throws IOException {
+        File file = folder.newFile("app.js");
+        String key = StaticResourceCache.keyOf(file);
+        byte[] content = "old".getBytes(StandardCharsets.UTF_8);
+
+        long generation = cache.generation();
+        cache.invalidate(key);
+        CachedResource stale = cache.put(key, file.toURI().toURL(), content, file.lastModified(), null, generation);
+
+        assertEquals("old", new String(stale.getContent(), StandardCharsets.UTF_8));
+        assertNull(cache.get(key));
+
+        cache.put(key, file.toURI().toURL(), content, file.lastModified(), null, cache.generation());
+        assertNotNull(cache.get(key));
+    }
+}
@@ -0,0 +1,116 @@
+package spark.servlet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.DispatcherType;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.DefaultServlet;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import spark.Spark;
+import spark.cache.IdempotencyStore;
+import spark.util.SparkTestUtil;
+import spark.util.SparkTestUtil.UrlResponse;
+
+import static spark.Spark.idempotencyKeys;
+import static spark.Spark.post;
+
+/**
+ * Idempotency-Key support of the servlet backend for routes that commit the
+ * response through the raw servlet response.
+ */
+public class IdempotencyServletTest {
+
+    private static final int PORT = 9394;
+
+    private static final AtomicInteger writes = new AtomicInteger();
+    private static final AtomicInteger orders = new AtomicInteger();
+
+    static Server server;
+    static SparkTestUtil testUtil;
+
+    public static class App implements SparkApplication {
+        @Override
+        public void init() {
+            idempotencyKeys(1, TimeUnit.MINUTES);
+            IdempotencyStore.getInstance().waitTimeout(500, TimeUnit.MILLISECONDS);
+
+            post("/raw", (request, response) -> {
+                writes.incrementAndGet();
+                response.raw().getOutputStream().write("raw".getBytes(StandardCharsets.UTF_8));
+                response.raw().flushBuffer();
+                return "ignored";
+            });
+
+            post("/orders", (request, response) -> {
+                response.status(201);
+                return "order " + orders.incrementAndGet();
+            });
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        Spark.stop();
+        IdempotencyStore.getInstance().clear();
+        IdempotencyStore.getInstance().waitTimeout(IdempotencyStore.DEFAULT_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        server.stop();
+    }
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        testUtil = new SparkTestUtil(PORT);
+
+        server = new Server(PORT);
+        ServletContextHandler context = new ServletContextHandler();
+        context.setContextPath("/");
+        FilterHolder filter = new FilterHolder(SparkFilter.class);
+        filter.setInitParameter(SparkFilter.APPLICATION_CLASS_PARAM, App.class.getName());
+        context.addFilter(filter, "/*", EnumSet.of(DispatcherType.REQUEST));
+        context.addServlet(DefaultServlet.class, "/");
+        server.setHandler(context);
+        server.start();
+    }
+
+    @Test
+    public void testRetryIsReplayed() throws Exception {
+        UrlResponse first = postWithKey("/orders", "order-1");
+        Assert.assertEquals(201, first.status);
+        Assert.assertEquals("order 1", first.body);
+
+        UrlResponse retry = postWithKey("/orders", "order-1");
+        Assert.assertEquals(201, retry.status);
+        Assert.assertEquals("order 1", retry.body);
+        Assert.assertEquals("true", retry.headers.get(IdempotencyStore.REPLAYED_HEADER));
+    }
+
+    @Test
+    public void testCommittedResponseReleasesTheKey() throws Exception {
+        UrlResponse first = postWithKey("/raw", "raw-1");
+        Assert.assertEquals(200, first.status);
+        Assert.assertEquals("raw", first.body);
+
+        // not stored, the retry executes the route instead of waiting for a response
+        UrlResponse retry = postWithKey("/raw", "raw-1");
+        Assert.assertEquals(200, retry.status);
+        Assert.assertEquals("raw", retry.body);
+        Assert.assertEquals(2, writes.get());
+    }
+
+    private static UrlResponse postWithKey(String path, String idempotencyKey) throws IOException {
+        Map<String, String> headers = Collections.singletonMap(IdempotencyStore.IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+        return testUtil.doMethod("POST", path, "", false, "text/html", headers);
+    }
+}
@@ -0,0 +1,115 @@
+package spark.sse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class EventGroupTest {
+
+    @Test
+    public void encodesFieldsAndMultiLineData() {
+        SseEvent event = SseEvent.data("first\r\nsecond\nthird").id("7").event("update").retry(2000);
+        assertEquals("id: 7\nevent: update\nretry: 2000\ndata: first\ndata: second\ndata: third\n\n", event.toString());
+        assertEquals("data: \n\n", SseEvent.data(null).toString());
+        assertEquals("id: a b\ndata: x\n\n", SseEvent.data("x").id("a\nb").toString());
+    }
+
+    @Test
+    public void broadcastSharesTheEncodedEvent() {
+        EventGroup group = new EventGroup();
+        TestStream first = new TestStream(null);
+        TestStream second = new TestStream(null);
+        group.join(first);
+        group.join(second);
+
+        assertEquals(2, group.broadcast(SseEvent.data("hello")));
+        assertSame(first.received.get(0).getBytes(), second.received.get(0).getBytes());
+    }
+
+    @Test
+    public void closedStreamsLeaveTheGroup() {
+        EventGroup group = new EventGroup();
+        TestStream stream = new TestStream(null);
+        group.join(stream);
+        stream.close();
+
+        assertEquals(0, group.size());
+        assertEquals(0, group.broadcast(SseEvent.data("hello")));
+    }
+
+    @Test
+    public void replaysEventsAfterLastEventId() {
+        EventGroup group = new EventGroup(2);
+        for (int i = 1; i <= 3; i++) {
+            group.broadcast(SseEvent.data("event " + i).id(String.valueOf(i)));
+        }
+
+        TestStream resumed = new TestStream("2");
+        group.join(resumed);
+        assertEquals(1, resumed.received.size());
+        assertEquals("3", resumed.received.get(0).getId());
+
+        TestStream tooOld = new TestStream("1");
+        group.join(tooOld);
+        assertEquals(0, tooOld.received.size());
+
+        group.broadcast(SseEvent.data("event 4").id("4"));
+        assertEquals(2, resumed.received.size());
+        assertEquals(1, tooOld.received.size());
+    }
+
+    private static class TestStream implements EventStream {
+        private final String lastEventId;
+        private final List<SseEvent> received = new ArrayList<>();
+        private final List<Runnable> callbacks = new ArrayList<>();
+        private boolean open = true;
+
+        TestStream(String lastEventId) {
+            this.lastEventId = lastEventId;
+        }
+
+        @Override
+        public boolean send(SseEvent event) {
+            if (!open) {
+                return false;
+            }
+            received.add(event);
+            return true;
+        }
+
+        @Override
+        public String getLastEventId() {
+            return lastEventId;
+        }
+
+        @Override
+        public int getQueueSize() {
+            return 0;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void onClose(Runnable callback) {
+            if (open) {
+                callbacks.add(callback);
+            } else {
+                callback.run();
+            }
+        }
+
+        @Override
+        public void close() {
+            open = false;
+            callbacks.forEach(Runnable::run);
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+package spark.undertow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.undertow.server.handlers.resource.Resource;
+
+public class IndexedClassPathResourceManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CountingClassLoader classLoader;
+    private IndexedClassPathResourceManager resourceManager;
+
+    @After
+    public void tearDown() throws IOException {
+        if (resourceManager != null) {
+            resourceManager.close();
+        }
+        if (classLoader != null) {
+            classLoader.close();
+        }
+    }
+
+    @Test
+    public void folderFilesAreServed() throws IOException {
+        open(folder("/static"), "/static");
+
+        assertEquals("index.html", read(resourceManager.getResource("/index.html")));
+        assertEquals("app.css", read(resourceManager.getResource("css/app.css")));
+        assertTrue(resourceManager.getResource("/css").isDirectory());
+    }
+
+    @Test
+    public void folderPathsOutsideThePrefixAreNotServed() throws IOException {
+        open(folder("/static"), "/static");
+
+        assertNull(resourceManager.getResource("/secret.txt"));
+        assertNull(resourceManager.getResource("/../secret.txt"));
+        assertNull(resourceManager.getResource("/css/../../secret.txt"));
+        assertNull(resourceManager.getResource("/static/index.html"));
+    }
+
+    @Test
+    public void jarEntriesAreIndexedAndServed() throws IOException {
+        open(jar(), "static");
+
+        assertEquals("index.html", read(resourceManager.getResource("/index.html")));
+        assertEquals("app.css", read(resourceManager.getResource("/css/app.css")));
+        assertTrue(resourceManager.getResource("/css").isDirectory());
+        assertTrue(resourceManager.getResource("/css/").isDirectory());
+        assertTrue(resourceManager.getResource("/").isDirectory());
+        assertNull(resourceManager.getResource("/css/other.css"));
+    }
+
+    @Test
+    public void jarPathsOutsideThePrefixAreNotServed() throws IOException {
+        open(jar(), "static");
+
+        assertNull(resourceManager.getResource("/secret.txt"));
+        assertNull(resourceManager.getResource("/../secret.txt"));
+        assertNull(resourceManager.getResource("/css/../../secret.txt"));
+        assertNull(resourceManager.getResource("/static/index.html"));
+        assertNull(resourceManager.getResource("/../statics/other.txt"));
+    }
+
+    @Test
+    public void missesDoNotTouchTheClassPath() throws IOException {
+        File root = folder.newFolder("classes");
+        copy(folder("/static"), new File(root, "static"));
+        classLoader = new CountingClassLoader(new URL[] {root.toURI().toURL(), jar().toURI().toURL()});
+        resourceManager = new IndexedClassPathResourceManager(classLoader, "/static");
+        int lookups = classLoader.lookups.get();
+
+        for (int i = 0; i < 100; i++) {
+            assertNull(resourceManager.getResource("/missing-" + i + ".js"));
+        }
+        assertNull(resourceManager.getResource("/css/missing.css"));
+        assertNull(resourceManager.getResource("/../secret.txt"));
+        assertNotNull(resourceManager.getResource("/index.html"));
+
+        assertEquals(lookups, classLoader.lookups.get());
+    }
+
+    private void open(File location, String prefix) throws IOException {
+        classLoader = new CountingClassLoader(new URL[] {location.toURI().toURL()});
+        resourceManager = new IndexedClassPathResourceManager(classLoader, prefix);
+    }
+
+    /**
+     * A classpath folder with static/index.html, static/css/app.css and secret.txt
+     */
+    private File folder(String prefix) throws IOException {
+        File root = folder.newFolder();
+        File css = new File(root, prefix + "/css");
+        assertTrue(css.mkdirs());
+        write(new File(css.getParentFile(), "index.html"));
+        write(new File(css, "app.css"));
+        write(new File(root, "secret.txt"));
+        return root;
+    }
+
+    /**
+     * A jar with the entries of {@link #folder(String)} and statics/other.txt, the
+     * static/css directory has no entry
+     */
+    private File jar() throws IOException {
+        File jar = folder.newFile("static.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new JarEntry("static/"));
+            out.closeEntry();
+            for (String name : new String[] {"static/index.html", "static/css/app.css", "secret.txt", "statics/other.txt"}) {
+                out.putNextEntry(new JarEntry(name));
+                out.write(name.substring(name.lastIndexOf('/') + 1).getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        File source = new File(from, "static");
+        assertTrue(new File(to, "css").mkdirs());
+        Files.copy(new File(source, "index.html").toPath(), new File(to, "index.html").toPath());
+        Files.copy(new File(source, "css/app.css").toPath(), new File(to, "css/app.css").toPath());
+    }
+
+    private static void write(File file) throws IOException {
+        Files.write(file.toPath(), file.getName().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Resource resource) throws IOException {
+        assertNotNull(resource);
+        try (InputStream in = resource.getUrl().openStream()) {
+            byte[] buffer = new byte[1024];
+            int length = in.read(buffer);
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Counts resource lookups, the parent is the bootstrap class loader so that only
+     * the given locations are visible
+     */
+    private static final class CountingClassLoader extends URLClassLoader {
+        final AtomicInteger lookups = new AtomicInteger();
+
+        CountingClassLoader(URL[] urls) {
+            super(urls, null);
+        }
+
+        @Override
+        public URL getResource(String name) {
+            lookups.incrementAndGet();
+            return super.getResource(name);
+        }
+
+        @Override
+        public Enumeration<URL> getResources(String name) throws IOException {
+            lookups.incrementAndGet();
+            return super.getResources(name);
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            lookups.incrementAndGet();
+            return super.getResourceAsStream(name);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package spark.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ByteRangeTest {
+
+    @Test
+    public void parseSingleRange() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-99", 1000);
+        assertEquals(1, ranges.size());
+        assertEquals(0, ranges.get(0).getStart());
+        assertEquals(99, ranges.get(0).getEnd());
+        assertEquals(100, ranges.get(0).getLength());
+        assertEquals("bytes 0-99/1000", ranges.get(0).toContentRange(1000));
+    }
+
+    @Test
+    public void parseOpenAndSuffixRanges() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=900-, -50", 1000);
+        assertEquals(2, ranges.size());
+        assertEquals(900, ranges.get(0).getStart());
+        assertEquals(999, ranges.get(0).getEnd());
+        assertEquals(950, ranges.get(1).getStart());
+        assertEquals(999, ranges.get(1).getEnd());
+    }
+
+    @Test
+    public void parseClampsEndToLength() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=500-5000", 1000);
+        assertEquals(999, ranges.get(0).getEnd());
+    }
+
+    @Test
+    public void parseUnsatisfiable() {
+        assertTrue(ByteRange.parse("bytes=1000-1100", 1000).isEmpty());
+    }
+
+    @Test
+    public void parseInvalid() {
+        assertNull(ByteRange.parse("items=0-1", 1000));
+        assertNull(ByteRange.parse("bytes=abc", 1000));
+        assertNull(ByteRange.parse("bytes=10-5", 1000));
+    }
+
+    @Test
+    public void ifRange() {
+        long lastModified = 1420070400000L;
+        assertTrue(ByteRange.ifRangeMatches(null, "\"abc\"", lastModified));
+        assertTrue(ByteRange.ifRangeMatches("\"abc\"", "\"abc\"", lastModified));
+        assertFalse(ByteRange.ifRangeMatches("\"def\"", "\"abc\"", lastModified));
+        assertTrue(ByteRange.ifRangeMatches(CacheUtils.formatDate(lastModified), "\"abc\"", lastModified));
+        assertFalse(ByteRange.ifRangeMatches(CacheUtils.formatDate(lastModified - 5000), "\"abc\"", lastModified));
+    }
+
+    @Test
+    public void multipartLength() {
+        List<ByteRange> ranges = Arrays.asList(new ByteRange(0, 9), new ByteRange(20, 29));
+        String boundary = ByteRange.newBoundary();
+        long expected = 0;
+        for (ByteRange range : ranges) {
+            expected += ByteRange.partHeader(boundary, "text/plain", range, 100).length() + range.getLength();
+        }
+        expected += ByteRange.multipartEnd(boundary).length();
+        assertEquals(expected, ByteRange.multipartLength(boundary, "text/plain", ranges, 100));
+    }
+
+}
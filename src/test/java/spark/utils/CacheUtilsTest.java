@@ -0,0 +1,53 @@
+package spark.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CacheUtilsTest {
+
+    @Test
+    public void formatAndParseDate() {
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", CacheUtils.formatDate(784111777000L));
+        assertEquals(784111777000L, CacheUtils.parseDate("Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertEquals(-1, CacheUtils.parseDate("yesterday"));
+    }
+
+    @Test
+    public void strongETagIsQuotedAndStable() {
+        String etag = CacheUtils.strongETag("hello".getBytes());
+        assertEquals("\"5d41402abc4b2a76b9719d911017c592\"", etag);
+    }
+
+    @Test
+    public void fastETagDependsOnEveryByte() {
+        byte[] content = "{\"id\":1,\"name\":\"spark\"}".getBytes();
+        String etag = CacheUtils.fastETag(content);
+        assertTrue(etag.startsWith("\"") && etag.endsWith("-17\""));
+        assertEquals(etag, CacheUtils.fastETag(content.clone()));
+        for (int i = 0; i < content.length; i++) {
+            byte[] changed = content.clone();
+            changed[i]++;
+            assertFalse(etag.equals(CacheUtils.fastETag(changed)));
+        }
+    }
+
+    @Test
+    public void etagMatchesUsesWeakComparison() {
+        assertTrue(CacheUtils.etagMatches("\"a\", \"b\"", "\"b\""));
+        assertTrue(CacheUtils.etagMatches("W/\"b\"", "\"b\""));
+        assertTrue(CacheUtils.etagMatches("*", "\"b\""));
+        assertFalse(CacheUtils.etagMatches("\"a\"", "\"b\""));
+    }
+
+    @Test
+    public void ifNoneMatchTakesPrecedenceOverIfModifiedSince() {
+        String date = "Sun, 06 Nov 1994 08:49:37 GMT";
+        assertTrue(CacheUtils.isNotModified(null, date, "\"x\"", 784111777123L));
+        assertFalse(CacheUtils.isNotModified(null, date, "\"x\"", 784111778000L));
+        assertFalse(CacheUtils.isNotModified("\"y\"", date, "\"x\"", 784111777000L));
+    }
+
+}
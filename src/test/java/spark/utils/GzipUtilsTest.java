@@ -0,0 +1,42 @@
+package spark.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public class GzipUtilsTest {
+
+    @Test
+    public void gzipRoundTrip() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("body { color: red; }\n");
+        }
+        byte[] content = builder.toString().getBytes("utf-8");
+
+        byte[] gzipped = GzipUtils.gzip(content);
+        assertTrue(gzipped.length < content.length);
+
+        byte[] unzipped = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipped)));
+        assertArrayEquals(content, unzipped);
+        // pooled deflaters must be reset properly
+        assertArrayEquals(gzipped, GzipUtils.gzip(content));
+    }
+
+    @Test
+    public void acceptsGzip() {
+        assertTrue(GzipUtils.acceptsGzip("gzip, deflate"));
+        assertTrue(GzipUtils.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(GzipUtils.acceptsGzip("*"));
+        assertFalse(GzipUtils.acceptsGzip("gzip;q=0"));
+        assertFalse(GzipUtils.acceptsGzip("br"));
+        assertFalse(GzipUtils.acceptsGzip(null));
+    }
+
+}
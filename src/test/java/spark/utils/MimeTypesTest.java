@@ -0,0 +1,25 @@
+package spark.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class MimeTypesTest {
+
+    @Test
+    public void knownExtensions() {
+        assertEquals("text/html", MimeTypes.getMimeType("index.html"));
+        assertEquals("application/javascript", MimeTypes.getMimeType("/js/app.3f9a1c2b4d.js"));
+        assertEquals("image/png", MimeTypes.getMimeType("/img/LOGO.PNG"));
+        assertEquals("font/woff2", MimeTypes.getMimeType("/fonts/a.woff2"));
+    }
+
+    @Test
+    public void unknownExtensions() {
+        assertNull(MimeTypes.getMimeType("/files/data.unknown"));
+        assertNull(MimeTypes.getMimeType("/v1.0/README"));
+        assertNull(MimeTypes.getMimeType(null));
+    }
+
+}
@@ -0,0 +1,74 @@
+package spark.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class RecordReaderTest {
+
+    @Test
+    public void splitsLinesAndRemovesCarriageReturns() {
+        RecordReader reader = RecordReader.of("{\"a\":1}\r\n{\"b\":2}\n\n{\"c\":3}".getBytes(), 100);
+        List<String> records = new ArrayList<>();
+        reader.forEach(records::add);
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"b\":2}", "", "{\"c\":3}"), records);
+        assertEquals(4, reader.getCount());
+    }
+
+    @Test
+    public void skipsBlankLines() {
+        List<String> records = RecordReader.of("a\n\r\n\nb\n\n".getBytes(), 100).skipBlankLines().stream()
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("a", "b"), records);
+    }
+
+    @Test
+    public void readsRecordsAcrossBufferBoundaries() {
+        final ByteBuffer body = ByteBuffer.wrap("first line\nsecond line\nthird\n".getBytes(StandardCharsets.UTF_8));
+        final AtomicBoolean released = new AtomicBoolean();
+        RecordReader reader = new RecordReader(buffer -> {
+            if (!body.hasRemaining()) {
+                return -1;
+            }
+            buffer.put(body.get());
+            return 1;
+        }, ByteBuffer.allocate(4), 100, () -> released.set(true));
+        List<String> records = new ArrayList<>();
+        reader.forEach(records::add);
+        assertEquals(Arrays.asList("first line", "second line", "third"), records);
+        assertTrue(released.get());
+    }
+
+    @Test
+    public void decodesMultiByteCharactersSplitAcrossReads() {
+        final ByteBuffer body = ByteBuffer.wrap("na\u00efve\n\u20ac\n".getBytes(StandardCharsets.UTF_8));
+        RecordReader reader = new RecordReader(buffer -> {
+            if (!body.hasRemaining()) {
+                return -1;
+            }
+            buffer.put(body.get());
+            return 1;
+        }, ByteBuffer.allocate(1), 100, null);
+        assertEquals("na\u00efve", reader.next());
+        assertEquals("\u20ac", reader.next());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test(expected = RecordReader.RecordTooLongException.class)
+    public void rejectsRecordsOverTheLimit() {
+        RecordReader reader = RecordReader.of("short\nthis line is too long\n".getBytes(), 10);
+        assertEquals("short", reader.next());
+        reader.next();
+    }
+
+}
@@ -0,0 +1,154 @@
+package spark.webserver;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.eclipse.jetty.server.Server;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import spark.route.HttpMethod;
+import spark.route.RouteMatch;
+import spark.route.SimpleRouteMatcher;
+import spark.utils.IOUtils;
+import spark.utils.RecordReader;
+import spark.util.SparkTestUtil;
+import spark.util.SparkTestUtil.UrlResponse;
+
+/**
+ * Session handling of the Jetty handler: the requested session is resolved on the
+ * first getSession() call and not at all for sessionless paths. Request lines are read
+ * past the body cache of the handler.
+ */
+public class JettyHandlerTest {
+
+    private static final int PORT = 9395;
+
+    static Server server;
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        SimpleRouteMatcher routeMatcher = new SimpleRouteMatcher();
+        routeMatcher.addSessionlessPath("/api/*");
+
+        server = new Server(PORT);
+        server.setHandler(new JettyHandler(new SessionFilter(), routeMatcher));
+        server.start();
+    }
+
+    @Test
+    public void testUntouchedSessionCreatesNoSession() throws Exception {
+        UrlResponse response = new SparkTestUtil(PORT).doMethod("GET", "/plain", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("plain", response.body);
+        Assert.assertNull(response.headers.get("Set-Cookie"));
+    }
+
+    @Test
+    public void testSessionIsKeptAcrossRequests() throws Exception {
+        SparkTestUtil testUtil = new SparkTestUtil(PORT);
+
+        UrlResponse first = testUtil.doMethod("GET", "/visits", null);
+        Assert.assertEquals(200, first.status);
+        Assert.assertEquals("1", first.body);
+        Assert.assertTrue(first.headers.get("Set-Cookie").startsWith("JSESSIONID="));
+
+        UrlResponse second = testUtil.doMethod("GET", "/visits", null);
+        Assert.assertEquals(200, second.status);
+        Assert.assertEquals("2", second.body);
+    }
+
+    @Test
+    public void testSessionlessPathSkipsTheSession() throws Exception {
+        SparkTestUtil testUtil = new SparkTestUtil(PORT);
+
+        UrlResponse response = testUtil.doMethod("GET", "/api/session", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("disabled", response.body);
+        Assert.assertNull(response.headers.get("Set-Cookie"));
+
+        // the session cookie of the client is not resolved either
+        Assert.assertEquals("1", testUtil.doMethod("GET", "/visits", null).body);
+        response = testUtil.doMethod("GET", "/api/session", null);
+        Assert.assertEquals("disabled", response.body);
+        Assert.assertNull(response.headers.get("Set-Cookie"));
+    }
+
+    @Test
+    public void testLinesAreNotCached() throws Exception {
+        UrlResponse response = new SparkTestUtil(PORT).doMethod("POST", "/lines", "a\nb\nc");
+        Assert.assertEquals(200, response.status);
+        // three lines, nothing left for a cached re-read of the body
+        Assert.assertEquals("3:0", response.body);
+    }
+
+    /**
+     * Answers /visits with a session counter, /api/session with the session state and
+     * everything else without touching the session
+     */
+    private static class SessionFilter implements Filter {
+
+        @Override
+        public void init(FilterConfig filterConfig) {
+        }
+
+        @Override
+        public void doFilter(ServletRequest servletRequest, ServletResponse response, FilterChain chain)
+                throws IOException {
+            HttpServletRequest request = (HttpServletRequest) servletRequest;
+            String body;
+            if ("/visits".equals(request.getRequestURI())) {
+                HttpSession session = request.getSession();
+                Integer visits = (Integer) session.getAttribute("visits");
+                visits = visits == null ? 1 : visits + 1;
+                session.setAttribute("visits", visits);
+                body = visits.toString();
+            } else if ("/lines".equals(request.getRequestURI())) {
+                body = countLines(request);
+            } else if ("/api/session".equals(request.getRequestURI())) {
+                body = sessionState(request);
+            } else {
+                body = "plain";
+            }
+            response.getWriter().write(body);
+        }
+
+        private static String countLines(HttpServletRequest request) throws IOException {
+            RouteMatch match = new RouteMatch(HttpMethod.post, null, "/lines", "/lines", "*/*");
+            try (RecordReader lines = new spark.webserver.ServletRequest(match, request).lines(1024)) {
+                lines.forEach(line -> { });
+                return lines.getCount() + ":" + IOUtils.toByteArray(request.getInputStream()).length;
+            }
+        }
+
+        private static String sessionState(HttpServletRequest request) {
+            if (request.getSession(false) != null) {
+                return "attached";
+            }
+            try {
+                request.getSession();
+                return "created";
+            } catch (IllegalStateException e) {
+                return "disabled";
+            }
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package spark.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class WebSocketGroupTest {
+
+    @Test
+    public void textIsEncodedOnce() {
+        WebSocketMessage message = WebSocketMessage.text("h\u00e9llo");
+        assertSame(message.getPayload(), message.getPayload());
+        assertEquals("h\u00e9llo", new String(message.getPayload(), StandardCharsets.UTF_8));
+        assertFalse(WebSocketMessage.binary(new byte[]{1, 2}).isText());
+    }
+
+    @Test
+    public void broadcastSharesThePayload() {
+        WebSocketGroup group = new WebSocketGroup();
+        TestSession first = new TestSession(10);
+        TestSession second = new TestSession(10);
+        group.join(first);
+        group.join(second);
+
+        assertEquals(2, group.broadcast("hello"));
+        assertSame(first.received.get(0).getPayload(), second.received.get(0).getPayload());
+    }
+
+    @Test
+    public void sessionsThatRejectMessagesLeaveTheGroup() {
+        WebSocketGroup group = new WebSocketGroup();
+        TestSession slow = new TestSession(1);
+        TestSession fast = new TestSession(10);
+        group.join(slow);
+        group.join(fast);
+
+        assertEquals(2, group.broadcast("one"));
+        assertEquals(1, group.broadcast("two"));
+        assertEquals(1, group.size());
+
+        fast.close();
+        assertEquals(0, group.size());
+    }
+
+    private static class TestSession implements WebSocketSession {
+        private final int capacity;
+        private final List<WebSocketMessage> received = new ArrayList<>();
+        private final List<Runnable> callbacks = new ArrayList<>();
+        private boolean open = true;
+
+        TestSession(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public boolean send(WebSocketMessage message) {
+            if (!open) {
+                return false;
+            }
+            if (received.size() == capacity) {
+                close();
+                return false;
+            }
+            received.add(message);
+            return true;
+        }
+
+        @Override
+        public boolean send(ByteBuffer data) {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            return send(WebSocketMessage.binary(bytes));
+        }
+
+        @Override
+        public int getQueueSize() {
+            return received.size();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void onClose(Runnable callback) {
+            if (open) {
+                callbacks.add(callback);
+            } else {
+                callback.run();
+            }
+        }
+
+        @Override
+        public void close() {
+            close(1000, null);
+        }
+
+        @Override
+        public void close(int code, String reason) {
+            if (open) {
+                open = false;
+                callbacks.forEach(Runnable::run);
+            }
+        }
+    }
+
+}